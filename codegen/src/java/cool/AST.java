@@ -34,8 +34,16 @@ public class AST{
 
     public static class expression extends ASTNode {
         public String type;
+        // id of the type in the TypeTable of the program, set with the
+        // type; the name is only kept for printing
+        public int typeId;
         public expression(){
             type = "_no_type";
+            typeId = TypeTable.NO_TYPE;
+        }
+        public void setType(String type, int typeId) {
+            this.type = type;
+            this.typeId = typeId;
         }
         String getString(String space){
             return "";
@@ -458,6 +466,7 @@ public class AST{
         String getString(String space){
             return "";
         }
+        abstract public void accept(Visitor visitor);
     }
     public static class method extends feature {
         public String name;
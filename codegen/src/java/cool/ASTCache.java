@@ -0,0 +1,559 @@
+package cool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// On-disk cache of the typed AST of a program, used for incremental builds.
+// It is enabled with --ast-cache, independently of the cache of the IR of
+// the classes (--incremental, see IRCache); both live under .coolcache.
+//
+// The entry of a program is named after a hash of the contents of its source
+// files. It holds the AST annotated by the semantic analysis (the 'type' of
+// every expression included, with its id in Global.typeTable, which numbers
+// the classes in the order of the program) and the string constants
+// registered by it, so that an unchanged program goes straight to code
+// generation, skipping the lexer, the parser and the semantic analysis.
+//
+// Format of an entry (DataOutputStream, ints are variable length):
+//   magic, version
+//   string table : count, strings
+//   tree         : nodes in pre order, a tag followed by the fields,
+//                  strings are indices in the string table, type ids
+//                  are stored plus one
+//   constants    : count, strings (their registers are named after them)
+public class ASTCache {
+
+    // Bump this whenever the AST or the format of an entry changes
+    public static final int VERSION = 3;
+
+    private static final int MAGIC = 0x434f4f4c; // "COOL"
+
+    private static final String SUBDIRECTORY = "ast";
+
+    // tags of the nodes
+    private static final int NO_EXPR = 0;
+    private static final int BOOL_CONST = 1;
+    private static final int STRING_CONST = 2;
+    private static final int INT_CONST = 3;
+    private static final int OBJECT = 4;
+    private static final int COMP = 5;
+    private static final int NEG = 6;
+    private static final int EQ = 7;
+    private static final int LEQ = 8;
+    private static final int LT = 9;
+    private static final int DIVIDE = 10;
+    private static final int MUL = 11;
+    private static final int SUB = 12;
+    private static final int PLUS = 13;
+    private static final int ISVOID = 14;
+    private static final int NEW = 15;
+    private static final int TYPCASE = 16;
+    private static final int LET = 17;
+    private static final int BLOCK = 18;
+    private static final int LOOP = 19;
+    private static final int COND = 20;
+    private static final int DISPATCH = 21;
+    private static final int STATIC_DISPATCH = 22;
+    private static final int ASSIGN = 23;
+    private static final int METHOD = 24;
+    private static final int ATTR = 25;
+
+    private File directory;
+
+    public ASTCache(File root) {
+        directory = new File(root, SUBDIRECTORY);
+    }
+
+    // Hash of the names and contents of the source files,
+    // null if a file cannot be read (the parser reports it)
+    public static String getKey(List<String> filenames) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(Integer.toString(VERSION).getBytes(StandardCharsets.UTF_8));
+            for(String filename : filenames) {
+                byte[] name = Paths.get(filename).getFileName().toString().getBytes(StandardCharsets.UTF_8);
+                byte[] content = Files.readAllBytes(Paths.get(filename));
+                md.update(Integer.toString(name.length).getBytes(StandardCharsets.UTF_8));
+                md.update(name);
+                md.update(Integer.toString(content.length).getBytes(StandardCharsets.UTF_8));
+                md.update(content);
+            }
+            StringBuilder hex = new StringBuilder();
+            for(byte b : md.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(IOException e) {
+            return null;
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Returns the cached program and registers its string constants,
+    // null if there is no valid entry for the key
+    public AST.program load(String key) {
+        File entry = getEntry(key);
+        if(!entry.isFile())
+            return null;
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)))) {
+            return new Reader(in).readEntry();
+        } catch(IOException | RuntimeException e) {
+            // corrupted or stale entry, it gets rebuilt
+            return null;
+        }
+    }
+
+    // Stores the program checked by the semantic analysis along with
+    // the string constants registered for it, failures only cost a rebuild
+    public void store(String key, AST.program program) {
+        try {
+            directory.mkdirs();
+            File temp = File.createTempFile(key, ".tmp", directory);
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                new Writer().writeEntry(program, out);
+            }
+            // renaming, so that a concurrent build never sees a partial entry
+            if(!temp.renameTo(getEntry(key))) {
+                temp.delete();
+            }
+        } catch(IOException e) {
+            System.err.println("Could not write AST cache entry: " + e.getMessage());
+        }
+    }
+
+    private File getEntry(String key) {
+        return new File(directory, key + ".ast");
+    }
+
+    // Writes variable length non negative ints, most ints in the tree
+    // (line numbers, string indices, sizes) fit in one or two bytes
+    private static void writeInt(DataOutputStream out, int value) throws IOException {
+        while((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for(int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7f) << shift;
+            if((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed int");
+    }
+
+    private static class Writer {
+        // string -> index in the string table
+        private Map<String,Integer> strings = new LinkedHashMap<>();
+
+        private DataOutputStream out;
+
+        void writeEntry(AST.program program, DataOutputStream file) throws IOException {
+            // the tree is written first, as it fills the string table
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            out = new DataOutputStream(body);
+            writeInt(out, program.lineNo);
+            writeInt(out, program.classes.size());
+            for(AST.class_ cl : program.classes) {
+                writeClass(cl);
+            }
+            writeInt(out, Global.stringConstantToRegisterMap.size());
+            for(String constant : Global.stringConstantToRegisterMap.keySet()) {
+                writeString(constant);
+            }
+            out.flush();
+
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            writeInt(file, strings.size());
+            for(String s : strings.keySet()) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                writeInt(file, bytes.length);
+                file.write(bytes);
+            }
+            body.writeTo(file);
+        }
+
+        private void writeString(String s) throws IOException {
+            // null is index 0, strings start at 1
+            if(s == null) {
+                writeInt(out, 0);
+                return;
+            }
+            Integer index = strings.get(s);
+            if(index == null) {
+                index = strings.size() + 1;
+                strings.put(s, index);
+            }
+            writeInt(out, index);
+        }
+
+        private void writeClass(AST.class_ cl) throws IOException {
+            writeInt(out, cl.lineNo);
+            writeString(cl.name);
+            writeString(cl.filename);
+            writeString(cl.parent);
+            writeInt(out, cl.features.size());
+            for(AST.feature f : cl.features) {
+                if(f instanceof AST.method) {
+                    AST.method m = (AST.method) f;
+                    writeInt(out, METHOD);
+                    writeInt(out, m.lineNo);
+                    writeString(m.name);
+                    writeString(m.typeid);
+                    writeInt(out, m.formals.size());
+                    for(AST.formal fm : m.formals) {
+                        writeInt(out, fm.lineNo);
+                        writeString(fm.name);
+                        writeString(fm.typeid);
+                    }
+                    writeExpression(m.body);
+                } else {
+                    AST.attr a = (AST.attr) f;
+                    writeInt(out, ATTR);
+                    writeInt(out, a.lineNo);
+                    writeString(a.name);
+                    writeString(a.typeid);
+                    writeExpression(a.value);
+                }
+            }
+        }
+
+        private void writeExpressions(List<AST.expression> expressions) throws IOException {
+            writeInt(out, expressions.size());
+            for(AST.expression e : expressions) {
+                writeExpression(e);
+            }
+        }
+
+        private void writeExpression(AST.expression e) throws IOException {
+            if(e instanceof AST.no_expr) {
+                writeHeader(NO_EXPR, e);
+            } else if(e instanceof AST.bool_const) {
+                writeHeader(BOOL_CONST, e);
+                writeInt(out, ((AST.bool_const) e).value ? 1 : 0);
+            } else if(e instanceof AST.string_const) {
+                writeHeader(STRING_CONST, e);
+                writeString(((AST.string_const) e).value);
+            } else if(e instanceof AST.int_const) {
+                writeHeader(INT_CONST, e);
+                out.writeInt(((AST.int_const) e).value);
+            } else if(e instanceof AST.object) {
+                writeHeader(OBJECT, e);
+                writeString(((AST.object) e).name);
+            } else if(e instanceof AST.comp) {
+                writeHeader(COMP, e);
+                writeExpression(((AST.comp) e).e1);
+            } else if(e instanceof AST.neg) {
+                writeHeader(NEG, e);
+                writeExpression(((AST.neg) e).e1);
+            } else if(e instanceof AST.eq) {
+                writeHeader(EQ, e);
+                writeExpression(((AST.eq) e).e1);
+                writeExpression(((AST.eq) e).e2);
+            } else if(e instanceof AST.leq) {
+                writeHeader(LEQ, e);
+                writeExpression(((AST.leq) e).e1);
+                writeExpression(((AST.leq) e).e2);
+            } else if(e instanceof AST.lt) {
+                writeHeader(LT, e);
+                writeExpression(((AST.lt) e).e1);
+                writeExpression(((AST.lt) e).e2);
+            } else if(e instanceof AST.divide) {
+                writeHeader(DIVIDE, e);
+                writeExpression(((AST.divide) e).e1);
+                writeExpression(((AST.divide) e).e2);
+            } else if(e instanceof AST.mul) {
+                writeHeader(MUL, e);
+                writeExpression(((AST.mul) e).e1);
+                writeExpression(((AST.mul) e).e2);
+            } else if(e instanceof AST.sub) {
+                writeHeader(SUB, e);
+                writeExpression(((AST.sub) e).e1);
+                writeExpression(((AST.sub) e).e2);
+            } else if(e instanceof AST.plus) {
+                writeHeader(PLUS, e);
+                writeExpression(((AST.plus) e).e1);
+                writeExpression(((AST.plus) e).e2);
+            } else if(e instanceof AST.isvoid) {
+                writeHeader(ISVOID, e);
+                writeExpression(((AST.isvoid) e).e1);
+            } else if(e instanceof AST.new_) {
+                writeHeader(NEW, e);
+                writeString(((AST.new_) e).typeid);
+            } else if(e instanceof AST.typcase) {
+                AST.typcase tc = (AST.typcase) e;
+                writeHeader(TYPCASE, e);
+                writeExpression(tc.predicate);
+                writeInt(out, tc.branches.size());
+                for(AST.branch b : tc.branches) {
+                    writeInt(out, b.lineNo);
+                    writeString(b.name);
+                    writeString(b.type);
+                    writeExpression(b.value);
+                }
+            } else if(e instanceof AST.let) {
+                AST.let l = (AST.let) e;
+                writeHeader(LET, e);
+                writeString(l.name);
+                writeString(l.typeid);
+                writeExpression(l.value);
+                writeExpression(l.body);
+            } else if(e instanceof AST.block) {
+                writeHeader(BLOCK, e);
+                writeExpressions(((AST.block) e).l1);
+            } else if(e instanceof AST.loop) {
+                writeHeader(LOOP, e);
+                writeExpression(((AST.loop) e).predicate);
+                writeExpression(((AST.loop) e).body);
+            } else if(e instanceof AST.cond) {
+                AST.cond c = (AST.cond) e;
+                writeHeader(COND, e);
+                writeExpression(c.predicate);
+                writeExpression(c.ifbody);
+                writeExpression(c.elsebody);
+            } else if(e instanceof AST.dispatch) {
+                AST.dispatch d = (AST.dispatch) e;
+                writeHeader(DISPATCH, e);
+                writeExpression(d.caller);
+                writeString(d.name);
+                writeExpressions(d.actuals);
+            } else if(e instanceof AST.static_dispatch) {
+                AST.static_dispatch d = (AST.static_dispatch) e;
+                writeHeader(STATIC_DISPATCH, e);
+                writeExpression(d.caller);
+                writeString(d.typeid);
+                writeString(d.name);
+                writeExpressions(d.actuals);
+            } else if(e instanceof AST.assign) {
+                writeHeader(ASSIGN, e);
+                writeString(((AST.assign) e).name);
+                writeExpression(((AST.assign) e).e1);
+            } else {
+                throw new IllegalArgumentException("Unknown expression " + e);
+            }
+        }
+
+        private void writeHeader(int tag, AST.expression e) throws IOException {
+            writeInt(out, tag);
+            writeInt(out, e.lineNo);
+            writeString(e.type);
+            writeInt(out, e.typeId + 1);
+        }
+    }
+
+    private static class Reader {
+        private String[] strings;
+
+        private DataInputStream in;
+
+        Reader(DataInputStream in) {
+            this.in = in;
+        }
+
+        AST.program readEntry() throws IOException {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+            strings = new String[readInt(in) + 1];
+            for(int i = 1; i < strings.length; i++) {
+                byte[] bytes = new byte[readInt(in)];
+                in.readFully(bytes);
+                strings[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+
+            int lineNo = readInt(in);
+            int classCount = readInt(in);
+            List<AST.class_> classes = new ArrayList<>(classCount);
+            for(int i = 0; i < classCount; i++) {
+                classes.add(readClass());
+            }
+
+            // registering the constants only once the entry is known to be valid
+            int constantCount = readInt(in);
+            String[] constants = new String[constantCount];
+            for(int i = 0; i < constantCount; i++) {
+                constants[i] = readString();
+            }
+            for(String constant : constants) {
+                Utils.addStringConstant(constant);
+            }
+            // the type ids of the expressions are the ones of this order
+            for(AST.class_ cl : classes) {
+                Global.typeTable.add(cl.name);
+            }
+            return new AST.program(classes, lineNo);
+        }
+
+        private String readString() throws IOException {
+            return strings[readInt(in)];
+        }
+
+        private AST.class_ readClass() throws IOException {
+            int lineNo = readInt(in);
+            String name = readString();
+            String filename = readString();
+            String parent = readString();
+            int featureCount = readInt(in);
+            List<AST.feature> features = new ArrayList<>(featureCount);
+            for(int i = 0; i < featureCount; i++) {
+                int tag = readInt(in);
+                int featureLineNo = readInt(in);
+                String featureName = readString();
+                String typeid = readString();
+                if(tag == METHOD) {
+                    int formalCount = readInt(in);
+                    List<AST.formal> formals = new ArrayList<>(formalCount);
+                    for(int j = 0; j < formalCount; j++) {
+                        int formalLineNo = readInt(in);
+                        String formalName = readString();
+                        formals.add(new AST.formal(formalName, readString(), formalLineNo));
+                    }
+                    features.add(new AST.method(featureName, formals, typeid, readExpression(), featureLineNo));
+                } else if(tag == ATTR) {
+                    features.add(new AST.attr(featureName, typeid, readExpression(), featureLineNo));
+                } else {
+                    throw new IOException("Unknown feature tag " + tag);
+                }
+            }
+            return new AST.class_(name, filename, parent, features, lineNo);
+        }
+
+        private List<AST.expression> readExpressions() throws IOException {
+            int count = readInt(in);
+            List<AST.expression> expressions = new ArrayList<>(count);
+            for(int i = 0; i < count; i++) {
+                expressions.add(readExpression());
+            }
+            return expressions;
+        }
+
+        private AST.expression readExpression() throws IOException {
+            int tag = readInt(in);
+            int l = readInt(in);
+            String type = readString();
+            int typeId = readInt(in) - 1;
+            AST.expression e;
+            switch(tag) {
+                case NO_EXPR:
+                    e = new AST.no_expr(l);
+                    break;
+                case BOOL_CONST:
+                    e = new AST.bool_const(readInt(in) != 0, l);
+                    break;
+                case STRING_CONST:
+                    e = new AST.string_const(readString(), l);
+                    break;
+                case INT_CONST:
+                    e = new AST.int_const(in.readInt(), l);
+                    break;
+                case OBJECT:
+                    e = new AST.object(readString(), l);
+                    break;
+                case COMP:
+                    e = new AST.comp(readExpression(), l);
+                    break;
+                case NEG:
+                    e = new AST.neg(readExpression(), l);
+                    break;
+                case EQ:
+                    e = new AST.eq(readExpression(), readExpression(), l);
+                    break;
+                case LEQ:
+                    e = new AST.leq(readExpression(), readExpression(), l);
+                    break;
+                case LT:
+                    e = new AST.lt(readExpression(), readExpression(), l);
+                    break;
+                case DIVIDE:
+                    e = new AST.divide(readExpression(), readExpression(), l);
+                    break;
+                case MUL:
+                    e = new AST.mul(readExpression(), readExpression(), l);
+                    break;
+                case SUB:
+                    e = new AST.sub(readExpression(), readExpression(), l);
+                    break;
+                case PLUS:
+                    e = new AST.plus(readExpression(), readExpression(), l);
+                    break;
+                case ISVOID:
+                    e = new AST.isvoid(readExpression(), l);
+                    break;
+                case NEW:
+                    e = new AST.new_(readString(), l);
+                    break;
+                case TYPCASE: {
+                    AST.expression predicate = readExpression();
+                    int count = readInt(in);
+                    List<AST.branch> branches = new ArrayList<>(count);
+                    for(int i = 0; i < count; i++) {
+                        int branchLineNo = readInt(in);
+                        String name = readString();
+                        String branchType = readString();
+                        branches.add(new AST.branch(name, branchType, readExpression(), branchLineNo));
+                    }
+                    e = new AST.typcase(predicate, branches, l);
+                    break;
+                }
+                case LET: {
+                    String name = readString();
+                    String typeid = readString();
+                    e = new AST.let(name, typeid, readExpression(), readExpression(), l);
+                    break;
+                }
+                case BLOCK:
+                    e = new AST.block(readExpressions(), l);
+                    break;
+                case LOOP:
+                    e = new AST.loop(readExpression(), readExpression(), l);
+                    break;
+                case COND:
+                    e = new AST.cond(readExpression(), readExpression(), readExpression(), l);
+                    break;
+                case DISPATCH: {
+                    AST.expression caller = readExpression();
+                    String name = readString();
+                    e = new AST.dispatch(caller, name, readExpressions(), l);
+                    break;
+                }
+                case STATIC_DISPATCH: {
+                    AST.expression caller = readExpression();
+                    String typeid = readString();
+                    String name = readString();
+                    e = new AST.static_dispatch(caller, typeid, name, readExpressions(), l);
+                    break;
+                }
+                case ASSIGN: {
+                    String name = readString();
+                    e = new AST.assign(name, readExpression(), l);
+                    break;
+                }
+                default:
+                    throw new IOException("Unknown expression tag " + tag);
+            }
+            e.setType(type, typeId);
+            return e;
+        }
+    }
+}
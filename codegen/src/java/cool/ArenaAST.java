@@ -0,0 +1,312 @@
+package cool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compact form of a typed AST: the nodes are rows of primitive arrays instead
+// of objects, and every name and type is an id in a table of interned strings.
+//
+// Nodes are numbered in pre order, the program being node 0, so the subtree
+// of a node is the range of rows from the node up to its 'end'. Its first
+// child is the next row, and every other child starts at the end of the
+// previous one. The children come in the order of the fields of the AST class:
+//   program       : classes
+//   class_        : features               (name, decl = parent, value = filename)
+//   attr          : value                  (name, decl = typeid)
+//   method        : formals..., body       (name, decl = typeid)
+//   formal        :                        (name, decl = typeid)
+//   branch        : value                  (name, decl = type)
+//   typcase       : predicate, branches...
+//   let           : value, body            (name, decl = typeid)
+//   dispatch      : caller, actuals...     (name)
+//   static_dispatch: caller, actuals...    (name, decl = typeid)
+//   assign        : e1                     (name)
+//   new_          :                        (decl = typeid)
+//   object        :                        (name)
+//   constants     :                        (value = int, 0/1 or string id)
+//   other expressions: their operands in order
+// and 'type' is the type of an expression, as set by the semantic analysis,
+// with its id in the type table.
+//
+// The passes which only scan the nodes of a class, such as the fingerprints
+// of IRCache, walk the rows of the class in order instead of chasing the
+// references of the object form.
+public class ArenaAST {
+
+    // kinds of the nodes
+    public static final int NO_EXPR = 0;
+    public static final int BOOL_CONST = 1;
+    public static final int STRING_CONST = 2;
+    public static final int INT_CONST = 3;
+    public static final int OBJECT = 4;
+    public static final int COMP = 5;
+    public static final int NEG = 6;
+    public static final int EQ = 7;
+    public static final int LEQ = 8;
+    public static final int LT = 9;
+    public static final int DIVIDE = 10;
+    public static final int MUL = 11;
+    public static final int SUB = 12;
+    public static final int PLUS = 13;
+    public static final int ISVOID = 14;
+    public static final int NEW = 15;
+    public static final int TYPCASE = 16;
+    public static final int LET = 17;
+    public static final int BLOCK = 18;
+    public static final int LOOP = 19;
+    public static final int COND = 20;
+    public static final int DISPATCH = 21;
+    public static final int STATIC_DISPATCH = 22;
+    public static final int ASSIGN = 23;
+    public static final int METHOD = 24;
+    public static final int ATTR = 25;
+    public static final int FORMAL = 26;
+    public static final int BRANCH = 27;
+    public static final int CLASS = 28;
+    public static final int PROGRAM = 29;
+
+    // id of a missing string
+    public static final int NONE = -1;
+
+    private int size = 0;
+    private byte[] kinds;
+    private int[] lines;
+    private int[] names;
+    private int[] decls;
+    private int[] types;
+    private int[] typeIds;
+    private int[] values;
+    private int[] ends;
+
+    // interned strings
+    private List<String> strings = new ArrayList<>();
+    private Map<String,Integer> stringIds = new HashMap<>();
+
+    // class name -> node of the class
+    private Map<String,Integer> classNodes = new HashMap<>();
+
+    private ArenaAST(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new byte[capacity];
+        lines = new int[capacity];
+        names = new int[capacity];
+        decls = new int[capacity];
+        types = new int[capacity];
+        typeIds = new int[capacity];
+        values = new int[capacity];
+        ends = new int[capacity];
+    }
+
+    // Arena of a program checked by the semantic analysis
+    public static ArenaAST build(AST.program program) {
+        ArenaAST arena = new ArenaAST(1024);
+        arena.addProgram(program);
+        return arena;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getKind(int node) {
+        return kinds[node];
+    }
+
+    public int getLine(int node) {
+        return lines[node];
+    }
+
+    public String getName(int node) {
+        return getString(names[node]);
+    }
+
+    public String getDecl(int node) {
+        return getString(decls[node]);
+    }
+
+    public String getType(int node) {
+        return getString(types[node]);
+    }
+
+    public int getTypeId(int node) {
+        return typeIds[node];
+    }
+
+    public int getValue(int node) {
+        return values[node];
+    }
+
+    // Node after the last one of the subtree of the node
+    public int getEnd(int node) {
+        return ends[node];
+    }
+
+    // Node of the class with the given name, NONE if it is not in the program
+    public int getClassNode(String className) {
+        Integer node = classNodes.get(className);
+        return node == null ? NONE : node;
+    }
+
+    public String getString(int id) {
+        return id == NONE ? null : strings.get(id);
+    }
+
+    private int intern(String s) {
+        if(s == null)
+            return NONE;
+        Integer id = stringIds.get(s);
+        if(id == null) {
+            id = strings.size();
+            strings.add(s);
+            stringIds.put(s, id);
+        }
+        return id;
+    }
+
+    // Adds a node, its subtree ends where the next node added after its
+    // children starts, see 'close'
+    private int addNode(int kind, int line, String name, String decl, AST.expression e, int value) {
+        if(size == kinds.length) {
+            int capacity = 2 * size;
+            kinds = Arrays.copyOf(kinds, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            names = Arrays.copyOf(names, capacity);
+            decls = Arrays.copyOf(decls, capacity);
+            types = Arrays.copyOf(types, capacity);
+            typeIds = Arrays.copyOf(typeIds, capacity);
+            values = Arrays.copyOf(values, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+        }
+        kinds[size] = (byte) kind;
+        lines[size] = line;
+        names[size] = intern(name);
+        decls[size] = intern(decl);
+        types[size] = e == null ? NONE : intern(e.type);
+        typeIds[size] = e == null ? TypeTable.NO_TYPE : e.typeId;
+        values[size] = value;
+        ends[size] = size + 1;
+        return size++;
+    }
+
+    private void close(int node) {
+        ends[node] = size;
+    }
+
+    private void addProgram(AST.program program) {
+        int node = addNode(PROGRAM, program.lineNo, null, null, null, 0);
+        for(AST.class_ cl : program.classes) {
+            addClass(cl);
+        }
+        close(node);
+    }
+
+    private void addClass(AST.class_ cl) {
+        int node = addNode(CLASS, cl.lineNo, cl.name, cl.parent, null, intern(cl.filename));
+        classNodes.put(cl.name, node);
+        for(AST.feature f : cl.features) {
+            if(f instanceof AST.method) {
+                AST.method m = (AST.method) f;
+                int child = addNode(METHOD, m.lineNo, m.name, m.typeid, null, 0);
+                for(AST.formal fm : m.formals) {
+                    addNode(FORMAL, fm.lineNo, fm.name, fm.typeid, null, 0);
+                }
+                addExpression(m.body);
+                close(child);
+            } else {
+                AST.attr a = (AST.attr) f;
+                int child = addNode(ATTR, a.lineNo, a.name, a.typeid, null, 0);
+                addExpression(a.value);
+                close(child);
+            }
+        }
+        close(node);
+    }
+
+    private void addNode(int kind, AST.expression e, String name, String decl, AST.expression... operands) {
+        int node = addNode(kind, e.lineNo, name, decl, e, 0);
+        for(AST.expression operand : operands) {
+            addExpression(operand);
+        }
+        close(node);
+    }
+
+    // A node whose operands end with a list of expressions
+    private void addNode(int kind, AST.expression e, String name, String decl, AST.expression first, List<AST.expression> rest) {
+        int node = addNode(kind, e.lineNo, name, decl, e, 0);
+        addExpression(first);
+        for(AST.expression operand : rest) {
+            addExpression(operand);
+        }
+        close(node);
+    }
+
+    private void addExpression(AST.expression e) {
+        if(e instanceof AST.no_expr) {
+            addNode(NO_EXPR, e, null, null);
+        } else if(e instanceof AST.bool_const) {
+            addNode(BOOL_CONST, e.lineNo, null, null, e, ((AST.bool_const) e).value ? 1 : 0);
+        } else if(e instanceof AST.string_const) {
+            addNode(STRING_CONST, e.lineNo, null, null, e, intern(((AST.string_const) e).value));
+        } else if(e instanceof AST.int_const) {
+            addNode(INT_CONST, e.lineNo, null, null, e, ((AST.int_const) e).value);
+        } else if(e instanceof AST.object) {
+            addNode(OBJECT, e, ((AST.object) e).name, null);
+        } else if(e instanceof AST.comp) {
+            addNode(COMP, e, null, null, ((AST.comp) e).e1);
+        } else if(e instanceof AST.neg) {
+            addNode(NEG, e, null, null, ((AST.neg) e).e1);
+        } else if(e instanceof AST.eq) {
+            addNode(EQ, e, null, null, ((AST.eq) e).e1, ((AST.eq) e).e2);
+        } else if(e instanceof AST.leq) {
+            addNode(LEQ, e, null, null, ((AST.leq) e).e1, ((AST.leq) e).e2);
+        } else if(e instanceof AST.lt) {
+            addNode(LT, e, null, null, ((AST.lt) e).e1, ((AST.lt) e).e2);
+        } else if(e instanceof AST.divide) {
+            addNode(DIVIDE, e, null, null, ((AST.divide) e).e1, ((AST.divide) e).e2);
+        } else if(e instanceof AST.mul) {
+            addNode(MUL, e, null, null, ((AST.mul) e).e1, ((AST.mul) e).e2);
+        } else if(e instanceof AST.sub) {
+            addNode(SUB, e, null, null, ((AST.sub) e).e1, ((AST.sub) e).e2);
+        } else if(e instanceof AST.plus) {
+            addNode(PLUS, e, null, null, ((AST.plus) e).e1, ((AST.plus) e).e2);
+        } else if(e instanceof AST.isvoid) {
+            addNode(ISVOID, e, null, null, ((AST.isvoid) e).e1);
+        } else if(e instanceof AST.new_) {
+            addNode(NEW, e, null, ((AST.new_) e).typeid);
+        } else if(e instanceof AST.typcase) {
+            AST.typcase tc = (AST.typcase) e;
+            int node = addNode(TYPCASE, e.lineNo, null, null, e, 0);
+            addExpression(tc.predicate);
+            for(AST.branch b : tc.branches) {
+                int branch = addNode(BRANCH, b.lineNo, b.name, b.type, null, 0);
+                addExpression(b.value);
+                close(branch);
+            }
+            close(node);
+        } else if(e instanceof AST.let) {
+            AST.let l = (AST.let) e;
+            addNode(LET, e, l.name, l.typeid, l.value, l.body);
+        } else if(e instanceof AST.block) {
+            List<AST.expression> l1 = ((AST.block) e).l1;
+            addNode(BLOCK, e, null, null, l1.toArray(new AST.expression[l1.size()]));
+        } else if(e instanceof AST.loop) {
+            addNode(LOOP, e, null, null, ((AST.loop) e).predicate, ((AST.loop) e).body);
+        } else if(e instanceof AST.cond) {
+            AST.cond c = (AST.cond) e;
+            addNode(COND, e, null, null, c.predicate, c.ifbody, c.elsebody);
+        } else if(e instanceof AST.dispatch) {
+            AST.dispatch d = (AST.dispatch) e;
+            addNode(DISPATCH, e, d.name, null, d.caller, d.actuals);
+        } else if(e instanceof AST.static_dispatch) {
+            AST.static_dispatch d = (AST.static_dispatch) e;
+            addNode(STATIC_DISPATCH, e, d.name, d.typeid, d.caller, d.actuals);
+        } else if(e instanceof AST.assign) {
+            addNode(ASSIGN, e, ((AST.assign) e).name, null, ((AST.assign) e).e1);
+        } else {
+            throw new IllegalArgumentException("Unknown expression " + e);
+        }
+    }
+}
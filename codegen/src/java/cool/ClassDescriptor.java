@@ -0,0 +1,73 @@
+package cool;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// The strings the IR uses for a class, built once per class instead of
+// at every instruction which mentions it: the struct and pointer types,
+// the mangled names of the methods called on the class and, for the
+// classes of the program, the index lists of the attributes for
+// getelementptr. The index list of an attribute is only built when the
+// attribute is used, its length grows with the depth of the class.
+//
+// The descriptors are kept in Global.classDescriptors by type id,
+// see Utils.getDescriptor.
+public class ClassDescriptor {
+
+    public final String name;
+
+    // %class.<name> and %class.<name>*
+    public final String structName;
+    public final String pointerType;
+
+    // set with the struct by the ProgramModel: the descriptor of the parent
+    // (null for Object), the struct type and the attribute name -> index in
+    // the struct of the attributes declared in the class
+    public ClassDescriptor parent;
+    public String structType;
+    public Map<String,Integer> fieldIndices;
+
+    // attribute name -> index list, for the attributes used so far
+    private Map<String,String> fieldPaths = new HashMap<>();
+
+    // method name -> mangled name of the method of this class
+    private Map<String,String> mangledNames = new HashMap<>();
+
+    public ClassDescriptor(String name) {
+        this.name = name;
+        structName = "%class." + name;
+        pointerType = structName + "*";
+    }
+
+    public String getMangledName(String methodName) {
+        String mangledName = mangledNames.get(methodName);
+        if(mangledName == null) {
+            mangledName = Utils.buildMangledName(name, methodName);
+            mangledNames.put(methodName, mangledName);
+        }
+        return mangledName;
+    }
+
+    // Index list for getelementptr of an attribute of the class,
+    // declared in the class or inherited
+    public String getFieldPath(String attrName) {
+        String path = fieldPaths.get(attrName);
+        if(path == null) {
+            // the struct of a class starts with the struct of its parent
+            StringBuilder builder = new StringBuilder();
+            ClassDescriptor owner = this;
+            while(!owner.fieldIndices.containsKey(attrName)) {
+                builder.append(" i32 0,");
+                owner = owner.parent;
+            }
+            path = builder.append(" i32 0, i32 ").append(owner.fieldIndices.get(attrName)).toString();
+            fieldPaths.put(attrName, path);
+        }
+        return path;
+    }
+
+    // Mangled name of the constructor of the class
+    public String getConstructorName() {
+        return getMangledName(name);
+    }
+}
@@ -1,18 +1,44 @@
 package cool;
 import java.util.HashMap;
 
+/* A class of the table. It only holds the features declared in the class
+ * itself; the inherited ones are found by following the parent classes,
+ * so a class costs memory proportional to its own features.
+ */
 public class ClassPlus {
 	public String name;
 	public String parent = null;
-	public HashMap <String, AST.attr> alist;
-	public HashMap <String, AST.method> mlist;
+	public ClassPlus parentClass = null;		// null for Object
+	public HashMap <String, AST.attr> alist;	// attributes declared in the class
+	public HashMap <String, AST.method> mlist;	// methods declared or redefined in the class
 	
-	ClassPlus(String nm, String pr, HashMap<String, AST.attr> al, HashMap<String, AST.method> ml) {
-		name = new String(nm);
-		if(pr != null) parent = new String(pr);
-		alist = new HashMap <String, AST.attr>();
-		alist.putAll(al);
-		mlist = new HashMap <String, AST.method>();
-		mlist.putAll(ml);
+	ClassPlus(String nm, ClassPlus pr, HashMap<String, AST.attr> al, HashMap<String, AST.method> ml) {
+		name = nm;
+		if(pr != null) {
+			parent = pr.name;
+			parentClass = pr;
+		}
+		alist = al;
+		mlist = ml;
 	}
-}
\ No newline at end of file
+
+	// Attribute of the class or of one of its ancestors, null if there is none
+	AST.attr getAttr(String attrName) {
+		for(ClassPlus c = this; c != null; c = c.parentClass) {
+			AST.attr a = c.alist.get(attrName);
+			if(a != null)
+				return a;
+		}
+		return null;
+	}
+
+	// Nearest definition of the method, null if there is none
+	AST.method getMethod(String methodName) {
+		for(ClassPlus c = this; c != null; c = c.parentClass) {
+			AST.method m = c.mlist.get(methodName);
+			if(m != null)
+				return m;
+		}
+		return null;
+	}
+}
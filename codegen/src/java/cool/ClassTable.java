@@ -6,11 +6,19 @@ import java.util.Map.Entry;
 
 
 public class ClassTable {
-	private HashMap<String, ClassPlus> classes=new HashMap<String, ClassPlus>();		// for retrieving class related info and class attributes and features
-	private HashMap<String, Integer> height = new HashMap<String, Integer>();			// for retrieving class height in the inheritance hierarchy (for conformance check)
-	public List<Error> errors = new ArrayList<Error>();
+	/* Classes are kept by the ids of Global.typeTable, the ones on the typed
+	 * expressions. The inheritance graph is built along with the table, a
+	 * parent always before its children, and is the one code generation
+	 * walks (see ProgramModel), so the conformance checks and the joins are
+	 * the queries of the graph on type ids.
+	 */
+	private ArrayList<ClassPlus> classes = new ArrayList<ClassPlus>();				// for retrieving class related info and class attributes and features
+	private InheritanceGraph graph = new InheritanceGraph();		// the classes of the program, completed once they are all inserted
+	private Diagnostics diagnostics;		// errors in the features of the classes
 	
-	public ClassTable() {
+	public ClassTable(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+
 		/* Classes already present in the table:
 		 * - Object
 		 * - IO
@@ -36,8 +44,8 @@ public class ClassTable {
 		ol.put("abort", new AST.method("abort", new ArrayList<AST.formal>(), "Object", new AST.no_expr(0), 0));
 		ol.put("type_name", new AST.method("type_name", new ArrayList<AST.formal>(), "String", new AST.no_expr(0), 0));
 
-		classes.put("Object", new ClassPlus("Object", null, new HashMap<String, AST.attr>(), ol));
-		height.put("Object", 0);
+		ClassPlus object = new ClassPlus("Object", null, new HashMap<String, AST.attr>(), ol);
+		add(object);
 		
 		HashMap <String, AST.method> iol = new HashMap<String, AST.method>();
 		
@@ -50,17 +58,11 @@ public class ClassTable {
 		iol.put("out_int", new AST.method("out_int", oi_formals, "IO", new AST.no_expr(0), 0));
 		iol.put("in_string", new AST.method("in_string", new ArrayList<AST.formal>(), "String", new AST.no_expr(0), 0));
 		iol.put("in_int", new AST.method("in_int", new ArrayList<AST.formal>(), "Int", new AST.no_expr(0), 0));
-		classes.put("IO", new ClassPlus("IO", "Object", new HashMap<String, AST.attr>(), iol));
-		classes.get("IO").mlist.putAll(ol);		// IO inherits from Object
-		height.put("IO", 1);
+		add(new ClassPlus("IO", object, new HashMap<String, AST.attr>(), iol));		// IO inherits from Object
 		
-		classes.put("Int", new ClassPlus("Int", "Object", new HashMap<String, AST.attr>(), new HashMap<String, AST.method>()));
-		height.put("Int", 1);
-		classes.get("Int").mlist.putAll(ol);	// Int inherits from Object
+		add(new ClassPlus("Int", object, new HashMap<String, AST.attr>(), new HashMap<String, AST.method>()));	// Int inherits from Object
 		
-		classes.put("Bool", new ClassPlus("Bool", "Object", new HashMap<String, AST.attr>(), new HashMap<String, AST.method>()));
-		height.put("Bool", 1);
-		classes.get("Bool").mlist.putAll(ol);	// Bool inherits from Object
+		add(new ClassPlus("Bool", object, new HashMap<String, AST.attr>(), new HashMap<String, AST.method>()));	// Bool inherits from Object
 		
 		HashMap <String, AST.method> sl = new HashMap<String, AST.method>();
 		List<AST.formal> concat_formal = new ArrayList<AST.formal>();
@@ -73,19 +75,46 @@ public class ClassTable {
 		sl.put("concat", new AST.method("concat", concat_formal, "String", new AST.no_expr(0), 0));
 		sl.put("substr", new AST.method("substr", substr_formal, "String", new AST.no_expr(0), 0));
 		
-		classes.put("String", new ClassPlus("String", "Object", new HashMap<String, AST.attr>(), sl));
-		height.put("String", 1);
-		classes.get("String").mlist.putAll(ol);		// String Inherits from Object
+		add(new ClassPlus("String", object, new HashMap<String, AST.attr>(), sl));		// String Inherits from Object
+	}
+
+	// Puts the class at its type id, its parent must already be in the table
+	private void add(ClassPlus c) {
+		int id = Global.typeTable.add(c.name);
+		while(classes.size() <= id)
+			classes.add(null);
+		classes.set(id, c);
+	}
+
+	/* Inserts the classes of a program whose inheritance graph is valid, in
+	 * breadth first order from Object so that a class comes after its parent
+	 * and inherits its methods and attributes. The graph is complete after it.
+	 */
+	void insertAll(List<AST.class_> programClasses) {
+		HashMap<String, List<AST.class_>> children = new HashMap<String, List<AST.class_>>();
+		for(AST.class_ c : programClasses)
+			children.computeIfAbsent(c.parent, k -> new ArrayList<AST.class_>()).add(c);
+		
+		Queue<String> q = new LinkedList<String>(); q.offer("Object");
+		while(!q.isEmpty()) {
+			String name = q.poll();
+			if(name.equals("Object"))
+				q.offer("IO");		// the first child of Object
+			for(AST.class_ c : children.getOrDefault(name, Collections.<AST.class_>emptyList())) {
+				insert(c);
+				q.offer(c.name);
+			}
+		}
+		graph.update();
 	}
+
 	void insert(AST.class_ c) {
 		/* Whenever a new class is inserted,
-		 * - Inherits the attributes and methods of the parent class.
+		 * - Links to the parent class, through which it inherits the attributes and methods.
 		 * - Checks for multiple method or attribute definitions.
 		 * - Checks for correct method overrides and any attribute overrides
 		 */
-		String pr = c.parent;
-		ClassPlus tc = new ClassPlus(c.name, c.parent, classes.get(c.parent).alist, classes.get(c.parent).mlist);	// adding the parents attribute list and method list
-
+		ClassPlus pr = getClassPlus(c.parent);
 		
 		HashMap <String, AST.attr> tc_alist = new HashMap<String, AST.attr>();
 		HashMap <String, AST.method> tc_mlist = new HashMap <String, AST.method>();
@@ -95,17 +124,17 @@ public class ClassTable {
 		 * - multiple method definitions
 		 */
 		for(AST.feature e : c.features) {
-			if(e.getClass() == AST.attr.class) {
+			if(e instanceof AST.attr) {
 				AST.attr ae = (AST.attr) e;
 				if(tc_alist.containsKey(ae.name))
-					errors.add(new Error(c.filename, ae.lineNo, "Attribute " + ae.name + " is multiply defined in class."));
+					diagnostics.error(Diagnostics.FEATURE, c.filename, ae.lineNo, "Attribute " + ae.name + " is multiply defined in class.");
 				else
 					tc_alist.put(ae.name, ae);
 			}
-			else if(e.getClass() == AST.method.class) {
+			else if(e instanceof AST.method) {
 				AST.method me = (AST.method) e;
 				if(tc_mlist.containsKey(me.name))
-					errors.add(new Error(c.filename, me.lineNo, "Method " + me.name + " is multiply defined."));
+					diagnostics.error(Diagnostics.FEATURE, c.filename, me.lineNo, "Method " + me.name + " is multiply defined.");
 				else
 					tc_mlist.put(me.name, me);
 			}
@@ -116,77 +145,77 @@ public class ClassTable {
 		 * - redefinition of an inherited attribute (Note: the class retains the inherited attribute and discards the attribute defined within the class)
 		 * - wrong redefinition of an inherited method (Note : the class retains the inherited method and discards the method defined within the class)
 		 */
-		for(Entry<String, AST.attr> entry : tc_alist.entrySet()) {
-			if(tc.alist.containsKey(entry.getKey()))
-				errors.add(new Error(c.filename, entry.getValue().lineNo, "Attribute " + entry.getValue().name + " is an attribute of an inherited class"));
-			else {
-				tc.alist.put(entry.getKey(), entry.getValue());
+		Iterator<Entry<String, AST.attr>> attrs = tc_alist.entrySet().iterator();
+		while(attrs.hasNext()) {
+			Entry<String, AST.attr> entry = attrs.next();
+			if(pr.getAttr(entry.getKey()) != null) {
+				diagnostics.error(Diagnostics.FEATURE, c.filename, entry.getValue().lineNo, "Attribute " + entry.getValue().name + " is an attribute of an inherited class");
+				attrs.remove();
 			}
-
 		}
 		boolean foundErr;
-		for(Entry<String, AST.method> entry : tc_mlist.entrySet()) {
+		Iterator<Entry<String, AST.method>> methods = tc_mlist.entrySet().iterator();
+		while(methods.hasNext()) {
+			Entry<String, AST.method> entry = methods.next();
 			foundErr = false;
-			if(tc.mlist.containsKey(entry.getKey())) {
-				AST.method parent_me = tc.mlist.get(entry.getKey());
+			AST.method parent_me = pr.getMethod(entry.getKey());
+			if(parent_me != null) {
 				AST.method me = entry.getValue();
 				if(me.formals.size() != parent_me.formals.size()) {
-					errors.add(new Error(c.filename, me.lineNo, "Incompatible number of formal parameters in redefined method " + me.name));
+					diagnostics.error(Diagnostics.FEATURE, c.filename, me.lineNo, "Incompatible number of formal parameters in redefined method " + me.name);
 					foundErr = true;
 				}
 				else {
 					if(me.typeid.equals(parent_me.typeid) == false) {
-						errors.add(new Error(c.filename, me.lineNo, "In redefined method " + me.name + ", return type "
-								+ me.typeid + " is different from original return type " + parent_me.typeid));
+						diagnostics.error(Diagnostics.FEATURE, c.filename, me.lineNo, "In redefined method " + me.name + ", return type "
+								+ me.typeid + " is different from original return type " + parent_me.typeid);
 						foundErr = true;
 					}
 					for(int i = 0; i < me.formals.size(); ++i) {
 						if(me.formals.get(i).typeid.equals(parent_me.formals.get(i).typeid) == false) {
-							errors.add(new Error(c.filename, me.lineNo, "In redefined method " + me.name + ", parameter type"
-									+ me.formals.get(i).typeid + " is different from original type " + parent_me.formals.get(i).typeid));
+							diagnostics.error(Diagnostics.FEATURE, c.filename, me.lineNo, "In redefined method " + me.name + ", parameter type"
+									+ me.formals.get(i).typeid + " is different from original type " + parent_me.formals.get(i).typeid);
 							foundErr = true;
 						}
 					}
 				}
 			}
 
-			if(foundErr != true)
-				tc.mlist.put(entry.getKey(), entry.getValue());
+			if(foundErr)
+				methods.remove();
 		}
-		height.put(c.name, height.get(c.parent) + 1);
 
-		classes.put(c.name, tc);
+		add(new ClassPlus(c.name, pr, tc_alist, tc_mlist));
+		graph.addClass(c);
 	}
 	
 	
-	List<Error> getErrors() {
-		return errors;
-	}
-	
-	HashMap<String, AST.attr> getAttrs(String className) {
-		return classes.get(className).alist;
-	}
-	
 	ClassPlus getClassPlus(String className) {
-		return classes.get(className);
+		int id = Global.typeTable.getId(className);
+		return id == TypeTable.NO_TYPE || id >= classes.size() ? null : classes.get(id);
 	}
 
+	// Inheritance graph of the classes, complete once they are all inserted
+	InheritanceGraph getGraph() {
+		return graph;
+	}
+
+	// 'true' if class a is b or one of its descendants. Unknown classes conform to nothing.
 	boolean conforms(String a, String b) {
-		if(a.equals(b))
-			return true;
-		else {
-			a = classes.get(a).parent;
-			if(a == null) return false;
-			else return conforms(a, b);
-		}
+		ClassPlus ca = getClassPlus(a);
+		ClassPlus cb = getClassPlus(b);
+		if(ca == null || cb == null)
+			return a.equals(b);
+		return graph.isConforming(Global.typeTable.getId(a), Global.typeTable.getId(b));
 	}
 	
+	// Least common ancestor of classes a and b, Object if either is unknown
 	String lca(String a, String b) {
-
 		if(a.equals(b)) return a;
-		else if(height.get(a) < height.get(b))		// a must always be deeper in the tree
-			return lca(b, a);
-		else
-			return lca(classes.get(a).parent, b);
+		ClassPlus ca = getClassPlus(a);
+		ClassPlus cb = getClassPlus(b);
+		if(ca == null || cb == null)
+			return "Object";
+		return Global.typeTable.getName(graph.getJoinOf(Global.typeTable.getId(a), Global.typeTable.getId(b)));
 	}
 }
@@ -3,12 +3,16 @@ package cool;
 import java.io.PrintWriter;
 
 public class Codegen{
-	public Codegen(AST.program program, PrintWriter out, String fileName){
-        out.println("; ModuleID = '" + fileName + "'");
-        out.println("source_filename = \"" + fileName + "\"");
-        out.println();
+	public Codegen(ProgramModel model, PrintWriter out, String fileName){
+        if(Global.modules == null) {
+            // the modules of a split program get their own headers
+            out.println("; ModuleID = '" + fileName + "'");
+            out.println("source_filename = \"" + fileName + "\"");
+            out.println();
+        }
         Global.out = out;
+        Global.programModel = model;
 		Visitor visitor = new VisitorImpl();
-		program.accept(visitor);
+		model.getProgram().accept(visitor);
 	}
 }
@@ -1,146 +1,141 @@
 package cool;
 
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.PrintWriter;
-import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
-
-import org.antlr.v4.runtime.CommonToken;
-import org.antlr.v4.runtime.Token;
-import org.antlr.v4.runtime.BaseErrorListener;
-import org.antlr.v4.runtime.Recognizer;
-import org.antlr.v4.runtime.RecognitionException;
-import org.antlr.v4.runtime.tree.*;
 import java.nio.file.Paths;
 
 public class CodegenTest {
 
-	static String[] TOKENS = {"ERROR", "TYPEID", "OBJECTID", "BOOL_CONST", "INT_CONST", "STR_CONST", "'('", "')'", "':'", "'@'", "';'", "','", "'+'", "'-'", "'*'", "'/'", "'~'", "'<'", "'='", "'{'", "'}'", "'.'", "DARROW", "LE", "ASSIGN", "CLASS", "ELSE", "FI", "IF", "IN", "INHERITS", "LET", "LOOP", "POOL", "THEN", "WHILE", "CASE", "ESAC", "OF", "NEW", "ISVOID", "NOT"
-	};
-
-	static int VALUED_INDEX_LIMIT = 6;
-	static int NAMED_TOKEN_INDEX = 23;
-	static int parser_error_flag = 0;
-	
-	static String escapeSpecialCharacters(String text) {
-		return
-			text
-				.replaceAll("\\\\", "\\\\\\\\")
-				.replaceAll("\n", "\\\\n")
-				.replaceAll("\t", "\\\\t")
-				.replaceAll("\b", "\\\\b")
-				.replaceAll("\f", "\\\\f")
-				.replaceAll("\"", "\\\\\"")
-				.replaceAll("\r", "\\\\015")
-				.replaceAll("\033","\\\\033")
-				.replaceAll("\001","\\\\001")
-				.replaceAll("\002","\\\\002")
-				.replaceAll("\003","\\\\003")
-				.replaceAll("\004","\\\\004")
-				.replaceAll("\022","\\\\022")
-				.replaceAll("\013","\\\\013")
-				.replaceAll("\000", "\\\\000")
-				;
+	// reuse the IR of the unchanged classes from the previous build, see IRCache
+	static boolean incremental = false;
+
+	// start an unchanged program from its typed AST, skipping the parser
+	// and the semantic analysis, see ASTCache
+	static boolean astCache = false;
+
+	// write one module per class, see ModuleSplitter
+	static boolean splitModules = false;
+
+	// link with the prebuilt runtime module instead of emitting it, see RuntimeLibrary
+	static boolean runtimeLibrary = false;
+
+	// print the divide by zero checks dropped in every method, see RangeAnalysis
+	static boolean reportChecks = false;
+
+	// Compiles the given file and returns the path of the generated IR,
+	// or null if compilation failed (the errors are printed on System.err)
+	static String compile(String filename) throws Exception{
+		return compile(Arrays.asList(filename));
 	}
 
-	static void compile(String filename) throws Exception{
-		ANTLRInputStream inStream=null;
-		try{
-			inStream = new ANTLRInputStream(new FileInputStream(filename));
-		}catch(Exception e){
-			System.err.println("Could not read file "+filename);
-			return;
+	// Compiles all the given files as a single program. The files are lexed
+	// and parsed in parallel, and the IR is named after the first file (a
+	// directory of modules with --split-modules).
+	// The compilation runs on a thread with a stack sized after the files.
+	static String compile(List<String> filenames) throws Exception{
+		long stackSize = CompileThread.getStackSize(filenames);
+		return CompileThread.call(stackSize, () -> compile(filenames, stackSize));
+	}
+
+	private static String compile(List<String> filenames, long stackSize) throws Exception{
+		// state left over by a previous compilation in the same JVM
+		Global.reset();
+
+		// an unchanged program is taken from the cache with its types
+		ASTCache cache = null;
+		String key = null;
+		AST.program program = null;
+		ProgramModel model = null;
+		if(astCache) {
+			cache = new ASTCache(new File(IRCache.DEFAULT_DIRECTORY));
+			key = ASTCache.getKey(filenames);
+			if(key != null)
+				program = cache.load(key);
+			if(program != null)
+				model = ProgramModel.build(program);
 		}
-		
-		CoolLexer lexer = new CoolLexer(inStream);
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-		tokens.fill();		
-		int lexer_flag = 0;
-		for(Token t : tokens.getTokens()){
-			if ( t.getType() == 1 ){
-				lexer_flag = 1;
-				System.err.println("Lexical error at "+t.getLine()+": "+escapeSpecialCharacters(t.getText()));	
+
+		if(program == null) {
+			program = ProgramParser.parse(filenames, stackSize);
+			if(program == null)
+				return null;
+
+			Semantic semanticAnalyzer=new Semantic(program);
+			semanticAnalyzer.getDiagnostics().print(System.err);
+			if (semanticAnalyzer.getErrorFlag()){
+				System.err.println("Compilation halter due to semantic errors.");
+				return null;
 			}
+			model = semanticAnalyzer.getProgramModel();
+			if(key != null)
+				cache.store(key, program);
 		}
-		if (lexer_flag == 1)
-			return;
-		
-		String baseFilename = Paths.get(filename).getFileName().toString();
 
-		parser_error_flag = 0;
-		CoolParser parser = new CoolParser(tokens);
-		parser.removeErrorListeners();
-		parser.addErrorListener(new ParserError(baseFilename));
-		parser.setFilename(baseFilename);
-
-		CoolParser.ProgramContext prog = null;
-		try{
-			prog = parser.program();
-		}catch(Exception e){
-		//	e.printStackTrace();
-		}
-		if(parser_error_flag == 1){
-			System.err.println("Compilation halted due to lex and parse errors");
-			return;
-		}
-		Semantic semanticAnalyzer=new Semantic(prog.value);
-		if (semanticAnalyzer.getErrorFlag()){
-			System.err.println("Compilation halter due to semantic errors.");
-			return;
-		}
+		if(reportChecks)
+			model.getRangeAnalysis().printReport(System.err);
 
-		String outputFilename = baseFilename.substring(0, baseFilename.lastIndexOf('.')) + ".ll";
+		String filename = filenames.get(0);
+		String baseFilename = Paths.get(filename).getFileName().toString();
+		String outputBase = baseFilename.substring(0, baseFilename.lastIndexOf('.'));
+
+		String outputFilename = outputBase + ".ll";
+		if(incremental)
+			Global.irCache = new IRCache(new File(IRCache.DEFAULT_DIRECTORY), outputBase);
+		if(runtimeLibrary)
+			Global.runtimeLibrary = RuntimeLibrary.getModule(new File(IRCache.DEFAULT_DIRECTORY));
+
+		if(splitModules) {
+			// a directory of modules instead of a single file
+			outputFilename = outputBase + ".modules";
+			Global.modules = new ModuleSplitter();
+			Codegen codeGenerator = new Codegen(model, Global.modules.getRuntimeWriter(), filename);
+			Global.modules.write(new File(outputFilename), filename, outputBase);
+			return outputFilename;
+		}
 
 		PrintWriter writer = new PrintWriter(outputFilename);
 
-		Codegen codeGenerator = new Codegen(prog.value, writer, filename);
+		Codegen codeGenerator = new Codegen(model, writer, filename);
 		writer.close();
+		return outputFilename;
 	}
 
 	public static void main(String args[]) throws Exception{
 
+		// leading options
+		int first = 0;
+		for(; first < args.length && args[first].startsWith("--") && !"--daemon".equals(args[first]); first++) {
+			if("--incremental".equals(args[first])) {
+				incremental = true;
+			} else if("--ast-cache".equals(args[first])) {
+				astCache = true;
+			} else if("--split-modules".equals(args[first])) {
+				splitModules = true;
+			} else if("--runtime-library".equals(args[first])) {
+				runtimeLibrary = true;
+			} else if("--report-checks".equals(args[first])) {
+				reportChecks = true;
+			} else if(!Diagnostics.parseOption(args[first])) {
+				System.err.println("Unknown option " + args[first]);
+				System.exit(1);
+			}
+		}
+		args = Arrays.copyOfRange(args, first, args.length);
 		if(args.length < 1) {
 			System.err.println("No files given");
 			System.exit(1);
 		}
-		compile(args[0]);
-	}
-
-	public static class ParserError extends BaseErrorListener {
-		
-		String filename;
-		public ParserError(String fn) {
-			super();
-			filename=fn;
-		}
-		@Override
-		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionIntLine, String msg, RecognitionException e){
-			parser_error_flag=1;
-			String sourceName = recognizer.getInputStream().getSourceName();
-			String errorMessage="";
-			if(filename!=null){
-				if(offendingSymbol instanceof CommonToken){
-					errorMessage += "\""+filename+"\", line "+line+": syntax error at or near ";
-					int typeid = ((CommonToken)offendingSymbol).getType();
-					if (typeid == -1){
-						errorMessage += "EOF";
-					}
-					else if (typeid <= VALUED_INDEX_LIMIT) {
-						errorMessage += TOKENS[typeid-1] + " = " + ((CommonToken)offendingSymbol).getText();
-					}else if(typeid >= NAMED_TOKEN_INDEX){
-						errorMessage += TOKENS[typeid-1];
-					}else{
-						errorMessage += "\'"+escapeSpecialCharacters(((CommonToken)offendingSymbol).getText())+"\'";
-					}
-				}
-			}
-			System.err.println(errorMessage);
-			throw new RuntimeException("One error found!");
+		if("--daemon".equals(args[0])) {
+			// keep the JVM warm and compile files on request
+			CompilerDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+			return;
 		}
-	}		
+		if(compile(Arrays.asList(args)) == null)
+			System.exit(1);
+	}
 }
 
 //objectid, typeid, int_const, string_const, bool_const
@@ -0,0 +1,114 @@
+package cool;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps a single JVM alive and compiles files on request, so that the
+// JVM startup and ANTLR class loading is paid only once. The DFA cache
+// of the generated lexer and parser is static, hence it stays warm
+// across the compilations as well.
+//
+// Protocol:
+//   request  : the paths of the .cl files of a program, one per line
+//              (a path may contain spaces), followed by an empty line
+//   response : zero or more 'diag <message>' lines, followed by either
+//              'ok <absolute path of the .ll file>' or 'error'
+// A 'quit' line or the end of the input ends the session.
+//
+// Usage:
+//   CompilerDaemon            serve requests on stdin/stdout
+//   CompilerDaemon <port>     serve requests on a loopback socket
+public class CompilerDaemon {
+
+    public static final String DIAG = "diag ";
+    public static final String OK = "ok ";
+    public static final String ERROR = "error";
+    public static final String QUIT = "quit";
+
+    public static void main(String args[]) throws Exception {
+        if(args.length > 0) {
+            serveSocket(Integer.parseInt(args[0]));
+        } else {
+            serve(new BufferedReader(new InputStreamReader(System.in)),
+                new PrintWriter(new OutputStreamWriter(System.out)));
+        }
+    }
+
+    // Serves clients one after the other, as the compiler state is global
+    private static void serveSocket(int port) throws Exception {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        System.err.println("Compiler daemon listening on port " + server.getLocalPort());
+        while(true) {
+            try(Socket client = server.accept()) {
+                client.setTcpNoDelay(true);
+                serve(new BufferedReader(new InputStreamReader(client.getInputStream())),
+                    new PrintWriter(new OutputStreamWriter(client.getOutputStream())));
+            } catch(Exception e) {
+                System.err.println("Client disconnected: " + e.getMessage());
+            }
+        }
+    }
+
+    // Reads requests until end of input and answers each of them
+    private static void serve(BufferedReader in, PrintWriter out) throws Exception {
+        List<String> filenames = new ArrayList<>();
+        String line;
+        while((line = in.readLine()) != null) {
+            if(filenames.isEmpty() && QUIT.equals(line)) {
+                break;
+            }
+            if(!line.isEmpty()) {
+                filenames.add(line);
+                continue;
+            }
+            if(!filenames.isEmpty()) {
+                handleRequest(filenames, out);
+                out.flush();
+                filenames = new ArrayList<>();
+            }
+        }
+        // a last request not followed by an empty line
+        if(!filenames.isEmpty())
+            handleRequest(filenames, out);
+        out.flush();
+    }
+
+    // Compiles the files of a single program, forwarding everything
+    // printed on System.err as diagnostics
+    private static void handleRequest(List<String> filenames, PrintWriter out) {
+        ByteArrayOutputStream errBuffer = new ByteArrayOutputStream();
+        PrintStream oldErr = System.err;
+        String outputFilename = null;
+        System.setErr(new PrintStream(errBuffer, true));
+        try {
+            outputFilename = CodegenTest.compile(filenames);
+        } catch(Throwable e) {
+            System.err.println("Internal compiler error: " + e);
+            outputFilename = null;
+        } finally {
+            System.err.flush();
+            System.setErr(oldErr);
+        }
+
+        for(String diagnostic : errBuffer.toString().split("\n")) {
+            if(!diagnostic.isEmpty()) {
+                out.println(DIAG + diagnostic);
+            }
+        }
+        if(outputFilename == null) {
+            out.println(ERROR);
+        } else {
+            out.println(OK + new File(outputFilename).getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package cool;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Diagnostics of a compilation, collected as the checks find them and
+// printed once at the end.
+//
+// A diagnostic has a severity, a position (file, line and column, 0 when
+// unknown) and the code of the check which reported it. They are kept in
+// flat arrays with the file names interned. A diagnostic equal to one
+// already reported is dropped, and past the limit only the number of the
+// further errors is kept, so the cascade of errors of a broken source
+// stays readable.
+//
+// Output formats, one diagnostic per line:
+//   text : <file>:<line>: <message>
+//   json : {"severity":..,"file":..,"line":..,"column":..,"code":..,"message":..}
+public class Diagnostics {
+
+    public enum Severity { ERROR, WARNING }
+
+    public enum Format { TEXT, JSON }
+
+    // Codes of the checks
+    public static final String CLASS_GRAPH = "class-graph";    // class definitions and inheritance
+    public static final String FEATURE = "feature";            // attribute and method definitions
+    public static final String TYPE = "type";                  // types of the expressions
+    public static final String LIMIT = "limit";                // errors left out past the limit
+
+    public static final int DEFAULT_MAX_ERRORS = 100;
+
+    // Output settings, from the command line
+    public static Format format = Format.TEXT;
+    public static int maxErrors = DEFAULT_MAX_ERRORS;
+
+    private int size = 0;
+    private byte[] severities = new byte[16];
+    private int[] files = new int[16];
+    private int[] lines = new int[16];
+    private int[] columns = new int[16];
+    private String[] codes = new String[16];
+    private String[] messages = new String[16];
+
+    // interned file names
+    private List<String> fileNames = new ArrayList<>();
+    private Map<String,Integer> fileIds = new HashMap<>();
+
+    // diagnostics reported so far, to drop repeated ones
+    private Set<String> seen = new HashSet<>();
+
+    private int errorCount = 0;
+    private int suppressedErrors = 0;
+
+    public void error(String code, String filename, int line, String message) {
+        add(Severity.ERROR, code, filename, line, 0, message);
+    }
+
+    public void add(Severity severity, String code, String filename, int line, int column, String message) {
+        if(!seen.add(filename + ":" + line + ":" + column + ":" + code + ":" + message))
+            return;
+        if(severity == Severity.ERROR) {
+            errorCount++;
+            if(errorCount > maxErrors) {
+                suppressedErrors++;
+                return;
+            }
+        }
+        if(size == messages.length) {
+            int capacity = 2 * size;
+            severities = Arrays.copyOf(severities, capacity);
+            files = Arrays.copyOf(files, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            codes = Arrays.copyOf(codes, capacity);
+            messages = Arrays.copyOf(messages, capacity);
+        }
+        severities[size] = (byte) severity.ordinal();
+        files[size] = internFile(filename);
+        lines[size] = line;
+        columns[size] = column;
+        codes[size] = code;
+        messages[size] = message;
+        size++;
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    // Prints the diagnostics collected so far in the output format and clears them
+    public void print(PrintStream out) {
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < size; i++) {
+            Severity severity = Severity.values()[severities[i]];
+            appendLine(builder, severity, fileNames.get(files[i]), lines[i], columns[i], codes[i], messages[i]);
+        }
+        if(suppressedErrors > 0) {
+            appendLine(builder, Severity.ERROR, null, 0, 0, LIMIT,
+                suppressedErrors + " more errors not shown, the limit is " + maxErrors);
+        }
+        out.print(builder);
+        out.flush();
+        size = 0;
+        suppressedErrors = 0;
+    }
+
+    private void appendLine(StringBuilder builder, Severity severity, String file, int line, int column, String code, String message) {
+        if(format == Format.JSON) {
+            builder.append("{\"severity\":\"").append(severity.name().toLowerCase()).append("\",\"file\":");
+            appendJsonString(builder, file);
+            builder.append(",\"line\":").append(line).append(",\"column\":").append(column).append(",\"code\":");
+            appendJsonString(builder, code);
+            builder.append(",\"message\":");
+            appendJsonString(builder, message);
+            builder.append("}\n");
+        } else {
+            if(file != null) {
+                builder.append(file).append(':').append(line).append(':');
+                if(column > 0)
+                    builder.append(column).append(':');
+                builder.append(' ');
+            }
+            if(severity == Severity.WARNING)
+                builder.append("warning: ");
+            builder.append(message).append('\n');
+        }
+    }
+
+    private static void appendJsonString(StringBuilder builder, String s) {
+        if(s == null) {
+            builder.append("null");
+            return;
+        }
+        builder.append('"');
+        for(int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if(c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if(c < 0x20) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        builder.append('"');
+    }
+
+    private int internFile(String filename) {
+        Integer id = fileIds.get(filename);
+        if(id == null) {
+            id = fileNames.size();
+            fileNames.add(filename);
+            fileIds.put(filename, id);
+        }
+        return id;
+    }
+
+    // Sets the output from a command line option, returns 'false' if it is not one
+    public static boolean parseOption(String option) {
+        if("--diagnostics=json".equals(option)) {
+            format = Format.JSON;
+        } else if("--diagnostics=text".equals(option)) {
+            format = Format.TEXT;
+        } else if(option.startsWith("--max-errors=")) {
+            maxErrors = Integer.parseInt(option.substring("--max-errors=".length()));
+        } else {
+            return false;
+        }
+        return true;
+    }
+}
@@ -1,5 +1,9 @@
 package cool;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 abstract class ExpressionVisitorImpl implements Visitor {
     /* NOTE: to know about the individual visit functions
              Check Visitor.java */
@@ -15,10 +19,10 @@ abstract class ExpressionVisitorImpl implements Visitor {
         String storeID;
         String variableType = Global.scopeTable.lookUpGlobal(expr.name);
         if(!variableType.equals(expr.e1.type)) {
-            if(Utils.isPrimitiveType(expr.e1.type)) {
+            if(Utils.isPrimitiveType(expr.e1.typeId)) {
                 // creating new object, as primitive cant be stored in object struct directly
                 AST.new_ newObj = new AST.new_(Global.Constants.ROOT_TYPE, 0);
-                newObj.type = Global.Constants.ROOT_TYPE;
+                newObj.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
                 castVal = this.visit(newObj);
                 // fixing the typename
                 String typenameGEP = IRPrinter.createTypeNameGEP(castVal);
@@ -49,10 +53,10 @@ abstract class ExpressionVisitorImpl implements Visitor {
             String stringReg = expr.caller.accept(this);
             String strlenReg = IRPrinter.createCallInst("i64", "strlen", "i8* " + stringReg);
             def = IRPrinter.createConvertInst(strlenReg,"i64","i32",IRPrinter.TRUNC);
-        } else if(Utils.isPrimitiveType(expr.caller.type) && "abort".equals(expr.name)) {
+        } else if(Utils.isPrimitiveType(expr.caller.typeId) && "abort".equals(expr.name)) {
             expr.caller.accept(this);
             def = IRPrinter.createAbortForPrimitive(expr.caller.type);
-        } else if(Utils.isPrimitiveType(expr.caller.type) && "type_name".equals(expr.name)) {
+        } else if(Utils.isPrimitiveType(expr.caller.typeId) && "type_name".equals(expr.name)) {
             expr.caller.accept(this);
             def = IRPrinter.createStringGEP(expr.caller.type);
         }
@@ -68,30 +72,9 @@ abstract class ExpressionVisitorImpl implements Visitor {
         }
 
         String caller = expr.caller.accept(this);
-        if(!Utils.isPrimitiveType(expr.caller.type)) {
-            // Adding check for dispatch on void
-            String ifThenLabel = IRPrinter.getLabel("if.then",false);
-            String ifElseLabel = IRPrinter.getLabel("if.else",false);
-            String ifEndLabel = IRPrinter.getLabel("if.end",false);
-
-            // checking for null
-            String cmpInst = IRPrinter.createBinaryInst(IRPrinter.EQ, caller, "null", expr.caller.type, false, false);
-            IRPrinter.createCondBreak(cmpInst, ifThenLabel, ifElseLabel);
-
-            // exit if null
-            IRPrinter.createLabel(ifThenLabel);
-            IRPrinter.createVoidCallInst(Global.Constants.VOID_CALL_FUNCTION, "i32 "+expr.lineNo);
-            Global.out.println(IRPrinter.INDENT+"call void @exit(i32 1)");
-
-            IRPrinter.createBreakInst(ifEndLabel);
+        createVoidCheck(caller, expr.caller, expr.lineNo);
 
-            IRPrinter.createLabel(ifElseLabel);
-            IRPrinter.createBreakInst(ifEndLabel);
-
-            IRPrinter.createLabel(ifEndLabel);
-        }
-
-        String mthdClass = Utils.getNearestParentWithMethod(expr.typeid, expr.name);
+        String mthdClass = Global.programModel.resolveMethod(expr.typeid, expr.name);
 
         if(!mthdClass.equals(expr.caller.type)) {
             // bitcast caller if method is not from same class
@@ -102,34 +85,166 @@ abstract class ExpressionVisitorImpl implements Visitor {
         StringBuilder builder = new StringBuilder();
         builder.append(Utils.getBasicTypeOrPointer(mthdClass)).append(" ").append(caller);
         for(AST.expression argument : expr.actuals) {
-            builder.append(", ").append(Utils.getBasicTypeOrPointer(argument.type))
+            builder.append(", ").append(Utils.getBasicTypeOrPointer(argument.typeId))
             .append(" ").append(argument.accept(this));
         }
         // calling function
-        String returnValue = IRPrinter.createCallInst(expr.type, Utils.getMangledName(mthdClass, 
+        String returnValue = IRPrinter.createCallInst(expr.typeId, Utils.getMangledName(mthdClass, 
                             expr.name), builder.toString());
         return returnValue;
     }
 
+    // Calls the method of the class of the receiver. The classes reaching the
+    // call are known from the type flow analysis: with a single method to call
+    // it is called directly, as for a static dispatch, otherwise the type name
+    // stored in the receiver selects the method to call.
+    public String visit(AST.dispatch expr) {
+        Map<String,List<String>> targets = Global.programModel.getTypeFlow().getDispatchTargets(expr);
+        if(targets.size() <= 1) {
+            // without any object reaching it, the call can only be on void
+            String mthdClass = targets.isEmpty() ? expr.caller.type : targets.keySet().iterator().next();
+            AST.static_dispatch direct = new AST.static_dispatch(expr.caller, mthdClass, expr.name, expr.actuals, expr.lineNo);
+            direct.setType(expr.type, expr.typeId);
+            return visit(direct);
+        }
+
+        String caller = expr.caller.accept(this);
+        createVoidCheck(caller, expr.caller, expr.lineNo);
+
+        StringBuilder arguments = new StringBuilder();
+        for(AST.expression argument : expr.actuals) {
+            arguments.append(", ").append(Utils.getBasicTypeOrPointer(argument.typeId))
+            .append(" ").append(argument.accept(this));
+        }
+
+        // type name of the receiver
+        String objBitcast = caller;
+        if(expr.caller.typeId != TypeTable.OBJECT)
+            objBitcast = IRPrinter.createConvertInst(caller, expr.caller.type,
+                            Global.Constants.ROOT_TYPE, IRPrinter.BITCAST);
+        String typename = IRPrinter.createLoadInst(IRPrinter.createTypeNameGEP(objBitcast), "i8*");
+
+        String dispatchEndLabel = IRPrinter.getLabel("dispatch.end",false);
+        List<String> returnValues = new ArrayList<>();
+        List<String> callLabels = new ArrayList<>();
+        int remaining = targets.size();
+        for(Map.Entry<String,List<String>> target : targets.entrySet()) {
+            remaining--;
+            String callLabel = IRPrinter.getLabel("dispatch.call",false);
+            String nextLabel = null;
+            if(remaining > 0) {
+                // testing the classes calling this method, the last method needs no test
+                nextLabel = IRPrinter.getLabel("dispatch.next",false);
+                List<String> receiverClasses = target.getValue();
+                for(int i = 0; i < receiverClasses.size(); i++) {
+                    String className = IRPrinter.createStringGEP(receiverClasses.get(i));
+                    String cmpInst = IRPrinter.createBinaryInst(IRPrinter.EQ, typename, className,
+                                        Global.Constants.STRING_TYPE, false, false);
+                    String testLabel = i + 1 < receiverClasses.size() ? IRPrinter.getLabel("dispatch.test",false) : nextLabel;
+                    IRPrinter.createCondBreak(cmpInst, callLabel, testLabel);
+                    if(testLabel != nextLabel)
+                        IRPrinter.createLabel(testLabel);
+                }
+            } else {
+                IRPrinter.createBreakInst(callLabel);
+            }
+
+            IRPrinter.createLabel(callLabel);
+            String mthdClass = target.getKey();
+            String receiver = caller;
+            if(!mthdClass.equals(expr.caller.type)) {
+                // bitcast caller if method is not from same class
+                receiver = IRPrinter.createConvertInst(caller, expr.caller.type, mthdClass, IRPrinter.BITCAST);
+            }
+            returnValues.add(IRPrinter.createCallInst(expr.typeId, Utils.getMangledName(mthdClass, expr.name),
+                            Utils.getBasicTypeOrPointer(mthdClass) + " " + receiver + arguments));
+            callLabels.add(callLabel);
+            IRPrinter.createBreakInst(dispatchEndLabel);
+
+            if(nextLabel != null)
+                IRPrinter.createLabel(nextLabel);
+        }
+
+        IRPrinter.createLabel(dispatchEndLabel);
+        return IRPrinter.createPHINode(expr.typeId, returnValues, callLabels);
+    }
+
+    // Exits with an error if the receiver of a dispatch is void
+    private void createVoidCheck(String caller, AST.expression callerExpr, int lineNo) {
+        if(Utils.isPrimitiveType(callerExpr.typeId))
+            return;
+        // Adding check for dispatch on void
+        String ifThenLabel = IRPrinter.getLabel("if.then",false);
+        String ifElseLabel = IRPrinter.getLabel("if.else",false);
+
+        // checking for null
+        String cmpInst = IRPrinter.createBinaryInst(IRPrinter.EQ, caller, "null", callerExpr.typeId, false, false);
+        IRPrinter.createUnlikelyCondBreak(cmpInst, ifThenLabel, ifElseLabel);
+
+        // exit if null
+        IRPrinter.createLabel(ifThenLabel);
+        IRPrinter.createErrorCall(Global.Constants.VOID_CALL_FUNCTION, lineNo);
+
+        IRPrinter.createLabel(ifElseLabel);
+    }
+
+    // Branches to 'trueLabel' or 'falseLabel' on the value of a predicate.
+    // Comparisons branch on their i1 result and 'not' swaps the labels, the
+    // i8 value of a Bool is only materialized for the other expressions.
+    private void createCondition(AST.expression predicate, String trueLabel, String falseLabel) {
+        if(predicate instanceof AST.comp) {
+            createCondition(((AST.comp) predicate).e1, falseLabel, trueLabel);
+            return;
+        }
+        if(predicate instanceof AST.bool_const) {
+            IRPrinter.createBreakInst(((AST.bool_const) predicate).value ? trueLabel : falseLabel);
+            return;
+        }
+        String cmpInst;
+        if(predicate instanceof AST.lt) {
+            AST.lt lt = (AST.lt) predicate;
+            cmpInst = createComparison(IRPrinter.SLT, lt.e1, lt.e2);
+        } else if(predicate instanceof AST.leq) {
+            AST.leq leq = (AST.leq) predicate;
+            cmpInst = createComparison(IRPrinter.SLE, leq.e1, leq.e2);
+        } else if(predicate instanceof AST.eq) {
+            AST.eq eq = (AST.eq) predicate;
+            cmpInst = createComparison(IRPrinter.EQ, eq.e1, eq.e2);
+        } else if(predicate instanceof AST.isvoid && !Utils.isPrimitiveType(((AST.isvoid) predicate).e1.typeId)) {
+            AST.expression e1 = ((AST.isvoid) predicate).e1;
+            String op = e1.accept(this);
+            cmpInst = IRPrinter.createBinaryInst(IRPrinter.EQ, op, "null", e1.typeId, false, false);
+        } else {
+            String value = predicate.accept(this);
+            cmpInst = IRPrinter.createConvertInst(value, "i8", "i1", IRPrinter.TRUNC);
+        }
+        IRPrinter.createCondBreak(cmpInst, trueLabel, falseLabel);
+    }
+
+    // i1 result of comparing the values of two expressions
+    private String createComparison(String opType, AST.expression e1, AST.expression e2) {
+        String op1 = e1.accept(this);
+        String op2 = e2.accept(this);
+        return IRPrinter.createBinaryInst(opType, op1, op2, e1.typeId, false, false);
+    }
+
     public String visit(AST.cond expr) {
         String ifThenLabel = IRPrinter.getLabel("if.then",false);
         String ifElseLabel = IRPrinter.getLabel("if.else",false);
         String ifEndLabel = IRPrinter.getLabel("if.end",false);
-        String resultType = Global.inheritanceGraph.getJoinOf(expr.ifbody.type,expr.elsebody.type);
+        int resultType = Global.programModel.getGraph().getJoinOf(expr.ifbody.typeId,expr.elsebody.typeId);
+        String resultTypeName = Global.typeTable.getName(resultType);
         
         // result of if.then and if.else will be stored in this register
         String retVal = IRPrinter.createAlloca(resultType);
 
-        String cmpInst = expr.predicate.accept(this);
-        String truncVar = IRPrinter.createConvertInst(cmpInst, "i8", "i1", IRPrinter.TRUNC);
-        
-        IRPrinter.createCondBreak(truncVar, ifThenLabel, ifElseLabel);
+        createCondition(expr.predicate, ifThenLabel, ifElseLabel);
         
         // if then
         IRPrinter.createLabel(ifThenLabel);
         String ifBody = expr.ifbody.accept(this);
-        if(!resultType.equals(expr.ifbody.type)) {
-            ifBody = IRPrinter.createConvertInst(ifBody, expr.ifbody.type, resultType, IRPrinter.BITCAST);
+        if(resultType != expr.ifbody.typeId) {
+            ifBody = IRPrinter.createConvertInst(ifBody, expr.ifbody.type, resultTypeName, IRPrinter.BITCAST);
         }
         if(Utils.isPrimitiveType(resultType)) {
             IRPrinter.createStoreInst(ifBody, retVal, Utils.getBasicType(resultType));
@@ -142,8 +257,8 @@ abstract class ExpressionVisitorImpl implements Visitor {
         // if else
         IRPrinter.createLabel(ifElseLabel);
         String ifElse = expr.elsebody.accept(this);
-        if(!resultType.equals(expr.elsebody.type)) {
-            ifElse = IRPrinter.createConvertInst(ifElse, expr.elsebody.type, resultType, IRPrinter.BITCAST);
+        if(resultType != expr.elsebody.typeId) {
+            ifElse = IRPrinter.createConvertInst(ifElse, expr.elsebody.type, resultTypeName, IRPrinter.BITCAST);
         }
         if(Utils.isPrimitiveType(resultType)) {
             IRPrinter.createStoreInst(ifElse, retVal, Utils.getBasicType(resultType));
@@ -170,10 +285,7 @@ abstract class ExpressionVisitorImpl implements Visitor {
 
         IRPrinter.createLabel(whileCondLabel);
 
-        String whilePredicate = expr.predicate.accept(this);
-        String truncVar = IRPrinter.createConvertInst(whilePredicate, "i8", "i1", IRPrinter.TRUNC);
-
-        IRPrinter.createCondBreak(truncVar,whileBodyLabel,whileEndLabel);
+        createCondition(expr.predicate, whileBodyLabel, whileEndLabel);
 
         IRPrinter.createLabel(whileBodyLabel);
         String whileBody = expr.body.accept(this);
@@ -198,7 +310,7 @@ abstract class ExpressionVisitorImpl implements Visitor {
             return Utils.getDefaultValue(expr.typeid);
         }
         // allocating using malloc
-        String bytesToAllocate = ""+Global.classSizeMap.get(expr.typeid);
+        String bytesToAllocate = ""+Global.programModel.getSize(expr.typeid);
         String storeRegisterForCall = IRPrinter.createMallocInst(bytesToAllocate);
         String returnValue = IRPrinter.createConvertInst(storeRegisterForCall, "i8*", 
                                         expr.typeid, IRPrinter.BITCAST);
@@ -219,87 +331,77 @@ abstract class ExpressionVisitorImpl implements Visitor {
 
     public String visit(AST.isvoid expr) {
         String op = expr.e1.accept(this);
-        if(Utils.isPrimitiveType(expr.e1.type)) {
+        if(Utils.isPrimitiveType(expr.e1.typeId)) {
             return "0";
         }
-        String binResult = IRPrinter.createBinaryInst(IRPrinter.EQ, op, "null", expr.e1.type, false, false);
+        String binResult = IRPrinter.createBinaryInst(IRPrinter.EQ, op, "null", expr.e1.typeId, false, false);
         return IRPrinter.createConvertInst(binResult, "i1", "i8", IRPrinter.ZEXT);
     }
 
     public String visit(AST.plus expr) {
         String op1 = expr.e1.accept(this);
         String op2 = expr.e2.accept(this);
-        return IRPrinter.createBinaryInst(IRPrinter.ADD, op1, op2, expr.type, false, true);
+        return IRPrinter.createBinaryInst(IRPrinter.ADD, op1, op2, expr.typeId, false, true);
     }
 
     public String visit(AST.sub expr) {
         String op1 = expr.e1.accept(this);
         String op2 = expr.e2.accept(this);
-        return IRPrinter.createBinaryInst(IRPrinter.SUB, op1, op2, expr.type, false, true);
+        return IRPrinter.createBinaryInst(IRPrinter.SUB, op1, op2, expr.typeId, false, true);
     }
     
     public String visit(AST.mul expr) {
         String op1 = expr.e1.accept(this);
         String op2 = expr.e2.accept(this);
-        return IRPrinter.createBinaryInst(IRPrinter.MUL, op1, op2, expr.type, false, true);
+        return IRPrinter.createBinaryInst(IRPrinter.MUL, op1, op2, expr.typeId, false, true);
     }
     
     public String visit(AST.divide expr) {
         String op1 = expr.e1.accept(this);
         String op2 = expr.e2.accept(this);
+        if(Global.programModel.getRangeAnalysis().isNonZeroDivisor(expr))
+            return IRPrinter.createBinaryInst(IRPrinter.DIV, op1, op2, expr.typeId, false, false);
         
         // divide by 0 check
         String ifThenLabel = IRPrinter.getLabel("if.then",false);
         String ifElseLabel = IRPrinter.getLabel("if.else",false);
-        String ifEndLabel = IRPrinter.getLabel("if.end",false);
 
-        String cmpInst = IRPrinter.createBinaryInst(IRPrinter.EQ, op2, "0", Global.Constants.INT_TYPE, false, false);;
-        IRPrinter.createCondBreak(cmpInst, ifThenLabel, ifElseLabel);
+        String cmpInst = IRPrinter.createBinaryInst(IRPrinter.EQ, op2, "0", TypeTable.INT, false, false);;
+        IRPrinter.createUnlikelyCondBreak(cmpInst, ifThenLabel, ifElseLabel);
         
         // if divide by 0.then
         IRPrinter.createLabel(ifThenLabel);
-        IRPrinter.createVoidCallInst(Global.Constants.DIVIDE_BY_ZERO_FUNCTION, "i32 "+expr.lineNo);
-        Global.out.println(IRPrinter.INDENT+"call void @exit(i32 1)");
-        IRPrinter.createBreakInst(ifEndLabel);
+        IRPrinter.createErrorCall(Global.Constants.DIVIDE_BY_ZERO_FUNCTION, expr.lineNo);
  
-        // else jump to end
+        // else divide
         IRPrinter.createLabel(ifElseLabel);
-        IRPrinter.createBreakInst(ifEndLabel);
-        
-        IRPrinter.createLabel(ifEndLabel);
 
-        return IRPrinter.createBinaryInst(IRPrinter.DIV, op1, op2, expr.type, false, false);
+        return IRPrinter.createBinaryInst(IRPrinter.DIV, op1, op2, expr.typeId, false, false);
     }
     
     public String visit(AST.comp expr) {
         String op = expr.e1.accept(this);
-        return IRPrinter.createBinaryInst(IRPrinter.XOR, op, "1", expr.e1.type, false, false);
+        return IRPrinter.createBinaryInst(IRPrinter.XOR, op, "1", expr.e1.typeId, false, false);
     }
     
     public String visit(AST.lt expr) {
-        String op1 = expr.e1.accept(this);
-        String op2 = expr.e2.accept(this);
-        String binResult = IRPrinter.createBinaryInst(IRPrinter.SLT, op1, op2, expr.e1.type, false, false);
+        String binResult = createComparison(IRPrinter.SLT, expr.e1, expr.e2);
         return IRPrinter.createConvertInst(binResult, "i1", "i8", IRPrinter.ZEXT);
     }
     
     public String visit(AST.leq expr) {
-        String op1 = expr.e1.accept(this);
-        String op2 = expr.e2.accept(this);
-        String binResult = IRPrinter.createBinaryInst(IRPrinter.SLE, op1, op2, expr.e1.type, false, false);
+        String binResult = createComparison(IRPrinter.SLE, expr.e1, expr.e2);
         return IRPrinter.createConvertInst(binResult, "i1", "i8", IRPrinter.ZEXT);
     }
     
     public String visit(AST.eq expr) {
-        String op1 = expr.e1.accept(this);
-        String op2 = expr.e2.accept(this);
-        String binResult = IRPrinter.createBinaryInst(IRPrinter.EQ, op1, op2, expr.e1.type, false, false);
+        String binResult = createComparison(IRPrinter.EQ, expr.e1, expr.e2);
         return IRPrinter.createConvertInst(binResult, "i1", "i8", IRPrinter.ZEXT);
     }
     
     public String visit(AST.neg expr) {
         String op = expr.e1.accept(this);
-        return IRPrinter.createBinaryInst(IRPrinter.SUB, "0", op, expr.type, false, true);
+        return IRPrinter.createBinaryInst(IRPrinter.SUB, "0", op, expr.typeId, false, true);
     }
     
     public String visit(AST.object expr) {
@@ -307,14 +409,14 @@ abstract class ExpressionVisitorImpl implements Visitor {
             return "%this";
         }
         if(Global.methodParams.contains(expr.name)) {
-            return IRPrinter.createLoadInst("%"+expr.name+".addr", Utils.getBasicTypeOrPointer(expr.type));
+            return IRPrinter.createLoadInst("%"+expr.name+".addr", Utils.getBasicTypeOrPointer(expr.typeId));
         } else {
             String objectPointer = IRPrinter.createClassAttrGEP(Global.currentClass,"%this",expr.name);
-            if(Utils.isPrimitiveType(expr.type)) {
-                objectPointer = IRPrinter.createLoadInst(objectPointer, Utils.getBasicType(expr.type));
+            if(Utils.isPrimitiveType(expr.typeId)) {
+                objectPointer = IRPrinter.createLoadInst(objectPointer, Utils.getBasicType(expr.typeId));
             }
             else {
-                objectPointer = IRPrinter.createLoadInst(objectPointer, Utils.getBasicType(expr.type)+"*");
+                objectPointer = IRPrinter.createLoadInst(objectPointer, Utils.getBasicType(expr.typeId)+"*");
             }
             return objectPointer;
         }
@@ -345,10 +447,6 @@ abstract class ExpressionVisitorImpl implements Visitor {
 
     public String visit(AST.branch expr) {
         return null;
-    }   
-
-    public String visit(AST.dispatch expr) {
-        return null;
     }
 
 }
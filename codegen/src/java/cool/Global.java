@@ -1,11 +1,15 @@
 package cool;
 
 import java.lang.StringBuilder;
+import java.io.File;
 import java.io.PrintWriter;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.ArrayList;
 
 public class Global {
 
@@ -23,9 +27,14 @@ public class Global {
         public static final String ABORT_MESSAGE = "\nAbort called from class ";
     }
 
-    // Contains graph after parsing all the classes and its parents
-    // The base classes are also updated in this.
-    public static InheritanceGraph inheritanceGraph;
+    // ids of the types of the program
+    public static TypeTable typeTable;
+
+    // classes of the program being compiled, see ProgramModel
+    public static ProgramModel programModel;
+
+    // IR strings of the classes by type id, see Utils.getDescriptor
+    public static List<ClassDescriptor> classDescriptors;
 
     // this set is updated with the names of method
     // parameters when visiting a method (set is cleared before)
@@ -35,20 +44,11 @@ public class Global {
     // used to avoid same name for different labels
     public static Map<String,Integer> labelToCountMap;
 
-    // has a map of class_name->size_of_struct for that class
-    public static Map<String,Integer> classSizeMap;
-
-    // current number of string constants
-    // used to give name to global string constant register
-    public static int stringRegisterCounter;
-
-    // Its a map of string_constant->global register name for that string constant
+    // Its a map of string_constant->global register name for that string constant,
+    // filled by Utils.addStringConstant. Sorted, so that the constants are declared
+    // in the same order whichever way they were registered.
     public static Map<String,String> stringConstantToRegisterMap;
 
-    // This map is used to get index list for getelementpointer for a particular variable in the struct
-    // this stores double map of class_name->variable_name->index list as string
-    // so for GEP index list of variable 'a' in class 'A', you will search for (map('A'))('a')
-    public static Map<String,Map<String,String>> classToVariableToIndexListMap;
     
     // The writer to which the IR should be written
     public static PrintWriter out;
@@ -59,9 +59,6 @@ public class Global {
     // Name of current class which is being visited
     public static String currentClass;
 
-    // All the functions present in the program, stored as mangled names
-    public static Set<String> functionMangledNames;
-
     // return type of the main
     // populated while visiting the classes
     public static String mainReturnType;
@@ -69,18 +66,37 @@ public class Global {
     // to store variable name with type info
     public static ScopeTable<String> scopeTable;
 
+    // cache of the IR of the classes, null unless compiling incrementally
+    public static IRCache irCache;
+
+    // modules of the classes, null unless the program is split in modules
+    public static ModuleSplitter modules;
+
+    // runtime library module linked with the program, null if the
+    // runtime is emitted with the program, see RuntimeLibrary
+    public static File runtimeLibrary;
+
     static {
+        reset();
+    }
+
+    // Clears all the compilation state, so that the same JVM
+    // can compile another program (used by the compiler daemon)
+    public static void reset() {
+        typeTable = new TypeTable();
+        programModel = null;
+        classDescriptors = new ArrayList<>();
+        out = null;
+        currentClass = null;
+        mainReturnType = null;
+        irCache = null;
+        modules = null;
+        runtimeLibrary = null;
         methodParams = new HashSet<>();
-        functionMangledNames = new HashSet<>();
         labelToCountMap = new HashMap<>();
-        classSizeMap = new HashMap<>();
-        stringConstantToRegisterMap = new HashMap<>();
-        classToVariableToIndexListMap = new HashMap<>();
+        stringConstantToRegisterMap = new TreeMap<>();
         scopeTable = new ScopeTable<>();
         registerCounter = 0;
-        stringRegisterCounter = 0;
     }
 
-
-
 }
@@ -0,0 +1,227 @@
+package cool;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+// On-disk cache of the IR emitted for each class, used for incremental builds.
+//
+// Every class gets a fingerprint which covers
+//  * the typed AST of the class (features, types and line numbers), read
+//    from the rows of the class in ArenaAST,
+//  * the struct layout of the class and of all its ancestors,
+//  * the layouts of the other classes its IR refers to (see References),
+//    which fix their struct sizes and the bitcasts to their parents, and
+//    the classes defining the methods of its static dispatches,
+//  * the methods reached by the dispatches of the class, found by TypeFlow,
+//  * which of its methods and whether its constructor are emitted.
+// The registers of the string constants are named after their values (see
+// Utils.addStringConstant), so they are covered by the AST of the class.
+// The IR of a class (its methods and its constructor) is reused as long as
+// its fingerprint does not change. Editing a method body only regenerates the
+// class of that method, while changing the layout of a class regenerates the
+// class, all its descendants and the classes referring to it.
+public class IRCache {
+
+    // Bump this whenever the generated IR changes, to drop stale entries
+    public static final int VERSION = 8;
+
+    public static final String DEFAULT_DIRECTORY = ".coolcache";
+
+    public static final String METHODS_SECTION = "methods";
+    public static final String CONSTRUCTOR_SECTION = "constructor";
+
+    private static final String FINGERPRINT_PREFIX = "; fingerprint ";
+
+    // Directory with the entries of the program being compiled
+    private File directory;
+
+    // class name -> fingerprint, filled by 'prepare'
+    private Map<String,String> fingerprints;
+
+    // Entries of a program are kept in their own directory, named
+    // after its output, so programs sharing class names do not collide
+    public IRCache(File root, String programName) {
+        directory = new File(root, programName);
+        fingerprints = new HashMap<>();
+    }
+
+    // Computes the fingerprints of all the classes. Has to be called after
+    // the string constants and the struct layouts have been generated.
+    // The classes are read from the arena form of the program.
+    public void prepare() {
+        ArenaAST arena = Global.programModel.getArena();
+        // class name -> digest of the layout of the class and its ancestors,
+        // built from the one of the parent
+        Map<String,String> layouts = new HashMap<>();
+        InheritanceGraph graph = Global.programModel.getGraph();
+        graph.walkDepthFirst(graph.getRootNode(), node -> {
+            String className = node.getAstClass().name;
+            String parentName = node.getParent() == null ? null : node.getParent().getAstClass().name;
+            StringBuilder builder = new StringBuilder();
+            appendLayout(builder, arena, className, parentName);
+            if(parentName != null) {
+                builder.append(layouts.get(parentName));
+            }
+            layouts.put(className, digest(builder.toString()));
+        });
+
+        for(AST.class_ cl : Global.programModel.getProgram().classes) {
+            int classNode = arena.getClassNode(cl.name);
+            References references = new References(arena, classNode);
+            StringBuilder builder = new StringBuilder();
+            builder.append(VERSION).append('\n');
+            builder.append(layouts.get(cl.name)).append('\n');
+            for(String className : references.classes) {
+                builder.append(className).append('=').append(layouts.get(className)).append(';');
+            }
+            builder.append('\n');
+            for(String call : references.calls) {
+                builder.append(call).append(';');
+            }
+            builder.append('\n');
+            appendNodes(builder, arena, classNode);
+            builder.append(Global.programModel.getTypeFlow().getDispatchSummary(cl.name));
+            builder.append(Global.programModel.getReachability().getSummary(cl));
+            builder.append(Global.programModel.getRangeAnalysis().getSummary(cl.name));
+            fingerprints.put(cl.name, digest(builder.toString()));
+        }
+    }
+
+    // Returns the cached IR of a section of the class, null if it has changed
+    public String lookup(String className, String section) {
+        String fingerprint = fingerprints.get(className);
+        File entry = getEntry(className, section);
+        if(fingerprint == null || !entry.isFile()) {
+            return null;
+        }
+        try {
+            String text = new String(Files.readAllBytes(entry.toPath()), StandardCharsets.UTF_8);
+            int lineEnd = text.indexOf('\n');
+            if(lineEnd < 0 || !text.substring(0, lineEnd).equals(FINGERPRINT_PREFIX + fingerprint)) {
+                return null;
+            }
+            return text.substring(lineEnd + 1);
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    // Stores the IR of a section of the class, failures only cost a rebuild
+    public void store(String className, String section, String ir) {
+        String fingerprint = fingerprints.get(className);
+        if(fingerprint == null)
+            return;
+        try {
+            directory.mkdirs();
+            String text = FINGERPRINT_PREFIX + fingerprint + "\n" + ir;
+            Files.write(getEntry(className, section).toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch(IOException e) {
+            System.err.println("Could not write IR cache entry for class " + className + ": " + e.getMessage());
+        }
+    }
+
+    private File getEntry(String className, String section) {
+        return new File(directory, className + "." + section + ".ll");
+    }
+
+    // Attribute names and types of a class, they fix its struct layout.
+    // The default classes are not in the arena, they have no attributes.
+    private void appendLayout(StringBuilder builder, ArenaAST arena, String className, String parentName) {
+        builder.append(className).append(':').append(parentName).append('{');
+        int classNode = arena.getClassNode(className);
+        if(classNode != ArenaAST.NONE) {
+            for(int node = classNode + 1; node < arena.getEnd(classNode); node = arena.getEnd(node)) {
+                if(arena.getKind(node) == ArenaAST.ATTR) {
+                    builder.append(arena.getName(node)).append(':').append(arena.getDecl(node)).append(';');
+                }
+            }
+        }
+        builder.append("}\n");
+    }
+
+    // Every node of the subtree of the class, in pre order with the
+    // size of its subtree, which is enough to tell the trees apart
+    private void appendNodes(StringBuilder builder, ArenaAST arena, int classNode) {
+        for(int node = classNode; node < arena.getEnd(classNode); node++) {
+            builder.append(arena.getKind(node)).append(',')
+                .append(arena.getLine(node)).append(',')
+                .append(arena.getEnd(node) - node).append(',')
+                .append(arena.getName(node)).append(',')
+                .append(arena.getDecl(node)).append(',')
+                .append(arena.getType(node)).append(',');
+            int kind = arena.getKind(node);
+            if(kind == ArenaAST.STRING_CONST || kind == ArenaAST.CLASS) {
+                builder.append(quote(arena.getString(arena.getValue(node))));
+            } else {
+                builder.append(arena.getValue(node));
+            }
+            builder.append('\n');
+        }
+    }
+
+    // Keeps the strings from running into the next fields
+    private static String quote(String s) {
+        return s == null ? "null" : s.length() + ":" + s;
+    }
+
+    // Hex SHA-1 of the text
+    static String digest(String text) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder();
+            for(byte b : md.digest(text.getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Classes of the program the IR of a class refers to besides its own:
+    // the types of its expressions and attributes (the bitcasts and joins
+    // walk their parents), the classes it creates (their struct sizes) and
+    // the classes named by its static dispatches. For those, the class
+    // defining the method called is recorded as well. Found by a scan of
+    // the nodes of the class in the arena.
+    private static class References {
+
+        final Set<String> classes = new TreeSet<>();
+
+        // "class.method=defining class" of the static dispatches
+        final Set<String> calls = new TreeSet<>();
+
+        References(ArenaAST arena, int classNode) {
+            // the class node itself names the parent, which is in the layout
+            for(int node = classNode + 1; node < arena.getEnd(classNode); node++) {
+                add(arena.getType(node));
+                // declared types of attributes, methods, formals, lets,
+                // branches, news and static dispatches
+                String decl = arena.getDecl(node);
+                add(decl);
+                if(arena.getKind(node) == ArenaAST.STATIC_DISPATCH
+                        && Global.typeTable.getId(decl) != TypeTable.NO_TYPE) {
+                    String name = arena.getName(node);
+                    String mthdClass = Global.programModel.resolveMethod(decl, name);
+                    calls.add(decl + "." + name + "=" + mthdClass);
+                    add(mthdClass);
+                }
+            }
+        }
+
+        private void add(String className) {
+            if(className != null && Global.typeTable.getId(className) != TypeTable.NO_TYPE
+                    && !Utils.isPrimitiveType(className)) {
+                classes.add(className);
+            }
+        }
+    }
+}
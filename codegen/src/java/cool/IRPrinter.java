@@ -1,5 +1,7 @@
 package cool;
 
+import java.util.List;
+
 class IRPrinter {
 
     public static final String INDENT = "  ";
@@ -19,6 +21,9 @@ class IRPrinter {
     public static final String XOR = "xor";
     public static final String UNDEF = "undef";
 
+    // branch weights of a runtime check, which about never fails
+    public static final String UNLIKELY = "!0";
+
 
     private static int getAlign(String type) {
         if(type.length() == 0) {
@@ -67,8 +72,18 @@ class IRPrinter {
 
     public static String createBinaryInst(String opType, String op1, String op2, 
                                             String type, boolean nuw, boolean nsw) {
+        return createLLVMBinaryInst(opType, op1, op2, Utils.getBasicTypeOrPointer(type), nuw, nsw);
+    }
+
+    // same as above, on the id of the type
+    public static String createBinaryInst(String opType, String op1, String op2, 
+                                            int type, boolean nuw, boolean nsw) {
+        return createLLVMBinaryInst(opType, op1, op2, Utils.getBasicTypeOrPointer(type), nuw, nsw);
+    }
+
+    private static String createLLVMBinaryInst(String opType, String op1, String op2, 
+                                            String type, boolean nuw, boolean nsw) {
         StringBuilder builder = new StringBuilder(INDENT);
-        type = Utils.getBasicTypeOrPointer(type);
         String storeRegister = "%"+Global.registerCounter;
         Global.registerCounter++;
         builder.append(storeRegister);
@@ -121,6 +136,29 @@ class IRPrinter {
         Global.out.println(builder.toString());
     }
 
+    // Branch to 'unlikelyLabel' if reg is true, laid out as a cold path
+    public static void createUnlikelyCondBreak(String reg, String unlikelyLabel, String likelyLabel) {
+        StringBuilder builder = new StringBuilder(INDENT);
+        builder.append("br i1 ");
+        builder.append(reg).append(", ");
+        builder.append("label %").append(unlikelyLabel);
+        builder.append(", label %").append(likelyLabel);
+        builder.append(", !prof ").append(UNLIKELY);
+        Global.out.println(builder.toString());
+    }
+
+    // Calls a runtime error handler, which does not return
+    public static void createErrorCall(String handler, int lineNo) {
+        createVoidCallInst(handler, "i32 "+lineNo);
+        Global.out.println(INDENT+"unreachable");
+    }
+
+    // Metadata referred to by the functions of a module
+    public static void printMetadata() {
+        Global.out.println("\n; Branch weights");
+        Global.out.println(UNLIKELY+" = !{!\"branch_weights\", i32 1, i32 2000}");
+    }
+
     public static String createLabel(String label) {
         StringBuilder builder = new StringBuilder("\n");
         label = getLabel(label,true);
@@ -161,6 +199,24 @@ class IRPrinter {
         return storeRegister;
     }
 
+    // phi node over the values coming from each of the labels
+    public static String createPHINode(int type, List<String> values, List<String> labels) {
+        StringBuilder builder = new StringBuilder(INDENT);
+        String llvmType = Utils.getBasicTypeOrPointer(type);
+        String storeRegister = "%"+Global.registerCounter;
+        Global.registerCounter++;
+        builder.append(storeRegister);
+        builder.append(" = phi ").append(llvmType);
+        for(int i = 0; i < values.size(); i++) {
+            if(i > 0)
+                builder.append(" ,");
+            builder.append(" [ ").append(values.get(i)).append(", %");
+            builder.append(labels.get(i)).append(" ]");
+        }
+        Global.out.println(builder.toString());
+        return storeRegister;
+    }
+
     public static void createVoidCallInst(String callee, String args) {
         StringBuilder builder = new StringBuilder(INDENT);
         builder.append("call void @").append(callee);
@@ -169,8 +225,16 @@ class IRPrinter {
     }
 
     public static String createCallInst(String type, String callee, String args) {
+        return createLLVMCallInst(Utils.getBasicTypeOrPointer(type), callee, args);
+    }
+
+    // same as above, on the id of the type
+    public static String createCallInst(int type, String callee, String args) {
+        return createLLVMCallInst(Utils.getBasicTypeOrPointer(type), callee, args);
+    }
+
+    private static String createLLVMCallInst(String type, String callee, String args) {
         StringBuilder builder = new StringBuilder(INDENT);
-        type = Utils.getBasicTypeOrPointer(type);
         String storeRegisterForCall = "%"+Global.registerCounter;
         Global.registerCounter++;
         builder.append(storeRegisterForCall);
@@ -213,12 +277,12 @@ class IRPrinter {
     public static String createClassAttrGEP(String className, String classRegister, String at) {
         String gepRegister = "%"+Global.registerCounter;
         Global.registerCounter++;
-        String structName = Utils.getStructName(className);
+        ClassDescriptor descriptor = Utils.getDescriptor(className);
         StringBuilder builder = new StringBuilder(IRPrinter.INDENT);
         builder.append(gepRegister)
-        .append(" = getelementptr inbounds ").append(structName).append(", ")
-        .append(structName).append("* ").append(classRegister).append(",")
-        .append(Global.classToVariableToIndexListMap.get(className).get(at));
+        .append(" = getelementptr inbounds ").append(descriptor.structName).append(", ")
+        .append(descriptor.pointerType).append(" ").append(classRegister).append(",")
+        .append(descriptor.getFieldPath(at));
         
         Global.out.println(builder.toString());
         return gepRegister;
@@ -237,10 +301,10 @@ class IRPrinter {
         return gepRegister;
     }
 
-    public static String createAlloca(String className) {
+    public static String createAlloca(int type) {
         String gepRegister = "%"+Global.registerCounter;
         Global.registerCounter++;
-        String structName = Utils.getBasicType(className);
+        String structName = Utils.getBasicType(type);
         StringBuilder builder = new StringBuilder(IRPrinter.INDENT);
         builder.append(gepRegister).append(" = alloca ").append(structName).append(", align 8");
         Global.out.println(builder.toString());
@@ -258,8 +322,9 @@ class IRPrinter {
 
     public static void createCallForConstructor(String className, String reg) {
         StringBuilder builder = new StringBuilder(IRPrinter.INDENT);
-        builder.append("call void @").append(Utils.getMangledName(className, className))
-        .append("(").append(Utils.getStructName(className)).append("* ").append(reg).append(")");
+        ClassDescriptor descriptor = Utils.getDescriptor(className);
+        builder.append("call void @").append(descriptor.getConstructorName())
+        .append("(").append(descriptor.pointerType).append(" ").append(reg).append(")");
         Global.out.println(builder.toString());
     }
 
@@ -276,7 +341,7 @@ class IRPrinter {
         Global.registerCounter++;
         Global.out.println(IRPrinter.INDENT+"call void @exit(i32 0)");
 
-        String bytesToAllocate = ""+Global.classSizeMap.get(Global.Constants.ROOT_TYPE);
+        String bytesToAllocate = ""+ProgramModel.getDefaultSize(TypeTable.OBJECT);
         String storeRegisterForCall = IRPrinter.createMallocInst(bytesToAllocate);
         String returnValue = IRPrinter.createConvertInst(storeRegisterForCall, "i8*", 
                                         Global.Constants.ROOT_TYPE, IRPrinter.BITCAST);
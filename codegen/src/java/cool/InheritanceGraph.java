@@ -1,13 +1,10 @@
 package cool;
 
-import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Stack;
 import java.util.Arrays;
 import java.lang.StringBuilder;
-import java.util.Collections;
 
 public class InheritanceGraph {
 
@@ -19,13 +16,25 @@ public class InheritanceGraph {
     private static AST.class_ ROOT_AST_CLASS = new AST.class_(Global.Constants.ROOT_TYPE, null, null, new ArrayList<>(), 0);
     private static Node ROOT_AST_NODE;
     
-    // This map is used to find the index of particular class
-    // in graph list
-    private Map<String,Integer> classNameToIndexMap;
+    // Index in the graph list of the class of each type id
+    // (the ids are the ones of Global.typeTable)
+    private int[] typeIndex;
+    // and the type id of the class at each index
+    private int[] indexType;
+
+    // Enter and exit numbers of the classes (by index) in a depth first walk.
+    // A class is a parent of another iff its interval contains the other's
+    private int[] enterNumber;
+    private int[] exitNumber;
+
+    // ancestors[k][i] is the 2^k th parent of the class at index i
+    // (roots are their own parents), used for the least common ancestor
+    private int[][] ancestors;
 
     public InheritanceGraph() {
         graph = new ArrayList<>();
-        classNameToIndexMap = new HashMap<>();
+        typeIndex = new int[16];
+        indexType = new int[16];
     }
 
     // Adds the root class Object into the graph
@@ -37,23 +46,23 @@ public class InheritanceGraph {
         ROOT_AST_CLASS.features.add(new AST.method("type_name", new ArrayList<>(), Global.Constants.STRING_TYPE, null, 0));
         ROOT_AST_CLASS.features.add(new AST.method("copy", new ArrayList<>(), Global.Constants.ROOT_TYPE, null, 0));
 
-        classNameToIndexMap.put(Global.Constants.ROOT_TYPE, graph.size());
+        setIndex(TypeTable.OBJECT, graph.size());
         graph.add(ROOT_AST_NODE);
     }
 
     private void addInt() {
         AST.class_ intAstClass = new AST.class_(Global.Constants.INT_TYPE, null, Global.Constants.ROOT_TYPE, new ArrayList<>(), 0);
-        Node intNode = new Node(intAstClass, 0);
+        Node intNode = new Node(intAstClass, graph.size());
 
-        classNameToIndexMap.put(Global.Constants.INT_TYPE, graph.size());
+        setIndex(TypeTable.INT, graph.size());
         graph.add(intNode);
     }
 
     private void addBool() {
         AST.class_ boolAstClass = new AST.class_(Global.Constants.BOOL_TYPE, null, Global.Constants.ROOT_TYPE, new ArrayList<>(), 0);
-        Node boolNode = new Node(boolAstClass, 0);
+        Node boolNode = new Node(boolAstClass, graph.size());
 
-        classNameToIndexMap.put(Global.Constants.BOOL_TYPE, graph.size());
+        setIndex(TypeTable.BOOL, graph.size());
         graph.add(boolNode);
     }
 
@@ -71,9 +80,9 @@ public class InheritanceGraph {
         ioFeatures.add(new AST.method("in_int", new ArrayList<>(), Global.Constants.INT_TYPE, null, 0));
 
         AST.class_ ioAstClass = new AST.class_(Global.Constants.IO_TYPE, null, Global.Constants.ROOT_TYPE, ioFeatures, 0);
-        Node ioNode = new Node(ioAstClass, 0);
+        Node ioNode = new Node(ioAstClass, graph.size());
 
-        classNameToIndexMap.put(Global.Constants.IO_TYPE, graph.size());
+        setIndex(TypeTable.IO, graph.size());
         graph.add(ioNode);
     }
 
@@ -90,9 +99,9 @@ public class InheritanceGraph {
         stringFeatures.add(new AST.method("substr", intFormalList, Global.Constants.STRING_TYPE, null, 0));
 
         AST.class_ stringAstClass = new AST.class_(Global.Constants.STRING_TYPE, null, Global.Constants.ROOT_TYPE, stringFeatures, 0);
-        Node stringNode = new Node(stringAstClass, 0);
+        Node stringNode = new Node(stringAstClass, graph.size());
 
-        classNameToIndexMap.put(Global.Constants.STRING_TYPE, graph.size());
+        setIndex(TypeTable.STRING, graph.size());
         graph.add(stringNode);
         
     }
@@ -104,7 +113,7 @@ public class InheritanceGraph {
     }
 
     public boolean hasClass(String className) {
-        return classNameToIndexMap.containsKey(className);
+        return Global.typeTable.getId(className) != TypeTable.NO_TYPE;
     }
 
     public List<Node> getNodeList() {
@@ -116,16 +125,35 @@ public class InheritanceGraph {
     //   has to be checked manually using 'hasClass' before
     //   calling this function
     public String getParentClassName(String className) {
-        Node classNode = graph.get(classNameToIndexMap.get(className));
+        Node classNode = graph.get(typeIndex[Global.typeTable.getId(className)]);
         return classNode.getAstClass().parent;
     }
 
+    // Returns the AST of the class, its existance
+    // has to be checked using 'hasClass' as above
+    public AST.class_ getAstClass(String className) {
+        return graph.get(typeIndex[Global.typeTable.getId(className)]).getAstClass();
+    }
+
     // Used to add a class to the graph
     public void addClass(AST.class_ astClass) {
-        classNameToIndexMap.put(astClass.name, graph.size());
+        setIndex(Global.typeTable.add(astClass.name), graph.size());
         graph.add(new Node(astClass, graph.size()));
     }
 
+    private void setIndex(int typeId, int index) {
+        if(typeId >= typeIndex.length) {
+            typeIndex = Arrays.copyOf(typeIndex, 2 * typeId + 1);
+        }
+        typeIndex[typeId] = index;
+        if(index < 0)
+            return;
+        if(index >= indexType.length) {
+            indexType = Arrays.copyOf(indexType, 2 * index + 1);
+        }
+        indexType[index] = typeId;
+    }
+
     public void update() {
         addObject();
         addIO();
@@ -133,6 +161,7 @@ public class InheritanceGraph {
         addInt();
         addBool();
         updateParents();
+        numberClasses();
     }
 
     // Updates the links between parents and child
@@ -141,42 +170,130 @@ public class InheritanceGraph {
             if(cl.getAstClass().parent!=null) {
                 // node has a parent
                 // System.out.println(cl.getAstClass().parent);
-                int parentIndex = classNameToIndexMap.get(cl.getAstClass().parent);
+                int parentIndex = typeIndex[Global.typeTable.getId(cl.getAstClass().parent)];
                 cl.setParent(graph.get(parentIndex));
                 graph.get(parentIndex).addChild(cl);
             }
         }
     }
 
-    // gives join of type1 and type2 : nearest common parent
-    public String getJoinOf(String type1, String type2) {
-        if(type1.equals(type2)) {
+    // gives join of type1 and type2 : nearest common parent (ids of the types)
+    public int getJoinOf(int type1, int type2) {
+        if(type1 == type2) {
             return type1;
-        } else if(Utils.isPrimitiveType(type1) || Utils.isPrimitiveType(type2)) {
-            return Global.Constants.ROOT_TYPE;
+        } else if(TypeTable.isPrimitive(type1) || TypeTable.isPrimitive(type2)) {
+            return TypeTable.OBJECT;
         }
-        Node type1Node = graph.get(classNameToIndexMap.get(type1));
-        Node type2Node = graph.get(classNameToIndexMap.get(type2));
-        Node lca = getLCA(type1Node, type2Node);
-        return lca.getAstClass().name;
+        Node lca = getLCA(graph.get(typeIndex[type1]), graph.get(typeIndex[type2]));
+        return indexType[lca.getIndex()];
     }
 
-    // least common parent of node1 and node2
+    // least common parent of node1 and node2 (binary lifting)
     private Node getLCA(Node node1, Node node2) {
-        Node lca = null;
-        List<Boolean> visited = new ArrayList<>(graph.size());
-        visited.addAll(Collections.nCopies(graph.size(),Boolean.FALSE));
-        while(node1!=null) {
-            visited.set(node1.getIndex(),true);
-            node1 = node1.getParent();
-        }
-        while(lca==null && node2!=null) {
-            if(visited.get(node2.getIndex())) {
-                lca = node2;
+        int index1 = node1.getIndex();
+        int index2 = node2.getIndex();
+        if(isAncestor(index1, index2))
+            return node1;
+        if(isAncestor(index2, index1))
+            return node2;
+        // lifting node1 to the highest class which is not a parent of node2
+        for(int k = ancestors.length - 1; k >= 0; k--) {
+            if(!isAncestor(ancestors[k][index1], index2)) {
+                index1 = ancestors[k][index1];
             }
-            node2 = node2.getParent();
         }
-        return lca;
+        index1 = ancestors[0][index1];
+        if(!isAncestor(index1, index2)) {
+            // classes in different trees
+            return getRootNode();
+        }
+        return graph.get(index1);
+    }
+
+    // Numbers the classes in a depth first walk of the inheritance trees
+    // and builds the ancestor table used by 'getLCA'
+    private void numberClasses() {
+        int size = graph.size();
+        enterNumber = new int[size];
+        exitNumber = new int[size];
+        int levels = 1;
+        while((1 << levels) < size) {
+            levels++;
+        }
+        ancestors = new int[levels][size];
+
+        // explicit stack, as the hierarchies can be very deep
+        int counter = 0;
+        int[] nextChild = new int[size];
+        Stack<Node> stack = new Stack<>();
+        for(Node root: graph) {
+            if(root.parentExists())
+                continue;
+            ancestors[0][root.getIndex()] = root.getIndex();
+            enterNumber[root.getIndex()] = counter++;
+            stack.push(root);
+            while(!stack.isEmpty()) {
+                Node node = stack.peek();
+                List<Node> children = node.getChildren();
+                if(nextChild[node.getIndex()] < children.size()) {
+                    Node child = children.get(nextChild[node.getIndex()]++);
+                    ancestors[0][child.getIndex()] = node.getIndex();
+                    enterNumber[child.getIndex()] = counter++;
+                    stack.push(child);
+                } else {
+                    exitNumber[node.getIndex()] = counter++;
+                    stack.pop();
+                }
+            }
+        }
+
+        for(int k = 1; k < levels; k++) {
+            for(int i = 0; i < size; i++) {
+                ancestors[k][i] = ancestors[k-1][ancestors[k-1][i]];
+            }
+        }
+    }
+
+    // returns 'true' if the type type1 is type2 or inherits from it
+    public boolean isConforming(int type1, int type2) {
+        return isAncestor(typeIndex[type2], typeIndex[type1]);
+    }
+
+    // returns 'true' if the class at index1 is the class at index2 or one of its parents
+    private boolean isAncestor(int index1, int index2) {
+        return enterNumber[index1] <= enterNumber[index2] && exitNumber[index2] <= exitNumber[index1];
+    }
+
+    // Visits the classes under 'root' in depth first order, parents
+    // before their children, with an explicit stack so that the depth
+    // of the hierarchy is not limited by the Java stack
+    public void walkDepthFirst(Node root, Walker walker) {
+        int[] nextChild = new int[graph.size()];
+        Stack<Node> stack = new Stack<>();
+        walker.enter(root);
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            Node node = stack.peek();
+            List<Node> children = node.getChildren();
+            if(nextChild[node.getIndex()] < children.size()) {
+                Node child = children.get(nextChild[node.getIndex()]++);
+                walker.enter(child);
+                stack.push(child);
+            } else {
+                walker.exit(node);
+                stack.pop();
+            }
+        }
+    }
+
+    // Actions of a depth first walk over the classes
+    public interface Walker {
+        // called before the children of the class are visited
+        void enter(Node node);
+
+        // called after all the children of the class have been visited
+        default void exit(Node node) {
+        }
     }
 
     // The basic node in the graph
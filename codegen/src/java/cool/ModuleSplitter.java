@@ -0,0 +1,191 @@
+package cool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Splits the IR of a program into one module per class, so that the
+// backend can compile the modules in parallel.
+//
+// The IR of the methods and the constructor of a class goes to the module
+// of the class. Everything else (the string constants, the struct types,
+// the default methods, the C declarations, the C main and the metadata)
+// goes to the runtime module. The string constants get external linkage
+// there, and every module is completed with the struct types, the
+// constants, the metadata and the declarations of the functions it calls
+// but does not define.
+//
+// The directory of the modules also holds a Makefile, the manifest of the
+// build: 'make -j' compiles the modules with llc in parallel and links
+// them into the program.
+public class ModuleSplitter {
+
+    public static final String RUNTIME_MODULE = "runtime";
+
+    private static final Pattern DEFINE = Pattern.compile("^define (.*) @([\\w.]+)\\((.*)\\)((?: \\w+)*) \\{$", Pattern.MULTILINE);
+    private static final Pattern DECLARE = Pattern.compile("^declare .*@([\\w.]+)\\(.*$", Pattern.MULTILINE);
+    private static final Pattern CALL = Pattern.compile("call [^@\\n]*@([\\w.]+)\\(");
+    private static final Pattern STRUCT = Pattern.compile("^%[\\w.]+ = type .*$", Pattern.MULTILINE);
+    private static final Pattern METADATA = Pattern.compile("^!\\d+ = .*$", Pattern.MULTILINE);
+    private static final Pattern CONSTANT = Pattern.compile("^(@\\.str\\.\\d+) = unnamed_addr constant (\\[\\d+ x i8\\]) .*$", Pattern.MULTILINE);
+
+    // IR of the runtime module, written through Global.out
+    private StringWriter runtime = new StringWriter();
+    private PrintWriter runtimeWriter = new PrintWriter(runtime);
+
+    // class name -> IR of the module of the class
+    private Map<String,StringBuilder> classModules = new LinkedHashMap<>();
+
+    public PrintWriter getRuntimeWriter() {
+        return runtimeWriter;
+    }
+
+    // Adds the IR of a section (methods or constructor) of a class to its module
+    public void add(String className, String ir) {
+        classModules.computeIfAbsent(className, k -> new StringBuilder()).append(ir);
+    }
+
+    // Writes the modules and the Makefile to the directory, the
+    // program linked by the Makefile is named 'programName'
+    public void write(File directory, String sourceName, String programName) throws IOException {
+        directory.mkdirs();
+        runtimeWriter.flush();
+        String runtimeIR = runtime.toString();
+
+        // declarations of all the functions, by name
+        Map<String,String> declarations = new HashMap<>();
+        List<String> modules = new ArrayList<>();
+        modules.add(runtimeIR);
+        for(StringBuilder module : classModules.values()) {
+            modules.add(module.toString());
+        }
+        for(String module : modules) {
+            declarations.putAll(getDeclarations(module));
+        }
+
+        // struct types and constants shared by the class modules
+        StringBuilder shared = new StringBuilder("; Struct declarations\n");
+        Matcher m = STRUCT.matcher(runtimeIR);
+        while(m.find()) {
+            shared.append(m.group()).append('\n');
+        }
+        shared.append("\n; String constants, defined in the runtime module\n");
+        m = CONSTANT.matcher(runtimeIR);
+        while(m.find()) {
+            shared.append(m.group(1)).append(" = external unnamed_addr constant ").append(m.group(2)).append('\n');
+        }
+        shared.append("\n; Metadata, also defined in the runtime module\n");
+        m = METADATA.matcher(runtimeIR);
+        while(m.find()) {
+            shared.append(m.group()).append('\n');
+        }
+
+        List<String> files = new ArrayList<>();
+        if(Global.runtimeLibrary != null)
+            files.add(Global.runtimeLibrary.getAbsolutePath());
+        files.add(RUNTIME_MODULE + ".ll");
+        writeModule(new File(directory, RUNTIME_MODULE + ".ll"), sourceName, "", runtimeIR, declarations);
+        for(Map.Entry<String,StringBuilder> entry : classModules.entrySet()) {
+            String file = entry.getKey() + ".ll";
+            files.add(file);
+            writeModule(new File(directory, file), sourceName, shared.toString(), entry.getValue().toString(), declarations);
+        }
+        writeMakefile(new File(directory, "Makefile"), files, programName);
+    }
+
+    // Declarations of the functions defined by the IR, by name
+    public static Map<String,String> getDefinitions(String ir) {
+        Map<String,String> declarations = new LinkedHashMap<>();
+        Matcher m = DEFINE.matcher(ir);
+        while(m.find()) {
+            // with the function attributes, such as noreturn
+            declarations.put(m.group(2), "declare " + m.group(1) + " @" + m.group(2) + "(" + getParameterTypes(m.group(3)) + ")" + m.group(4));
+        }
+        return declarations;
+    }
+
+    // Same as above, with the functions declared by the IR
+    public static Map<String,String> getDeclarations(String ir) {
+        Map<String,String> declarations = getDefinitions(ir);
+        Matcher m = DECLARE.matcher(ir);
+        while(m.find()) {
+            declarations.put(m.group(1), m.group());
+        }
+        return declarations;
+    }
+
+    private static void writeModule(File file, String sourceName, String shared, String ir, Map<String,String> declarations) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("; ModuleID = '").append(file.getName()).append("'\n");
+        builder.append("source_filename = \"").append(sourceName).append("\"\n\n");
+        builder.append(shared);
+
+        // functions called from other modules
+        Set<String> defined = new LinkedHashSet<>();
+        Matcher m = DEFINE.matcher(ir);
+        while(m.find()) {
+            defined.add(m.group(2));
+        }
+        m = DECLARE.matcher(ir);
+        while(m.find()) {
+            defined.add(m.group(1));
+        }
+        Set<String> external = new LinkedHashSet<>();
+        m = CALL.matcher(ir);
+        while(m.find()) {
+            if(!defined.contains(m.group(1)) && declarations.containsKey(m.group(1)))
+                external.add(declarations.get(m.group(1)));
+        }
+        if(!external.isEmpty()) {
+            builder.append("\n; Functions of the other modules\n");
+            for(String declaration : external) {
+                builder.append(declaration).append('\n');
+            }
+        }
+        builder.append(ir);
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeMakefile(File file, List<String> modules, String programName) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        builder.append("# Modules of ").append(programName).append(", 'make -j' compiles them in parallel\n");
+        builder.append("LLC ?= llc\n");
+        builder.append("CC ?= clang\n\n");
+        builder.append("MODULES =");
+        for(String module : modules) {
+            builder.append(" \\\n\t").append(module);
+        }
+        builder.append("\nOBJECTS = $(MODULES:.ll=.o)\n\n");
+        builder.append(programName).append(": $(OBJECTS)\n");
+        builder.append("\t$(CC) -o $@ $(OBJECTS)\n\n");
+        builder.append("%.o: %.ll\n");
+        builder.append("\t$(LLC) -filetype=obj -relocation-model=pic -o $@ $<\n");
+        Files.write(file.toPath(), builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // "i32 %a, i8* %b" -> "i32, i8*"
+    private static String getParameterTypes(String parameters) {
+        if(parameters.isEmpty())
+            return parameters;
+        StringBuilder builder = new StringBuilder();
+        for(String parameter : parameters.split(", ")) {
+            if(builder.length() > 0)
+                builder.append(", ");
+            int name = parameter.lastIndexOf(" %");
+            builder.append(name < 0 ? parameter : parameter.substring(0, name));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,220 @@
+package cool;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// The classes of a checked program as code generation sees them: the
+// inheritance graph of the semantic analysis with the type ids, the struct
+// layout and size of every class and its method table, along with the
+// classes of the objects reaching each dispatch (see TypeFlow), the methods
+// the program can run (see Reachability) and the divisors which can not be 0
+// (see RangeAnalysis). The typed AST is also kept in the arena form of
+// ArenaAST, for the passes which scan the nodes of a class.
+//
+// The model is built once per program, from the class table of the semantic
+// analysis once the program is known to be valid, or from the AST of an
+// unchanged program taken from the cache. Code generation only reads it.
+public class ProgramModel {
+
+    // methods of the default classes, their IR is in DefaultIR
+    private static final String[][] DEFAULT_METHODS = {
+        {Global.Constants.ROOT_TYPE, "type_name", "abort"},
+        {Global.Constants.IO_TYPE, "out_int", "out_string", "in_int", "in_string"},
+        {Global.Constants.STRING_TYPE, "length", "concat", "substr"},
+    };
+
+    private final AST.program program;
+
+    private final InheritanceGraph graph;
+
+    // descriptors of the classes with a struct, parents before children
+    private final List<ClassDescriptor> structs = new ArrayList<>();
+
+    // type id -> size in bytes of an object of the class
+    private final int[] sizes;
+
+    // type id -> method name -> class defining the method called on an
+    // object of the class. A class without methods of its own shares the
+    // table of its parent.
+    private final List<Map<String,String>> methodTables;
+
+    private TypeFlow typeFlow;
+
+    private Reachability reachability;
+
+    private RangeAnalysis rangeAnalysis;
+
+    private ArenaAST arena;
+
+    private ProgramModel(AST.program program, InheritanceGraph graph) {
+        this.program = program;
+        this.graph = graph;
+        sizes = new int[Global.typeTable.size()];
+        methodTables = new ArrayList<>(Collections.nCopies(Global.typeTable.size(), null));
+    }
+
+    // Model of a program checked by the semantic analysis, on its class table
+    public static ProgramModel build(AST.program program, ClassTable classTable) {
+        ProgramModel model = new ProgramModel(program, classTable.getGraph());
+        model.computeLayouts();
+        model.computeMethodTables();
+        model.typeFlow = TypeFlow.analyze(program, model.graph);
+        model.reachability = Reachability.compute(model);
+        model.rangeAnalysis = RangeAnalysis.analyze(program, model.graph);
+        model.arena = ArenaAST.build(program);
+        return model;
+    }
+
+    // Model of a program known to be valid, such as one taken from the cache
+    public static ProgramModel build(AST.program program) {
+        ClassTable classTable = new ClassTable(new Diagnostics());
+        classTable.insertAll(program.classes);
+        return build(program, classTable);
+    }
+
+    // Size in bytes of an object of a default class, the same in every
+    // program. Object counts as 0, the classes inheriting from it add the
+    // 8 bytes of the type name (see computeLayout).
+    public static int getDefaultSize(int type) {
+        switch(type) {
+            case TypeTable.INT:
+                return 4;
+            case TypeTable.BOOL:
+                return 1;
+            case TypeTable.IO:
+            case TypeTable.STRING:
+                return 8;
+            default:
+                return 0;
+        }
+    }
+
+    public AST.program getProgram() {
+        return program;
+    }
+
+    public InheritanceGraph getGraph() {
+        return graph;
+    }
+
+    public TypeFlow getTypeFlow() {
+        return typeFlow;
+    }
+
+    // Methods and constructors to emit
+    public Reachability getReachability() {
+        return reachability;
+    }
+
+    // Divide by zero checks to drop
+    public RangeAnalysis getRangeAnalysis() {
+        return rangeAnalysis;
+    }
+
+    public ArenaAST getArena() {
+        return arena;
+    }
+
+    // Descriptors of Object and of the classes inheriting from it,
+    // except the primitive ones, parents before children
+    public List<ClassDescriptor> getStructs() {
+        return Collections.unmodifiableList(structs);
+    }
+
+    public int getSize(String className) {
+        return sizes[Global.typeTable.getId(className)];
+    }
+
+    // Name of the class whose method is called by 'methodName' on an
+    // object of the class, null if there is none
+    public String resolveMethod(String className, String methodName) {
+        return methodTables.get(Global.typeTable.getId(className)).get(methodName);
+    }
+
+    // Lays out the struct of every class after the one of its parent
+    private void computeLayouts() {
+        for(int type = TypeTable.OBJECT; type <= TypeTable.STRING; type++) {
+            sizes[type] = getDefaultSize(type);
+        }
+        InheritanceGraph.Node rootNode = graph.getRootNode();
+        ClassDescriptor rootDescriptor = Utils.getDescriptor(Global.Constants.ROOT_TYPE);
+        rootDescriptor.structType = "{i8*}";
+        rootDescriptor.fieldIndices = new HashMap<>();
+        structs.add(rootDescriptor);
+
+        graph.walkDepthFirst(rootNode, node -> {
+            if(node != rootNode)
+                computeLayout(node);
+        });
+    }
+
+    private void computeLayout(InheritanceGraph.Node node) {
+        AST.class_ cl = node.getAstClass();
+        int size = 8; // initial 8 bytes for the type name in Object
+
+        // Primitive types are i32, i8, i8*. No need of structs
+        if(Utils.isPrimitiveType(cl.name))
+            return;
+
+        ClassDescriptor descriptor = Utils.getDescriptor(cl.name);
+        ClassDescriptor parentDescriptor = Utils.getDescriptor(node.getParent().getAstClass().name);
+        StringBuilder builder = new StringBuilder("{ ").append(parentDescriptor.structName);
+        size += getSize(parentDescriptor.name);
+
+        // Index in the struct of the variables declared inside the class,
+        // the ones of the parent are reached through the parent struct at 0
+        Map<String, Integer> variableToIndexMap = new HashMap<>();
+
+        // variables declared inside the class
+        int index = 0;
+        for(AST.feature f : cl.features) {
+            if(f instanceof AST.attr) {
+                index++;
+                AST.attr a = (AST.attr) f;
+                size += Utils.getSizeForStruct(a.typeid);
+                builder.append(", ").append(Utils.getBasicTypeOrPointer(a.typeid));
+                variableToIndexMap.put(a.name, index);
+            }
+        }
+        builder.append(" }");
+
+        descriptor.parent = parentDescriptor;
+        descriptor.structType = builder.toString();
+        descriptor.fieldIndices = variableToIndexMap;
+        sizes[Global.typeTable.getId(cl.name)] = size;
+        structs.add(descriptor);
+    }
+
+    // Builds the method table of every class from the one of its parent
+    private void computeMethodTables() {
+        Map<String,List<String>> defaultMethods = new HashMap<>();
+        for(String[] methods : DEFAULT_METHODS) {
+            defaultMethods.put(methods[0], Arrays.asList(methods).subList(1, methods.length));
+        }
+        graph.walkDepthFirst(graph.getRootNode(), node -> {
+            AST.class_ cl = node.getAstClass();
+            List<String> ownMethods = new ArrayList<>();
+            if(Utils.isDefaultClass(cl.name)) {
+                ownMethods.addAll(defaultMethods.getOrDefault(cl.name, Collections.emptyList()));
+            } else {
+                for(AST.feature f : cl.features) {
+                    if(f instanceof AST.method)
+                        ownMethods.add(((AST.method) f).name);
+                }
+            }
+            Map<String,String> table = node.getParent() == null ? Collections.emptyMap()
+                : methodTables.get(Global.typeTable.getId(node.getParent().getAstClass().name));
+            if(!ownMethods.isEmpty()) {
+                table = new HashMap<>(table);
+                for(String name : ownMethods) {
+                    table.put(name, cl.name);
+                }
+            }
+            methodTables.set(Global.typeTable.getId(cl.name), table);
+        });
+    }
+}
@@ -0,0 +1,578 @@
+package cool;
+
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Interval analysis of the Int values of the program, used to drop the
+// divide by zero checks of the divisors which can not be 0.
+//
+// Every Int attribute, formal, 'let' and 'case' variable has a range of
+// values [lo, hi]. Inside a method body the ranges follow the control
+// flow: an assignment sets the range of the variable, the predicate of an
+// 'if' or a 'while' comparing a variable narrows its range in each branch,
+// and the ranges at the head of a loop are widened until they are stable.
+// A result outside of the Int range may wrap around, so it has any value.
+//
+// An attribute can be changed by any method of its class, so every
+// attribute also has an invariant range, the join of its default value
+// and of all the values assigned to it. It is the range of the attribute
+// at the entry of a method and after a call. The invariants are computed
+// by analyzing the whole program again until they are stable.
+//
+// The String methods do not check their arguments (substr trusts its
+// index and length), so the divisors are the only checks left to prove.
+public class RangeAnalysis implements Visitor {
+
+    // A range of Int values, lo <= hi, with 0 left out when it is inside
+    // the range and the value is known to be non zero
+    private static final class Range {
+        static final Range TOP = new Range(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+        final long lo;
+        final long hi;
+        final boolean nonZero;
+
+        Range(long lo, long hi) {
+            this(lo, hi, false);
+        }
+
+        Range(long lo, long hi, boolean nonZero) {
+            this.lo = lo;
+            this.hi = hi;
+            this.nonZero = nonZero && lo < 0 && 0 < hi;
+        }
+
+        static Range of(long lo, long hi, boolean nonZero) {
+            if(lo < Integer.MIN_VALUE || hi > Integer.MAX_VALUE)
+                return TOP;
+            return new Range(lo, hi, nonZero);
+        }
+
+        boolean containsZero() {
+            return lo <= 0 && 0 <= hi && !nonZero;
+        }
+
+        // Same value, between 'lo' and 'hi'
+        Range narrow(long lo, long hi) {
+            return new Range(Math.max(this.lo, lo), Math.min(this.hi, hi), nonZero);
+        }
+
+        Range join(Range other) {
+            return new Range(Math.min(lo, other.lo), Math.max(hi, other.hi), !containsZero() && !other.containsZero());
+        }
+
+        // Bounds still moving go to the end of the Int range
+        Range widen(Range next) {
+            return new Range(next.lo < lo ? Integer.MIN_VALUE : lo, next.hi > hi ? Integer.MAX_VALUE : hi,
+                !containsZero() && !next.containsZero());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Range && ((Range) o).lo == lo && ((Range) o).hi == hi && ((Range) o).nonZero == nonZero;
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(lo) * 31 + Long.hashCode(hi)) * 2 + (nonZero ? 1 : 0);
+        }
+    }
+
+    private static final Range ZERO = new Range(0, 0);
+
+    // marks a variable hidden by a local one while it had no range
+    private static final Range NONE = new Range(1, 0);
+
+    // attribute ("class.name", of the class defining it) -> invariant range
+    private final Map<String,Range> invariants = new HashMap<>();
+    private boolean invariantsChanged;
+
+    // divisions whose divisor may be 0
+    private final Map<AST.divide,Boolean> mayBeZero = new IdentityHashMap<>();
+
+    // "class.method" -> divisions of the method, in the order of the source
+    private final Map<String,List<AST.divide>> divisions = new LinkedHashMap<>();
+    private List<AST.divide> currentDivisions;
+
+    // state of the method analyzed
+    private String currentClass;
+    // Int attribute visible in the class -> key of its invariant
+    private Map<String,String> attributes;
+    // ranges of the Int variables in scope
+    private Map<String,Range> env;
+    // local variables in scope, innermost first, and the ranges they hide
+    private final Deque<String> locals = new ArrayDeque<>();
+    private final Deque<Range> hidden = new ArrayDeque<>();
+    // range of the last expression visited, null if it is not an Int
+    private Range current;
+
+    private final InheritanceGraph graph;
+
+    private RangeAnalysis(InheritanceGraph graph) {
+        this.graph = graph;
+    }
+
+    public static RangeAnalysis analyze(AST.program program, InheritanceGraph graph) {
+        RangeAnalysis analysis = new RangeAnalysis(graph);
+        do {
+            analysis.invariantsChanged = false;
+            for(AST.class_ cl : program.classes) {
+                if(!Utils.isDefaultClass(cl.name))
+                    cl.accept(analysis);
+            }
+        } while(analysis.invariantsChanged);
+        return analysis;
+    }
+
+    // 'true' if the divisor of the division can not be 0
+    public boolean isNonZeroDivisor(AST.divide expr) {
+        return Boolean.FALSE.equals(mayBeZero.get(expr));
+    }
+
+    // Divisions of the class left unchecked, part of the fingerprint of its IR
+    public String getSummary(String className) {
+        StringBuilder builder = new StringBuilder();
+        for(Map.Entry<String,List<AST.divide>> entry : divisions.entrySet()) {
+            if(!entry.getKey().startsWith(className + "."))
+                continue;
+            builder.append(entry.getKey()).append(':');
+            for(AST.divide expr : entry.getValue()) {
+                builder.append(isNonZeroDivisor(expr) ? '1' : '0');
+            }
+            builder.append(';');
+        }
+        return builder.toString();
+    }
+
+    // Prints the number of checks dropped in every method with a division
+    public void printReport(PrintStream out) {
+        for(Map.Entry<String,List<AST.divide>> entry : divisions.entrySet()) {
+            if(entry.getValue().isEmpty())
+                continue;
+            int removed = 0;
+            for(AST.divide expr : entry.getValue()) {
+                if(isNonZeroDivisor(expr))
+                    removed++;
+            }
+            out.println(entry.getKey() + ": removed " + removed + " of "
+                + entry.getValue().size() + " divide by zero checks");
+        }
+    }
+
+    public void visit(AST.program prog) {
+    }
+
+    public void visit(AST.class_ cl) {
+        currentClass = cl.name;
+        attributes = new HashMap<>();
+        for(String name = cl.name; name != null && !Utils.isDefaultClass(name);
+                name = graph.getParentClassName(name)) {
+            for(AST.feature f : graph.getAstClass(name).features) {
+                if(f instanceof AST.attr && isInt(((AST.attr) f).typeid)) {
+                    String key = name + "." + ((AST.attr) f).name;
+                    attributes.put(((AST.attr) f).name, key);
+                    invariants.putIfAbsent(key, ZERO);
+                }
+            }
+        }
+
+        // the initializers run in the constructor
+        enter(cl.name);
+        for(AST.feature f : cl.features) {
+            if(f instanceof AST.attr)
+                f.accept(this);
+        }
+        for(AST.feature f : cl.features) {
+            if(f instanceof AST.method)
+                f.accept(this);
+        }
+    }
+
+    public void visit(AST.attr at) {
+        if(at.value instanceof AST.no_expr)
+            return;
+        Range value = get(at.value);
+        if(value != null)
+            assign(at.name, value);
+    }
+
+    public void visit(AST.method mthd) {
+        if(mthd.body == null)
+            return;
+        enter(mthd.name);
+        for(AST.formal fm : mthd.formals) {
+            bind(fm.name, fm.typeid, Range.TOP);
+        }
+        mthd.body.accept(this);
+        for(AST.formal fm : mthd.formals) {
+            unbind();
+        }
+    }
+
+    public void visit(AST.formal fm) {
+    }
+
+    // Starts the analysis of a method, or of the constructor
+    private void enter(String methodName) {
+        currentDivisions = divisions.computeIfAbsent(currentClass + "." + methodName, k -> new ArrayList<>());
+        env = new HashMap<>();
+        havoc();
+    }
+
+    // Range of the value of the expression, null if it is not an Int
+    private Range get(AST.expression expr) {
+        expr.accept(this);
+        return current;
+    }
+
+    // Range of the value of an Int expression
+    private Range getInt(AST.expression expr) {
+        Range range = get(expr);
+        return range == null ? Range.TOP : range;
+    }
+
+    private String result(Range range) {
+        current = range;
+        return null;
+    }
+
+    private static boolean isInt(String type) {
+        return Global.Constants.INT_TYPE.equals(type);
+    }
+
+    private Range lookUp(String name) {
+        Range range = env.get(name);
+        return range == null ? Range.TOP : range;
+    }
+
+    private void assign(String name, Range value) {
+        if(!env.containsKey(name))
+            return;
+        env.put(name, value);
+        String key = attributes.get(name);
+        if(key != null && !locals.contains(name)) {
+            Range invariant = invariants.get(key);
+            Range next = invariant.widen(invariant.join(value));
+            if(!next.equals(invariant)) {
+                invariants.put(key, next);
+                invariantsChanged = true;
+            }
+        }
+    }
+
+    // The attributes may have been changed by a call
+    private void havoc() {
+        for(Map.Entry<String,String> attr : attributes.entrySet()) {
+            if(!locals.contains(attr.getKey()))
+                env.put(attr.getKey(), invariants.get(attr.getValue()));
+        }
+    }
+
+    // Puts a local variable in scope
+    private void bind(String name, String type, Range value) {
+        locals.push(name);
+        Range previous = env.remove(name);
+        hidden.push(previous == null ? NONE : previous);
+        if(isInt(type))
+            env.put(name, value);
+    }
+
+    // Takes the innermost local variable out of scope
+    private void unbind() {
+        String name = locals.pop();
+        Range previous = hidden.pop();
+        env.remove(name);
+        if(locals.contains(name)) {
+            // a local can only change in its own scope
+            if(previous != NONE)
+                env.put(name, previous);
+        } else if(attributes.containsKey(name)) {
+            // an attribute may have changed meanwhile
+            env.put(name, invariants.get(attributes.get(name)));
+        }
+    }
+
+    private static Map<String,Range> join(Map<String,Range> a, Map<String,Range> b) {
+        Map<String,Range> joined = new HashMap<>();
+        for(Map.Entry<String,Range> entry : a.entrySet()) {
+            Range other = b.get(entry.getKey());
+            if(other != null)
+                joined.put(entry.getKey(), entry.getValue().join(other));
+        }
+        return joined;
+    }
+
+    private static Range joinValues(Range a, Range b) {
+        return a == null || b == null ? null : a.join(b);
+    }
+
+    // Range of an operand of a predicate, if reading it has no side effect
+    private Range getOperand(AST.expression expr) {
+        if(expr instanceof AST.int_const)
+            return new Range(((AST.int_const) expr).value, ((AST.int_const) expr).value);
+        if(expr instanceof AST.object && env.containsKey(((AST.object) expr).name))
+            return lookUp(((AST.object) expr).name);
+        return null;
+    }
+
+    // Narrows the ranges of env on the branch of the predicate where it is 'truth'
+    private void refine(AST.expression predicate, boolean truth) {
+        if(predicate instanceof AST.comp) {
+            refine(((AST.comp) predicate).e1, !truth);
+            return;
+        }
+        AST.expression e1, e2;
+        if(predicate instanceof AST.lt) {
+            e1 = ((AST.lt) predicate).e1;
+            e2 = ((AST.lt) predicate).e2;
+        } else if(predicate instanceof AST.leq) {
+            e1 = ((AST.leq) predicate).e1;
+            e2 = ((AST.leq) predicate).e2;
+        } else if(predicate instanceof AST.eq && isInt(((AST.eq) predicate).e1.type)) {
+            e1 = ((AST.eq) predicate).e1;
+            e2 = ((AST.eq) predicate).e2;
+        } else {
+            return;
+        }
+        Range a = getOperand(e1);
+        Range b = getOperand(e2);
+        if(a == null || b == null)
+            return;
+        Range newA = a, newB = b;
+        if(predicate instanceof AST.eq) {
+            if(truth) {
+                newA = a.narrow(b.lo, b.hi);
+                newB = b.narrow(a.lo, a.hi);
+            } else {
+                newA = exclude(a, b);
+                newB = exclude(b, a);
+            }
+        } else {
+            // e1 < e2 is e1 <= e2 - 1, and its negation is e2 <= e1
+            long strict = predicate instanceof AST.lt ? 1 : 0;
+            if(truth) {
+                newA = a.narrow(Long.MIN_VALUE, b.hi - strict);
+                newB = b.narrow(a.lo + strict, Long.MAX_VALUE);
+            } else {
+                newA = a.narrow(b.lo + 1 - strict, Long.MAX_VALUE);
+                newB = b.narrow(Long.MIN_VALUE, a.hi - 1 + strict);
+            }
+        }
+        narrow(e1, newA);
+        narrow(e2, newB);
+    }
+
+    // Range of 'a' without the value of 'b', when it is a single one
+    private static Range exclude(Range a, Range b) {
+        if(b.lo != b.hi)
+            return a;
+        if(a.lo == b.lo)
+            return new Range(a.lo + 1, a.hi, a.nonZero);
+        if(a.hi == b.lo)
+            return new Range(a.lo, a.hi - 1, a.nonZero);
+        if(b.lo == 0)
+            return new Range(a.lo, a.hi, true);
+        return a;
+    }
+
+    private void narrow(AST.expression expr, Range range) {
+        // an empty range is a branch never taken, kept as it was
+        if(expr instanceof AST.object && range.lo <= range.hi)
+            env.put(((AST.object) expr).name, range);
+    }
+
+    public String visit(AST.no_expr expr) {
+        return result(null);
+    }
+
+    public String visit(AST.assign expr) {
+        Range value = get(expr.e1);
+        if(value != null)
+            assign(expr.name, value);
+        return result(value);
+    }
+
+    public String visit(AST.static_dispatch expr) {
+        expr.caller.accept(this);
+        for(AST.expression e : expr.actuals) {
+            e.accept(this);
+        }
+        havoc();
+        return result(isInt(expr.type) ? Range.TOP : null);
+    }
+
+    public String visit(AST.dispatch expr) {
+        expr.caller.accept(this);
+        for(AST.expression e : expr.actuals) {
+            e.accept(this);
+        }
+        havoc();
+        return result(isInt(expr.type) ? Range.TOP : null);
+    }
+
+    public String visit(AST.cond expr) {
+        expr.predicate.accept(this);
+        Map<String,Range> before = env;
+        env = new HashMap<>(before);
+        refine(expr.predicate, true);
+        Range ifBody = get(expr.ifbody);
+        Map<String,Range> afterIf = env;
+        env = new HashMap<>(before);
+        refine(expr.predicate, false);
+        Range elseBody = get(expr.elsebody);
+        env = join(afterIf, env);
+        return result(isInt(expr.type) ? joinValues(ifBody, elseBody) : null);
+    }
+
+    public String visit(AST.loop expr) {
+        Map<String,Range> head = env;
+        Map<String,Range> exit;
+        while(true) {
+            env = new HashMap<>(head);
+            expr.predicate.accept(this);
+            exit = new HashMap<>(env);
+            refine(expr.predicate, true);
+            expr.body.accept(this);
+            Map<String,Range> next = new HashMap<>();
+            for(Map.Entry<String,Range> entry : join(head, env).entrySet()) {
+                next.put(entry.getKey(), head.get(entry.getKey()).widen(entry.getValue()));
+            }
+            if(next.equals(head))
+                break;
+            head = next;
+        }
+        env = exit;
+        refine(expr.predicate, false);
+        return result(null);
+    }
+
+    public String visit(AST.block expr) {
+        Range last = null;
+        for(AST.expression e : expr.l1) {
+            last = get(e);
+        }
+        return result(last);
+    }
+
+    public String visit(AST.let expr) {
+        Range value = expr.value instanceof AST.no_expr ? ZERO : get(expr.value);
+        bind(expr.name, expr.typeid, value == null ? Range.TOP : value);
+        Range body = get(expr.body);
+        unbind();
+        return result(body);
+    }
+
+    public String visit(AST.typcase expr) {
+        expr.predicate.accept(this);
+        Map<String,Range> before = env;
+        Map<String,Range> after = null;
+        Range value = null;
+        boolean first = true;
+        for(AST.branch br : expr.branches) {
+            env = new HashMap<>(before);
+            bind(br.name, br.type, Range.TOP);
+            Range branch = get(br.value);
+            unbind();
+            after = after == null ? env : join(after, env);
+            value = first ? branch : joinValues(value, branch);
+            first = false;
+        }
+        if(after != null)
+            env = after;
+        return result(isInt(expr.type) ? value : null);
+    }
+
+    public String visit(AST.branch br) {
+        return result(null);
+    }
+
+    public String visit(AST.new_ expr) {
+        return result(isInt(expr.typeid) ? ZERO : null);
+    }
+
+    public String visit(AST.isvoid expr) {
+        expr.e1.accept(this);
+        return result(null);
+    }
+
+    public String visit(AST.plus expr) {
+        Range a = getInt(expr.e1);
+        Range b = getInt(expr.e2);
+        return result(Range.of(a.lo + b.lo, a.hi + b.hi, false));
+    }
+
+    public String visit(AST.sub expr) {
+        Range a = getInt(expr.e1);
+        Range b = getInt(expr.e2);
+        return result(Range.of(a.lo - b.hi, a.hi - b.lo, false));
+    }
+
+    public String visit(AST.mul expr) {
+        Range a = getInt(expr.e1);
+        Range b = getInt(expr.e2);
+        long p1 = a.lo * b.lo, p2 = a.lo * b.hi, p3 = a.hi * b.lo, p4 = a.hi * b.hi;
+        // no factor is 0, and the product does not wrap around
+        return result(Range.of(Math.min(Math.min(p1, p2), Math.min(p3, p4)),
+            Math.max(Math.max(p1, p2), Math.max(p3, p4)), !a.containsZero() && !b.containsZero()));
+    }
+
+    public String visit(AST.divide expr) {
+        expr.e1.accept(this);
+        Range divisor = getInt(expr.e2);
+        if(!mayBeZero.containsKey(expr))
+            currentDivisions.add(expr);
+        mayBeZero.merge(expr, divisor.containsZero(), Boolean::logicalOr);
+        return result(Range.TOP);
+    }
+
+    public String visit(AST.comp expr) {
+        expr.e1.accept(this);
+        return result(null);
+    }
+
+    public String visit(AST.lt expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return result(null);
+    }
+
+    public String visit(AST.leq expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return result(null);
+    }
+
+    public String visit(AST.eq expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return result(null);
+    }
+
+    public String visit(AST.neg expr) {
+        Range a = getInt(expr.e1);
+        return result(Range.of(-a.hi, -a.lo, a.nonZero));
+    }
+
+    public String visit(AST.object expr) {
+        return result(isInt(expr.type) ? lookUp(expr.name) : null);
+    }
+
+    public String visit(AST.int_const expr) {
+        return result(new Range(expr.value, expr.value));
+    }
+
+    public String visit(AST.string_const expr) {
+        return result(null);
+    }
+
+    public String visit(AST.bool_const expr) {
+        return result(null);
+    }
+}
@@ -0,0 +1,287 @@
+package cool;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+
+// Methods and constructors the program can run, so that code generation
+// only emits those (tree shaking).
+//
+// The program starts by constructing Main and calling Main.main. A method
+// is reached by a static dispatch naming it, or by a dispatch whose
+// receivers select it (see TypeFlow). A constructor is reached by a 'new'
+// of the class or by the constructor of a class inheriting from it, and
+// runs the initializers of the attributes. The bodies of the reached
+// methods and constructors are scanned once, for the calls they make.
+//
+// The default methods are tracked the same way, by their mangled names.
+// Those returning a new IO object need the constructor of IO.
+public class Reachability implements Visitor {
+
+    // mangled names of the methods reached
+    private final Set<String> methods = new HashSet<>();
+
+    // classes whose constructor is reached
+    private final Set<String> constructors = new HashSet<>();
+
+    // reached but not scanned yet
+    private final Deque<AST.method> pendingMethods = new ArrayDeque<>();
+    private final Deque<AST.class_> pendingConstructors = new ArrayDeque<>();
+
+    private final ProgramModel model;
+
+    private final InheritanceGraph graph;
+
+    private final TypeFlow typeFlow;
+
+    private Reachability(ProgramModel model) {
+        this.model = model;
+        graph = model.getGraph();
+        typeFlow = model.getTypeFlow();
+    }
+
+    // Finds the methods and constructors reached from the entry point.
+    // Needs the method tables and the type flow of the program model.
+    public static Reachability compute(ProgramModel model) {
+        Reachability reachability = new Reachability(model);
+        // every constructor ends up calling the one of Object
+        reachability.addConstructor(Global.Constants.ROOT_TYPE);
+        if(reachability.graph.hasClass(Global.Constants.MAIN_TYPE)) {
+            reachability.addConstructor(Global.Constants.MAIN_TYPE);
+            reachability.addMethod(Global.Constants.MAIN_TYPE, "main");
+        }
+        reachability.scan();
+        return reachability;
+    }
+
+    public boolean isReachable(String className, String methodName) {
+        return methods.contains(Utils.getMangledName(className, methodName));
+    }
+
+    public boolean isConstructed(String className) {
+        return constructors.contains(className);
+    }
+
+    // Text of the methods and constructor of the class emitted, part
+    // of the fingerprint of its IR
+    public String getSummary(AST.class_ cl) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(isConstructed(cl.name) ? "new;" : ";");
+        for(AST.feature f : cl.features) {
+            if(f instanceof AST.method && isReachable(cl.name, ((AST.method) f).name)) {
+                builder.append(((AST.method) f).name).append(';');
+            }
+        }
+        return builder.toString();
+    }
+
+    private void scan() {
+        while(!pendingMethods.isEmpty() || !pendingConstructors.isEmpty()) {
+            if(!pendingConstructors.isEmpty()) {
+                for(AST.feature f : pendingConstructors.poll().features) {
+                    if(f instanceof AST.attr)
+                        ((AST.attr) f).value.accept(this);
+                }
+            } else {
+                pendingMethods.poll().body.accept(this);
+            }
+        }
+    }
+
+    // Marks the constructor of the class and the ones of its parents
+    private void addConstructor(String className) {
+        for(String cl = className; cl != null && !Utils.isPrimitiveType(cl) && constructors.add(cl);
+                cl = graph.getParentClassName(cl)) {
+            pendingConstructors.add(graph.getAstClass(cl));
+        }
+    }
+
+    // Marks the method called on an object of the class
+    private void addMethod(String className, String methodName) {
+        String mthdClass = model.resolveMethod(className, methodName);
+        if(mthdClass == null || !methods.add(Utils.getMangledName(mthdClass, methodName)))
+            return;
+        AST.method method = null;
+        for(AST.feature f : graph.getAstClass(mthdClass).features) {
+            if(f instanceof AST.method && ((AST.method) f).name.equals(methodName)) {
+                method = (AST.method) f;
+            }
+        }
+        if(method == null)
+            return;
+        if(method.body != null) {
+            pendingMethods.add(method);
+        } else if(Global.Constants.IO_TYPE.equals(method.typeid)) {
+            // out_string and out_int return a new IO object
+            addConstructor(Global.Constants.IO_TYPE);
+        }
+    }
+
+    public void visit(AST.program prog) {
+    }
+
+    public void visit(AST.class_ cl) {
+    }
+
+    public void visit(AST.attr at) {
+    }
+
+    public void visit(AST.method mthd) {
+    }
+
+    public void visit(AST.formal fm) {
+    }
+
+    public String visit(AST.no_expr expr) {
+        return null;
+    }
+
+    public String visit(AST.assign expr) {
+        expr.e1.accept(this);
+        return null;
+    }
+
+    public String visit(AST.static_dispatch expr) {
+        expr.caller.accept(this);
+        for(AST.expression e : expr.actuals) {
+            e.accept(this);
+        }
+        addMethod(expr.typeid, expr.name);
+        return null;
+    }
+
+    public String visit(AST.dispatch expr) {
+        expr.caller.accept(this);
+        for(AST.expression e : expr.actuals) {
+            e.accept(this);
+        }
+        Set<String> targets = typeFlow.getDispatchTargets(expr).keySet();
+        if(targets.isEmpty()) {
+            // emitted as a call on the static type of the receiver
+            addMethod(expr.caller.type, expr.name);
+        }
+        for(String mthdClass : targets) {
+            addMethod(mthdClass, expr.name);
+        }
+        return null;
+    }
+
+    public String visit(AST.cond expr) {
+        expr.predicate.accept(this);
+        expr.ifbody.accept(this);
+        expr.elsebody.accept(this);
+        return null;
+    }
+
+    public String visit(AST.loop expr) {
+        expr.predicate.accept(this);
+        expr.body.accept(this);
+        return null;
+    }
+
+    public String visit(AST.block expr) {
+        for(AST.expression e : expr.l1) {
+            e.accept(this);
+        }
+        return null;
+    }
+
+    public String visit(AST.let expr) {
+        expr.value.accept(this);
+        expr.body.accept(this);
+        return null;
+    }
+
+    public String visit(AST.typcase expr) {
+        expr.predicate.accept(this);
+        for(AST.branch b : expr.branches) {
+            if(typeFlow.isReachable(b))
+                b.accept(this);
+        }
+        return null;
+    }
+
+    public String visit(AST.branch br) {
+        br.value.accept(this);
+        return null;
+    }
+
+    public String visit(AST.new_ expr) {
+        addConstructor(expr.typeid);
+        return null;
+    }
+
+    public String visit(AST.isvoid expr) {
+        expr.e1.accept(this);
+        return null;
+    }
+
+    public String visit(AST.plus expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.sub expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.mul expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.divide expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.comp expr) {
+        expr.e1.accept(this);
+        return null;
+    }
+
+    public String visit(AST.lt expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.leq expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.eq expr) {
+        expr.e1.accept(this);
+        expr.e2.accept(this);
+        return null;
+    }
+
+    public String visit(AST.neg expr) {
+        expr.e1.accept(this);
+        return null;
+    }
+
+    public String visit(AST.object expr) {
+        return null;
+    }
+
+    public String visit(AST.int_const expr) {
+        return null;
+    }
+
+    public String visit(AST.string_const expr) {
+        return null;
+    }
+
+    public String visit(AST.bool_const expr) {
+        return null;
+    }
+}
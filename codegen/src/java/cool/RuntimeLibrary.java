@@ -0,0 +1,94 @@
+package cool;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.TreeMap;
+import java.util.List;
+import java.util.Map;
+
+// The runtime of the generated programs as a library module: the C
+// declarations, the methods and constructors of Object and IO, the
+// methods of String and the error printers.
+//
+// None of it depends on the program, so the module is generated once per
+// version of the runtime and kept on disk. A program compiled against it
+// only declares these functions, and is linked with the module (llvm-link
+// then opt can inline the runtime into the program). The C main, which
+// depends on Main, stays in the program.
+public class RuntimeLibrary {
+
+    // Bump this whenever the IR of the runtime changes
+    public static final int VERSION = 3;
+
+    private static final String SUBDIRECTORY = "runtime";
+
+    // Returns the module of the runtime under 'root', generated if it is not there yet
+    public static File getModule(File root) throws IOException {
+        File directory = new File(root, SUBDIRECTORY);
+        File module = new File(directory, "cool-runtime-" + VERSION + ".ll");
+        if(!module.isFile()) {
+            directory.mkdirs();
+            File temp = File.createTempFile("cool-runtime", ".tmp", directory);
+            Files.write(temp.toPath(), generate().getBytes(StandardCharsets.UTF_8));
+            // renaming, so that a concurrent build never sees a partial module
+            if(!temp.renameTo(module)) {
+                temp.delete();
+            }
+        }
+        return module;
+    }
+
+    // Declarations of the functions defined by the module
+    public static List<String> getDeclarations(File module) {
+        try {
+            String ir = new String(Files.readAllBytes(module.toPath()), StandardCharsets.UTF_8);
+            return new ArrayList<>(ModuleSplitter.getDefinitions(ir).values());
+        } catch(IOException e) {
+            throw new IllegalStateException("Could not read the runtime library " + module, e);
+        }
+    }
+
+    // IR of the module. DefaultIR prints through the global state of the
+    // compilation, which is set aside meanwhile.
+    private static String generate() {
+        PrintWriter out = Global.out;
+        ProgramModel programModel = Global.programModel;
+        Map<String,String> constants = Global.stringConstantToRegisterMap;
+        int registerCounter = Global.registerCounter;
+        StringWriter body = new StringWriter();
+        try {
+            Global.out = new PrintWriter(body);
+            Global.programModel = null;
+            Global.stringConstantToRegisterMap = new TreeMap<>();
+            DefaultIR.addDefaultStrings();
+            DefaultIR.generateRuntimeLibrary();
+            Global.out.flush();
+
+            StringBuilder builder = new StringBuilder();
+            builder.append("; ModuleID = 'cool-runtime-").append(VERSION).append("'\n");
+            builder.append("source_filename = \"cool-runtime\"\n\n");
+            builder.append("; String constant declarations\n");
+            for(Map.Entry<String,String> entry: Global.stringConstantToRegisterMap.entrySet()) {
+                builder.append(entry.getValue()).append(" = private unnamed_addr constant [")
+                .append(entry.getKey().length()+1).append(" x i8] c\"").append(entry.getKey()).append("\\00\", align 1\n");
+            }
+            builder.append("\n; Struct declarations\n");
+            for(String className : new String[] {Global.Constants.ROOT_TYPE, Global.Constants.IO_TYPE}) {
+                ClassDescriptor descriptor = Utils.getDescriptor(className);
+                builder.append(descriptor.structName).append(" = type ").append(descriptor.structType).append('\n');
+            }
+            builder.append(body);
+            return builder.toString();
+        } finally {
+            Global.out = out;
+            Global.programModel = programModel;
+            Global.stringConstantToRegisterMap = constants;
+            Global.registerCounter = registerCounter;
+        }
+    }
+}
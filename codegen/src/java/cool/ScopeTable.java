@@ -1,37 +1,132 @@
 package cool;
 import java.util.*;
+/* Symbol table of nested scopes.
+ *
+ * Every name gets an id the first time it is seen, from an open addressing
+ * table. The innermost binding of each name is kept in an array indexed by
+ * the id, and links to the binding it shadows. Entering a scope only pushes
+ * a marker on the undo log, every insert logs the id of the name, and
+ * exiting the scope pops the log down to the marker, restoring the shadowed
+ * bindings. Looking up a name is a single probe whatever the nesting depth.
+ */
 public class ScopeTable<T> {
+	private static class Binding<T> {
+		T value;
+		int scope;				// scope in which the binding was inserted
+		Binding<T> shadowed;	// binding of the same name in an outer scope
+
+		Binding(T value, int scope, Binding<T> shadowed) {
+			this.value = value;
+			this.scope = scope;
+			this.shadowed = shadowed;
+		}
+	}
+
 	private int scope;
-	private ArrayList<HashMap<String, T>> maps=new ArrayList<HashMap<String, T>>();
+
+	// open addressing table: name -> id
+	private String[] names = new String[64];
+	private int[] nameIds = new int[64];
+	private int nameCount = 0;
+
+	// id -> innermost binding of the name, null if it is not in scope
+	private ArrayList<Binding<T>> bindings = new ArrayList<Binding<T>>();
+
+	// ids of the names inserted, and the start of each scope in the log
+	private int[] undoLog = new int[64];
+	private int undoTop = 0;
+	private int[] scopeStart = new int[16];
+
 	public ScopeTable(){
 		scope = 0;
-		maps.add(new HashMap<String, T>());
 	}
 	void insert(String s, T t){
-		maps.get(scope).put(s,t);
+		int id = getId(s);
+		Binding<T> b = bindings.get(id);
+		if(b != null && b.scope == scope) {
+			b.value = t;		// redefined in the same scope
+			return;
+		}
+		bindings.set(id, new Binding<T>(t, scope, b));
+		if(undoTop == undoLog.length)
+			undoLog = Arrays.copyOf(undoLog, 2 * undoTop);
+		undoLog[undoTop++] = id;
 	}
-	
 	void insertAll(HashMap<String, T> hs) {
-		maps.get(scope).putAll(hs);
+		for(Map.Entry<String, T> e : hs.entrySet())
+			insert(e.getKey(), e.getValue());
 	}
 	void enterScope(){
 		scope++;
-		maps.add(new HashMap<String, T>());
+		if(scope == scopeStart.length)
+			scopeStart = Arrays.copyOf(scopeStart, 2 * scope);
+		scopeStart[scope] = undoTop;
 	}
 	void exitScope(){
 		if (scope>0){
-			maps.remove(scope);
+			while(undoTop > scopeStart[scope]) {
+				int id = undoLog[--undoTop];
+				Binding<T> b = bindings.get(id);
+				// the binding may already be gone if the name was removed
+				if(b != null && b.scope == scope)
+					bindings.set(id, b.shadowed);
+			}
 			scope--;
 		}
 	}	
 	T lookUpLocal(String t){
-		return maps.get(scope).get(t);
+		Binding<T> b = lookUp(t);
+		return b != null && b.scope == scope ? b.value : null;
 	}
 	T lookUpGlobal(String t){
-		for ( int i = scope; i>=0 ; i--){
-			if (maps.get(i).containsKey(t))
-				return maps.get(i).get(t);
+		Binding<T> b = lookUp(t);
+		return b != null ? b.value : null;
+	}
+
+	private Binding<T> lookUp(String s) {
+		int mask = names.length - 1;
+		for(int i = hash(s) & mask; names[i] != null; i = (i + 1) & mask) {
+			if(names[i].equals(s))
+				return bindings.get(nameIds[i]);
 		}
 		return null;
 	}
+
+	// Id of the name, a new one if the name has not been seen yet
+	private int getId(String s) {
+		int mask = names.length - 1;
+		int i = hash(s) & mask;
+		for(; names[i] != null; i = (i + 1) & mask) {
+			if(names[i].equals(s))
+				return nameIds[i];
+		}
+		names[i] = s;
+		nameIds[i] = nameCount;
+		bindings.add(null);
+		if(++nameCount * 2 > names.length)
+			grow();
+		return nameCount - 1;
+	}
+
+	private void grow() {
+		String[] oldNames = names;
+		int[] oldIds = nameIds;
+		names = new String[2 * oldNames.length];
+		nameIds = new int[names.length];
+		int mask = names.length - 1;
+		for(int j = 0; j < oldNames.length; j++) {
+			if(oldNames[j] == null)
+				continue;
+			int i = hash(oldNames[j]) & mask;
+			while(names[i] != null)
+				i = (i + 1) & mask;
+			names[i] = oldNames[j];
+			nameIds[i] = oldIds[j];
+		}
+	}
+
+	private static int hash(String s) {
+		int h = s.hashCode();
+		return h ^ (h >>> 16);
+	}
 }
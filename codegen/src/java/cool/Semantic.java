@@ -14,42 +14,41 @@ import cool.AST.class_;
 
 
 public class Semantic{
-	private boolean errorFlag = false;
 	public void reportError(String filename, int lineNo, String error){
-		errorFlag = true;
-		System.err.println(filename+":"+lineNo+": "+error);
+		diagnostics.error(Diagnostics.TYPE, filename, lineNo, error);
 	}
 	public boolean getErrorFlag(){
-		return errorFlag;
+		return diagnostics.hasErrors();
 	}
 
 /*
 	Don't change code above this line
 */
 
+	Diagnostics diagnostics = new Diagnostics();		// errors found, printed by the caller once the analysis is over
 	ScopeTable<AST.attr> scopeTable = new ScopeTable<AST.attr>();
-	ClassTable classTable = new ClassTable();
+	ClassTable classTable = new ClassTable(diagnostics);
 	String filename;
+	TypeChecker typeChecker = new TypeChecker();
+	ProgramModel programModel;		// classes of the program for code generation, null if there are errors
 	
 	public Semantic(AST.program program){
 		//Write Semantic analyzer code here
 		
-		processGraph(program.classes);
-		List<Error> errors = classTable.getErrors();	// ClassTable cannot access reportError method (its not static). Thus, errors are returned in a list (from classTable) and printed.
-		for(Error e : errors) {
-			reportError(e.fname, e.line, e.err);
-		}
+		for(AST.class_ e : program.classes)
+			Global.typeTable.add(e.name);		// ids of the types set on the expressions, in the order of the program
+		
+		if(!processGraph(program.classes))
+			return;		// the classes cannot be type checked without a valid inheritance graph
 		
 		for(AST.class_ e : program.classes) {
-			if(!Global.stringConstantToRegisterMap.containsKey(e.name)) {
-				Global.stringConstantToRegisterMap.put(e.name, "@.str."+Global.stringRegisterCounter);
-				Global.stringRegisterCounter++;
-			}
+			Utils.addStringConstant(e.name);
 			filename = e.filename;				// filename for each class	
 			scopeTable.enterScope();			// enter new scope for a class
 			scopeTable.insert("self", new AST.attr("self", e.name, new AST.no_expr(e.lineNo), e.lineNo));		// self is available as attribute within the class
-			scopeTable.insertAll(classTable.getAttrs(e.name));		// insert all inherited and other declared attributes within the class into the scope
-			processNode(e);
+			for(ClassPlus c = classTable.getClassPlus(e.name); c != null; c = c.parentClass)
+				scopeTable.insertAll(c.alist);		// insert all inherited and other declared attributes within the class into the scope
+			e.accept(typeChecker);
 			
 			scopeTable.exitScope();				
 		}
@@ -58,13 +57,23 @@ public class Semantic{
 		ClassPlus main_class = classTable.getClassPlus("Main");
 		if(main_class == null)
 			reportError(filename, 1, "Program does not contain class 'Main'");
-		else if(main_class.mlist.containsKey("main") == false)
+		else if(main_class.getMethod("main") == null)
 			reportError(filename, 1, "'Main' class does not contain 'main' method");
 		
-		
+		if(!getErrorFlag())
+			programModel = ProgramModel.build(program, classTable);
 	}
 	
-	private void processGraph(List <AST.class_> classes) {
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
+
+	public ProgramModel getProgramModel() {
+		return programModel;
+	}
+
+	// Returns false if the inheritance graph has errors
+	private boolean processGraph(List <AST.class_> classes) {
 		
 		Integer sz = 0;		// stores the number of classes
 		HashMap <String, AST.class_> idxCont = new HashMap <String, AST.class_> ();
@@ -93,12 +102,12 @@ public class Semantic{
 		 */
 		for(AST.class_ e : classes) {
 			if(no_redef.contains(e.name)) {
-				reportError(e.filename, e.lineNo, "Cannot redefine class : " + e.name);
-				System.exit(1);
+				diagnostics.error(Diagnostics.CLASS_GRAPH, e.filename, e.lineNo, "Cannot redefine class : " + e.name);
+				return false;
 			}
 			else if(no_inherit.contains(e.parent)) {
-				reportError(e.filename, e.lineNo, "Class cannot inherit : " + e.parent);
-				System.exit(1);
+				diagnostics.error(Diagnostics.CLASS_GRAPH, e.filename, e.lineNo, "Class cannot inherit : " + e.parent);
+				return false;
 			}
 			else if(classIdx.containsKey(e.name) == false) {
 				idxName.put(sz, e.name);			// Reverse lookup. Integer -> className
@@ -113,8 +122,8 @@ public class Semantic{
 		 */
 		for(AST.class_ e : classes) {
 			if(classIdx.containsKey(e.parent) == false) {
-				reportError(e.filename, e.lineNo, "Parent class not found : " + e.parent);
-				System.exit(1);
+				diagnostics.error(Diagnostics.CLASS_GRAPH, e.filename, e.lineNo, "Parent class not found : " + e.parent);
+				return false;
 			}
 			int u = classIdx.get(e.parent);
 			int v = classIdx.get(e.name);
@@ -122,8 +131,7 @@ public class Semantic{
 		}
 		
 		boolean cycles = false;
-		Boolean[] visited = new Boolean[sz + 10];
-		Arrays.fill(visited, Boolean.FALSE);
+		boolean[] visited = new boolean[sz + 10];
 		Queue<Integer> q = new LinkedList<Integer>(); q.offer(0);
 		
 		while (!q.isEmpty()) {
@@ -131,7 +139,7 @@ public class Semantic{
 			if(visited[u] == false)
 				visited[u] = true;
 			else {
-				reportError(idxCont.get(idxName.get(u)).filename, 1, "Class " +  idxName.get(u) + ", or an ancestor of " + idxName.get(u) + ", is involved in an inheritance cycle.");
+				diagnostics.error(Diagnostics.CLASS_GRAPH, idxCont.get(idxName.get(u)).filename, 1, "Class " +  idxName.get(u) + ", or an ancestor of " + idxName.get(u) + ", is involved in an inheritance cycle.");
 				cycles = true;		// `cycles` is set to true if cycles are found
 				if(q.isEmpty()) {
 					for(int i = 0; i < sz; ++i)
@@ -154,396 +162,380 @@ public class Semantic{
 			}
 		}
 		
-		if(cycles) System.exit(1);		// exit if cycles found
+		if(cycles) return false;		// stop if cycles found
 				
-		q.clear(); q.offer(0);
-		
-		while (!q.isEmpty()) {
-			int u = q.poll();
-			if(u != 1 && u != 0) {
-				classTable.insert(idxCont.get(idxName.get(u)));		// insert classes in BFS-order so that methods and attributes can be inherited.
-			}
-			for(Integer v : classGraph.get(u)) {
-				q.offer(v);
-			}
-		}
+		classTable.insertAll(classes);		// insert classes in BFS-order so that methods and attributes can be inherited.
+		return true;
 	}
 	
-	private void processNode(AST.class_ class_) {
-		/* The method checks if the features are
-		 * attr or method. Corresponding overloaded
-		 * function is called.
-		 */
-		for(AST.feature e : class_.features) {
-			if(e.getClass() == AST.method.class) {
-				processNode((AST.method)e);
-			}
-			else if(e.getClass() == AST.attr.class) {
-				processNode((AST.attr)e);
+	/* Type checks the features of the classes, annotating every
+	 * expression with its type. Each node is dispatched through its
+	 * accept method, the visit methods return nothing.
+	 */
+	private class TypeChecker implements Visitor {
+
+		// Sets the type of the expression from its name
+		private void setType(AST.expression e, String type) {
+			e.setType(type, Global.typeTable.getId(type));
+		}
+
+		public void visit(AST.program program) {
+			for(AST.class_ e : program.classes)
+				e.accept(this);
+		}
+
+		public void visit(AST.class_ class_) {
+			/* The method checks if the features are
+			 * attr or method. Corresponding visit
+			 * function is called.
+			 */
+			for(AST.feature e : class_.features)
+				e.accept(this);
+		}
+
+		public void visit(AST.method method) {
+			scopeTable.enterScope();
+
+			for(AST.formal e : method.formals)
+				e.accept(this);
+			method.body.accept(this);
+			// if return type conforms to the method type, then hurray
+			if(classTable.conforms(method.body.type, method.typeid) == false) {
+				reportError(filename, method.body.lineNo, "Inferred return type " + method.body.type + 
+						" of method " + method.name + " does not conform to declared return type " + method.typeid);
 			}
+			scopeTable.exitScope();
 		}
-	}
-	
-	private void processNode(AST.method method) {
-		AST.attr a_self = scopeTable.lookUpLocal("self");	// getting the self (class) object to get class name.
-		
-		scopeTable.enterScope();
-		
-		for(AST.formal e : method.formals) {
-			AST.feature f = scopeTable.lookUpLocal(e.name);
+
+		public void visit(AST.formal formal) {
+			AST.attr a_f = scopeTable.lookUpLocal(formal.name);
 			/* Error:
 			 * repeat formal parameters : Example func(x : Int, y : Bool, x : String) : Object { ... }// x is multiply defined
 			 */
-			if(f != null && f.getClass() == AST.attr.class) {
-				AST.attr a_f = (AST.attr) f;
+			if(a_f != null) {
 				reportError(filename, a_f.lineNo, "Formal parameter " + a_f.name + " is multiply defined.");
 			}
-			scopeTable.insert(e.name, new AST.attr(e.name, e.typeid, new AST.no_expr(e.lineNo), e.lineNo));
+			scopeTable.insert(formal.name, new AST.attr(formal.name, formal.typeid, new AST.no_expr(formal.lineNo), formal.lineNo));
 		}
-		processNode(method.body);
-		// if return type conforms to the method type, then hurray
-		if(classTable.conforms(method.body.type, method.typeid) == false) {
-			reportError(filename, method.body.lineNo, "Inferred return type " + method.body.type + 
-					" of method " + method.name + " does not conform to declared return type " + method.typeid);
-		}
-		scopeTable.exitScope();
-	}
-	
-	private void processNode(AST.attr attr) {
-		AST.attr a_self = scopeTable.lookUpLocal("self");	// getting the self (class) object to get class name.
-		
-		if(attr.value.getClass() != AST.no_expr.class) {
-			processNode(attr.value);
-			// if return type conforms to the method type, then hurray
-			if(classTable.conforms(attr.value.type, attr.typeid) == false) {
-				reportError(filename, attr.value.lineNo, "Inferred type " + attr.value.type + " of initialization of attribute "
-						+ attr.name + " does not conform to declared type " + attr.typeid);
+
+		public void visit(AST.attr attr) {
+			if(!(attr.value instanceof AST.no_expr)) {
+				attr.value.accept(this);
+				// if return type conforms to the method type, then hurray
+				if(classTable.conforms(attr.value.type, attr.typeid) == false) {
+					reportError(filename, attr.value.lineNo, "Inferred type " + attr.value.type + " of initialization of attribute "
+							+ attr.name + " does not conform to declared type " + attr.typeid);
+				}
 			}
 		}
-	}
-	
-	private void processNode(AST.expression expr) {
-		if(expr.getClass() == AST.assign.class)
-			processNode((AST.assign)expr);
-		else if(expr.getClass() == AST.static_dispatch.class)
-			processNode((AST.static_dispatch)expr);
-		else if(expr.getClass() == AST.dispatch.class)
-			processNode((AST.dispatch)expr);
-		else if(expr.getClass() == AST.cond.class)
-			processNode((AST.cond)expr);
-		else if(expr.getClass() == AST.loop.class)
-			processNode((AST.loop)expr);
-		else if(expr.getClass() == AST.block.class)
-			processNode((AST.block)expr);
-		else if(expr.getClass() == AST.let.class)
-			processNode((AST.let)expr);
-		else if(expr.getClass() == AST.typcase.class)
-			processNode((AST.typcase)expr);
-		else if(expr.getClass() == AST.new_.class)
-			processNode((AST.new_)expr);
-		else if(expr.getClass() == AST.isvoid.class)
-			processNode((AST.isvoid)expr);
-		else if(expr.getClass() == AST.plus.class)
-			processNode((AST.plus)expr);
-		else if(expr.getClass() == AST.sub.class)
-			processNode((AST.sub)expr);
-		else if(expr.getClass() == AST.mul.class)
-			processNode((AST.mul)expr);
-		else if(expr.getClass() == AST.divide.class)
-			processNode((AST.divide)expr);
-		else if(expr.getClass() == AST.comp.class)
-			processNode((AST.comp)expr);
-		else if(expr.getClass() == AST.lt.class)
-			processNode((AST.lt)expr);
-		else if(expr.getClass() == AST.leq.class)
-			processNode((AST.leq)expr);
-		else if(expr.getClass() == AST.eq.class)
-			processNode((AST.eq)expr);
-		else if(expr.getClass() == AST.neg.class)
-			processNode((AST.neg)expr);
-		else if(expr.getClass() == AST.object.class)
-			processNode((AST.object)expr);
-		else if(expr.getClass() == AST.int_const.class)
-			processNode((AST.int_const)expr);
-		else if(expr.getClass() == AST.string_const.class)
-			processNode((AST.string_const)expr);
-		else if(expr.getClass() == AST.bool_const.class)
-			processNode((AST.bool_const)expr);
-	}
-	
-	private void processNode(AST.assign assign) {
-		processNode(assign.e1);
-		AST.attr a = scopeTable.lookUpGlobal(assign.name);
-		/* Errors:
-		 * - Variable has not been declared
-		 * - Type of expression being assigned to the variable does not conform to the type of the variable
-		 */
-		if(a == null)
-			reportError(filename, assign.lineNo, "Assignment to undeclared variable " + assign.name);
-		else if(classTable.conforms(assign.e1.type, a.typeid) == false)
-			reportError(filename, assign.lineNo, "Type " + assign.e1.type + " of assigned expression does not conform to declared type "
-					+ a.typeid + " of identifier " + a.name);
-		assign.type = assign.e1.type;
-	}
-	private void processNode(AST.static_dispatch sd) {
-		AST.method m = null;
-		boolean found = false;
-		processNode(sd.caller);				// first process the caller.
-		
-		for(AST.expression e : sd.actuals)	// then process all of the actual parameters (left-to-right)
-			processNode(e);
 
-		
-		ClassPlus c = classTable.getClassPlus(sd.typeid);
-		if(c == null)
-			reportError(filename, sd.lineNo, "Static dispatch to undefined class " + sd.typeid);
-		else if(classTable.conforms(sd.caller.type, c.name) == false)
-			reportError(filename, sd.lineNo, "Expression type " + sd.caller.type + " does not conform to declared static dispatch type " + c.name);
-		else {
-			if(c.mlist.containsKey(sd.name)) {
-				found = true;
-				m = c.mlist.get(sd.name);
-				if(sd.actuals.size() != m.formals.size())
-					reportError(filename, sd.lineNo, "Method " + m.name + " invoked with wrong number of arguments.");
-				else {
-					for(int i = 0; i < sd.actuals.size(); ++i) {
-						String actual_type = sd.actuals.get(i).type;
-						String formal_type = m.formals.get(i).typeid;
-						if(classTable.conforms(actual_type, formal_type) == false)
-							reportError(filename, sd.lineNo, "In call of method " + m.name + ", type " + actual_type + " does not conform to declared type " + formal_type);			
-					}
-				}	
-			}
+		public String visit(AST.no_expr no_expr) {
+			return null;
+		}
+
+		public String visit(AST.assign assign) {
+			assign.e1.accept(this);
+			AST.attr a = scopeTable.lookUpGlobal(assign.name);
+			/* Errors:
+			 * - Variable has not been declared
+			 * - Type of expression being assigned to the variable does not conform to the type of the variable
+			 */
+			if(a == null)
+				reportError(filename, assign.lineNo, "Assignment to undeclared variable " + assign.name);
+			else if(classTable.conforms(assign.e1.type, a.typeid) == false)
+				reportError(filename, assign.lineNo, "Type " + assign.e1.type + " of assigned expression does not conform to declared type "
+						+ a.typeid + " of identifier " + a.name);
+			assign.setType(assign.e1.type, assign.e1.typeId);
+			return null;
+		}
+
+		public String visit(AST.static_dispatch sd) {
+			AST.method m = null;
+			boolean found = false;
+			sd.caller.accept(this);				// first process the caller.
+			
+			for(AST.expression e : sd.actuals)	// then process all of the actual parameters (left-to-right)
+				e.accept(this);
+
+			
+			ClassPlus c = classTable.getClassPlus(sd.typeid);
+			if(c == null)
+				reportError(filename, sd.lineNo, "Static dispatch to undefined class " + sd.typeid);
+			else if(classTable.conforms(sd.caller.type, c.name) == false)
+				reportError(filename, sd.lineNo, "Expression type " + sd.caller.type + " does not conform to declared static dispatch type " + c.name);
 			else {
-				reportError(filename, sd.lineNo, "Static dispatch to undefined method " + sd.name);
+				m = c.getMethod(sd.name);
+				if(m != null) {
+					found = true;
+					checkActuals(m, sd.actuals, sd.lineNo);
+				}
+				else {
+					reportError(filename, sd.lineNo, "Static dispatch to undefined method " + sd.name);
+				}
 			}
+			if(found)
+				setType(sd, m.typeid);
+			else
+				sd.setType("Object", TypeTable.OBJECT);
+			return null;
 		}
-		if(found)
-			sd.type = m.typeid;
-		else
-			sd.type = "Object";
-		
 		
-	}
-	
-	private void processNode(AST.dispatch dispatch) {
-		AST.method m = null;
-		boolean found = false;
+		public String visit(AST.dispatch dispatch) {
+			AST.method m = null;
+			boolean found = false;
 
-		processNode(dispatch.caller);
+			dispatch.caller.accept(this);
 
-		
-		for(AST.expression e : dispatch.actuals)
-			processNode(e);
-		
-		ClassPlus c = classTable.getClassPlus(dispatch.caller.type);
-		if(c == null) {
-			reportError(filename, dispatch.lineNo, "Class " + dispatch.caller.type + " is undefined.");
-		} else {
-			if(c.mlist.containsKey(dispatch.name)) {
-				//System.out.println("Found the method " + dispatch.name  + " in class " + c.name);
-				found = true;
-				m = c.mlist.get(dispatch.name);
-				//System.out.println("Return type of method " + m.name + " is " + m.typeid);
-				if(dispatch.actuals.size() != m.formals.size())
-					reportError(filename, dispatch.lineNo, "Method " + m.name + " invoked with wrong number of arguments.");
+			for(AST.expression e : dispatch.actuals)
+				e.accept(this);
+			
+			ClassPlus c = classTable.getClassPlus(dispatch.caller.type);
+			if(c == null) {
+				reportError(filename, dispatch.lineNo, "Class " + dispatch.caller.type + " is undefined.");
+			} else {
+				m = c.getMethod(dispatch.name);
+				if(m != null) {
+					found = true;
+					checkActuals(m, dispatch.actuals, dispatch.lineNo);
+				}
 				else {
-					for(int i = 0; i < dispatch.actuals.size(); ++i) {
-						String actual_type = dispatch.actuals.get(i).type;
-						String formal_type = m.formals.get(i).typeid;
-						if(classTable.conforms(actual_type, formal_type) == false)
-							reportError(filename, dispatch.lineNo, "In call of method " + m.name + ", type " + actual_type + " does not conform to declared type " + formal_type);			
-					}
-				}	
+					reportError(filename, dispatch.lineNo, "Dispatch to undefined method " + dispatch.name);
+				}
 			}
+			if(found)
+				setType(dispatch, m.typeid);
+			else
+				dispatch.setType("Object", TypeTable.OBJECT);
+			return null;
+		}
+
+		// Checks the number of actuals of a call of m, and that their types conform to the formals
+		private void checkActuals(AST.method m, List<AST.expression> actuals, int lineNo) {
+			if(actuals.size() != m.formals.size())
+				reportError(filename, lineNo, "Method " + m.name + " invoked with wrong number of arguments.");
 			else {
-				reportError(filename, dispatch.lineNo, "Dispatch to undefined method " + dispatch.name);
+				for(int i = 0; i < actuals.size(); ++i) {
+					String actual_type = actuals.get(i).type;
+					String formal_type = m.formals.get(i).typeid;
+					if(classTable.conforms(actual_type, formal_type) == false)
+						reportError(filename, lineNo, "In call of method " + m.name + ", type " + actual_type + " does not conform to declared type " + formal_type);			
+				}
 			}
 		}
-		if(found)
-			dispatch.type = m.typeid;
-		else
-			dispatch.type = "Object";
-	
-	}
-	private void processNode(AST.cond cond) {
 
-		processNode(cond.predicate);
-		if(cond.predicate.type.equals("Bool") == false) {
-			reportError(filename, cond.predicate.lineNo, "Predicate of 'if' does not have type Bool.");
+		public String visit(AST.cond cond) {
+			cond.predicate.accept(this);
+			if(cond.predicate.type.equals("Bool") == false) {
+				reportError(filename, cond.predicate.lineNo, "Predicate of 'if' does not have type Bool.");
+			}
+			cond.ifbody.accept(this);
+			cond.elsebody.accept(this);
+			setType(cond, classTable.lca(cond.ifbody.type, cond.elsebody.type));
+			return null;
+		}
+
+		public String visit(AST.loop loop) {
+			loop.predicate.accept(this);
+			if(loop.predicate.type.equals("Bool") == false) {
+				reportError(filename, loop.predicate.lineNo, "Loop condition does not have type Bool.");
+			}
+			loop.body.accept(this);
+			loop.setType("Object", TypeTable.OBJECT);
+			return null;
 		}
-		processNode(cond.ifbody);
-		processNode(cond.elsebody);
-		cond.type = classTable.lca(cond.ifbody.type, cond.elsebody.type);
-	}
-	private void processNode(AST.loop loop) {
 
-		processNode(loop.predicate);
-		if(loop.predicate.type.equals("Bool") == false) {
-			reportError(filename, loop.predicate.lineNo, "Loop condition does not have type Bool.");
+		public String visit(AST.block block) {
+			for(AST.expression e : block.l1)
+				e.accept(this);
+			AST.expression last = block.l1.get(block.l1.size() - 1);
+			block.setType(last.type, last.typeId);
+			return null;
 		}
-		processNode(loop.body);
-		loop.type = "Object";
-	}
-	private void processNode(AST.block block) {
-		for(AST.expression e : block.l1)
-			processNode(e);
-		block.type = block.l1.get(block.l1.size() - 1).type;
-	}
-	private void processNode(AST.let let) {
-		if(let.value.getClass() != AST.no_expr.class) {
-			processNode(let.value);
-			if(classTable.conforms(let.value.type, let.typeid) == false)
-				reportError(filename, let.lineNo, "Inferred type of " + let.value.type + " of initialization"
-						+ "of " + let.name + " does not conform to idenitifier's declared type " + let.typeid);
-		}
-		scopeTable.enterScope();
-		scopeTable.insert(let.name, new AST.attr(let.name, let.typeid, let.value, let.lineNo));
-		processNode(let.body);
-		/*
-		 * testing.cl:1: Inferred type String of initialization of b does not conform to identifier's declared type Int.
-		 */
-		let.type = let.body.type;
-		scopeTable.exitScope();
-	}
-	private void processNode(AST.typcase typcase) {
-		processNode(typcase.predicate);
-		for(AST.branch e : typcase.branches) {
+
+		public String visit(AST.let let) {
+			if(!(let.value instanceof AST.no_expr)) {
+				let.value.accept(this);
+				if(classTable.conforms(let.value.type, let.typeid) == false)
+					reportError(filename, let.lineNo, "Inferred type of " + let.value.type + " of initialization"
+							+ "of " + let.name + " does not conform to idenitifier's declared type " + let.typeid);
+			}
 			scopeTable.enterScope();
+			scopeTable.insert(let.name, new AST.attr(let.name, let.typeid, let.value, let.lineNo));
+			let.body.accept(this);
+			/*
+			 * testing.cl:1: Inferred type String of initialization of b does not conform to identifier's declared type Int.
+			 */
+			let.setType(let.body.type, let.body.typeId);
+			scopeTable.exitScope();
+			return null;
+		}
+
+		public String visit(AST.typcase typcase) {
+			typcase.predicate.accept(this);
+			for(AST.branch e : typcase.branches) {
+				scopeTable.enterScope();
+				visit(e);
+				scopeTable.exitScope();
+			}
+			HashMap <String, Boolean> br_types = new HashMap<String, Boolean> ();
+			AST.branch b = typcase.branches.get(0);
+			String typ = b.value.type;
+			
+			for(AST.branch br : typcase.branches) {
+				if(br_types.containsKey(br.type) == false)
+					br_types.put(br.type, true);
+				else
+					reportError(filename, br.lineNo, "Duplicate branch " + br.type + " in case statement.");
+				typ = classTable.lca(typ, br.value.type);
+			}
+			setType(typcase, typ);
+			return null;
+		}
+
+		// The scope of the branch variable is entered by the typcase
+		public String visit(AST.branch e) {
 			ClassPlus c = classTable.getClassPlus(e.type);
 			if(c == null) {
 				reportError(filename, e.lineNo, "Class " + e.type + " of case branch is undefined.");
 				scopeTable.insert(e.name, new AST.attr(e.name, "Object", e.value, e.lineNo));	// In the case of erroneous branch type, branch variable has type "Object" for the scope.
 			}
 			else scopeTable.insert(e.name, new AST.attr(e.name, e.type, e.value, e.lineNo));
-			processNode(e.value);
-			scopeTable.exitScope();
+			e.value.accept(this);
+			return null;
 		}
-		HashMap <String, Boolean> br_types = new HashMap<String, Boolean> ();
-		AST.branch b = typcase.branches.get(0);
-		String typ = b.value.type;
-		
-		for(AST.branch br : typcase.branches) {
-			if(br_types.containsKey(br.type) == false)
-				br_types.put(br.type, true);
-			else
-				reportError(filename, br.lineNo, "Duplicate branch " + br.type + " in case statement.");
-			typ = classTable.lca(typ, br.value.type);
+
+		public String visit(AST.new_ new_) {
+			ClassPlus c = classTable.getClassPlus(new_.typeid);
+			if(c == null) {
+				reportError(filename, new_.lineNo, "'new' used with undefined class " + new_.typeid);
+				new_.setType("Object", TypeTable.OBJECT);
+			} else
+				setType(new_, new_.typeid);
+			return null;
 		}
-		typcase.type = typ;
-	}
 
-	private void processNode(AST.new_ new_) {
-		ClassPlus c = classTable.getClassPlus(new_.typeid);
-		if(c == null) {
-			reportError(filename, new_.lineNo, "'new' used with undefined class " + new_.typeid);
-			new_.type = "Object";
-		} else
-			new_.type = new_.typeid;
-	}
-	private void processNode(AST.isvoid isvoid) {
-		processNode(isvoid.e1);
-		isvoid.type = "Bool";
-	}
-	private void processNode(AST.plus plus) {
-		processNode(plus.e1);
-		processNode(plus.e2);
-		if(plus.e1.type.equals("Int") == false || plus.e2.type.equals("Int") == false) {
-			reportError(filename, plus.lineNo, "non-Int arguments: " + plus.e1.type + " + " + plus.e2.type);
+		public String visit(AST.isvoid isvoid) {
+			isvoid.e1.accept(this);
+			isvoid.setType("Bool", TypeTable.BOOL);
+			return null;
 		}
-		plus.type = "Int";
-	}
-	private void processNode(AST.sub sub) {
-		processNode(sub.e1);
-		processNode(sub.e2);
-		if(sub.e1.type.equals("Int") == false || sub.e2.type.equals("Int") == false) {
-			reportError(filename, sub.lineNo, "non-Int arguments: " + sub.e1.type + " - " + sub.e2.type);
+
+		public String visit(AST.plus plus) {
+			plus.e1.accept(this);
+			plus.e2.accept(this);
+			if(plus.e1.type.equals("Int") == false || plus.e2.type.equals("Int") == false) {
+				reportError(filename, plus.lineNo, "non-Int arguments: " + plus.e1.type + " + " + plus.e2.type);
+			}
+			plus.setType("Int", TypeTable.INT);
+			return null;
 		}
-		sub.type = "Int";
-	}
-	
-	private void processNode(AST.mul mul) {
-		processNode(mul.e1);
-		processNode(mul.e2);
-		if(mul.e1.type .equals("Int") == false || mul.e2.type.equals("Int") == false) {
-			reportError(filename, mul.lineNo, "non-Int arguments: " + mul.e1.type + " * " + mul.e2.type);
+
+		public String visit(AST.sub sub) {
+			sub.e1.accept(this);
+			sub.e2.accept(this);
+			if(sub.e1.type.equals("Int") == false || sub.e2.type.equals("Int") == false) {
+				reportError(filename, sub.lineNo, "non-Int arguments: " + sub.e1.type + " - " + sub.e2.type);
+			}
+			sub.setType("Int", TypeTable.INT);
+			return null;
 		}
-		mul.type = "Int";
-	}
-	
-	private void processNode(AST.divide divide) {
-		processNode(divide.e1);
-		processNode(divide.e2);
-		if(divide.e1.type .equals("Int") == false || divide.e2.type.equals("Int") == false) {
-			reportError(filename, divide.lineNo, "non-Int arguments: " + divide.e1.type + " / " + divide.e2.type);
+		
+		public String visit(AST.mul mul) {
+			mul.e1.accept(this);
+			mul.e2.accept(this);
+			if(mul.e1.type .equals("Int") == false || mul.e2.type.equals("Int") == false) {
+				reportError(filename, mul.lineNo, "non-Int arguments: " + mul.e1.type + " * " + mul.e2.type);
+			}
+			mul.setType("Int", TypeTable.INT);
+			return null;
 		}
-		divide.type = "Int";
 		
-	}
-	private void processNode(AST.comp comp) {	// comp is NOT
+		public String visit(AST.divide divide) {
+			divide.e1.accept(this);
+			divide.e2.accept(this);
+			if(divide.e1.type .equals("Int") == false || divide.e2.type.equals("Int") == false) {
+				reportError(filename, divide.lineNo, "non-Int arguments: " + divide.e1.type + " / " + divide.e2.type);
+			}
+			divide.setType("Int", TypeTable.INT);
+			return null;
+		}
 
-		processNode(comp.e1);
+		public String visit(AST.comp comp) {	// comp is NOT
+			comp.e1.accept(this);
+			if(comp.e1.type.equals("Bool") == false)
+				reportError(filename, comp.lineNo, "Argument of 'not' has type " + comp.e1.type + " instead of Bool.");
+			comp.setType("Bool", TypeTable.BOOL);
+			return null;
+		}
 
-		if(comp.e1.type.equals("Bool") == false)
-			reportError(filename, comp.lineNo, "Argument of 'not' has type " + comp.e1.type + " instead of Bool.");
-		comp.type = "Bool";
+		public String visit(AST.lt lt) {
+			lt.e1.accept(this);
+			lt.e2.accept(this);
+			if(lt.e1.type.equals("Int") == false || lt.e2.type.equals("Int") == false) {
+				reportError(filename, lt.lineNo, "non-Int arguments: " + lt.e1.type + " < " + lt.e2.type);
+			}
+			lt.setType("Bool", TypeTable.BOOL);
+			return null;
+		}
 
-	}
-	private void processNode(AST.lt lt) {
-		processNode(lt.e1);
-		processNode(lt.e2);
-		if(lt.e1.type.equals("Int") == false || lt.e2.type.equals("Int") == false) {
-			reportError(filename, lt.lineNo, "non-Int arguments: " + lt.e1.type + " < " + lt.e2.type);
+		public String visit(AST.leq leq) {
+			leq.e1.accept(this);
+			leq.e2.accept(this);
+			if(leq.e1.type.equals("Int") == false || leq.e2.type.equals("Int") == false) {
+				reportError(filename, leq.lineNo, "non-Int arguments:" + leq.e1.type + " <= " + leq.e2.type);
+			}
+			leq.setType("Bool", TypeTable.BOOL);
+			return null;
 		}
-		lt.type = "Bool";
-	}
-	private void processNode(AST.leq leq) {
-		processNode(leq.e1);
-		processNode(leq.e2);
-		if(leq.e1.type.equals("Int") == false || leq.e2.type.equals("Int") == false) {
-			reportError(filename, leq.lineNo, "non-Int arguments:" + leq.e1.type + " <= " + leq.e2.type);
+
+		public String visit(AST.eq eq) {
+			eq.e1.accept(this);
+			eq.e2.accept(this);
+			if(BASIC_TYPES.contains(eq.e1.type) || BASIC_TYPES.contains(eq.e2.type)) {
+				if(eq.e1.type.equals(eq.e2.type) == false) {
+					reportError(filename, eq.lineNo, "Illegal comparison with a basic type.");
+				}
+			}
+			eq.setType("Bool", TypeTable.BOOL);
+			return null;
 		}
-		leq.type = "Bool";
-	}
-	private void processNode(AST.eq eq) {
-		processNode(eq.e1);
-		processNode(eq.e2);
-		List <String> basic_types = Arrays.asList("String", "Int", "Bool");
-		if(basic_types.contains(eq.e1.type) || basic_types.contains(eq.e2.type)) {
-			if(eq.e1.type.equals(eq.e2.type) == false) {
-				reportError(filename, eq.lineNo, "Illegal comparison with a basic type.");
+
+		public String visit(AST.neg neg) {		// neg is ~
+			neg.e1.accept(this);
+			if(neg.e1.type.equals("Int") == false)
+				reportError(filename, neg.lineNo, "Argument of '~' has type " + neg.e1.type + " instead of Int");
+			neg.setType("Int", TypeTable.INT);
+			return null;
+		}
+
+		public String visit(AST.object object) {
+			AST.attr a = scopeTable.lookUpGlobal(object.name);
+			if(a == null) {
+				reportError(filename, object.lineNo, "Undeclared identifier " + object.name);
+				object.setType("Object", TypeTable.OBJECT);
 			}
+			else
+				setType(object, a.typeid);
+			return null;
 		}
-		eq.type = "Bool";
-	}
-	private void processNode(AST.neg neg) {		// neg is ~
 
-		processNode(neg.e1);
-		if(neg.e1.type.equals("Int") == false)
-			reportError(filename, neg.lineNo, "Argument of '~' has type " + neg.e1.type + " instead of Int");
-		neg.type = "Int";
-	}
-	private void processNode(AST.object object) {
+		public String visit(AST.int_const int_const) {
+			int_const.setType("Int", TypeTable.INT);
+			return null;
+		}
 
-		AST.attr a = scopeTable.lookUpGlobal(object.name);
-		if(a == null) {
-			reportError(filename, object.lineNo, "Undeclared identifier " + object.name);
-			object.type = "Object";
+		public String visit(AST.string_const string_const) {
+			Utils.addStringConstant(string_const.value);
+			string_const.setType("String", TypeTable.STRING);
+			return null;
 		}
-		else
-			object.type = a.typeid;
-	}
-	private void processNode(AST.int_const int_const) {
-		int_const.type = "Int";
-	}
-	private void processNode(AST.string_const string_const) {
-		if(!Global.stringConstantToRegisterMap.containsKey(string_const.value)) {
-			Global.stringConstantToRegisterMap.put(string_const.value, "@.str."+Global.stringRegisterCounter);
-			Global.stringRegisterCounter++;
+
+		public String visit(AST.bool_const bool_const) {
+			bool_const.setType("Bool", TypeTable.BOOL);
+			return null;
 		}
-		string_const.type = "String";
 	}
-	private void processNode(AST.bool_const bool_const) {
-		bool_const.type = "Bool";
-	}
-}
\ No newline at end of file
+
+	// types which can only be compared with themselves
+	private static final List <String> BASIC_TYPES = Arrays.asList("String", "Int", "Bool");
+}
@@ -0,0 +1,116 @@
+package cool;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.CommonTokenFactory;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.NoViableAltException;
+import org.antlr.v4.runtime.Parser;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.TokenFactory;
+import org.antlr.v4.runtime.TokenSource;
+import org.antlr.v4.runtime.TokenStream;
+import org.antlr.v4.runtime.UnbufferedCharStream;
+import org.antlr.v4.runtime.UnbufferedTokenStream;
+
+// Streams the tokens of a file from the lexer to the parser.
+// Neither the characters of the file nor its tokens are kept in memory:
+// the input is read through an unbuffered char stream, and the parser
+// pulls the tokens from the lexer as it needs them, only buffering the
+// lookahead of the current decision.
+//
+// The lexer reports a lexical error by emitting an ERROR token, which the
+// pipeline records as it goes by. Such a token also stops the parser with
+// a syntax error, after which 'finish' lexes the rest of the file so that
+// every lexical error gets reported, as with a fully lexed file.
+public class TokenPipeline implements TokenSource {
+
+	private InputStream in;
+
+	private CoolLexer lexer;
+
+	// ERROR tokens seen so far
+	private List<Token> lexicalErrors = new ArrayList<>();
+
+	public TokenPipeline(String filename) throws IOException {
+		in = new FileInputStream(filename);
+		lexer = new CoolLexer(new UnbufferedCharStream(in));
+		// the char stream drops the text of a token once it is consumed
+		lexer.setTokenFactory(new CommonTokenFactory(true));
+	}
+
+	public TokenStream getTokenStream() {
+		return new UnbufferedTokenStream<Token>(this);
+	}
+
+	// Lexes the rest of the file and closes it.
+	// Returns the ERROR tokens of the whole file.
+	public List<Token> finish() throws IOException {
+		while(nextToken().getType() != Token.EOF);
+		in.close();
+		return lexicalErrors;
+	}
+
+	// Sets up a parser reading from the pipeline
+	public static void configure(Parser parser) {
+		// the AST is built by the actions of the grammar, keeping the
+		// parse tree would hold on to every token of the file
+		parser.setBuildParseTree(false);
+		parser.setErrorHandler(new DefaultErrorStrategy() {
+			// the default message quotes all the tokens of the decision,
+			// which have been dropped from an unbuffered token stream
+			@Override
+			protected void reportNoViableAlternative(Parser recognizer, NoViableAltException e) {
+				recognizer.notifyErrorListeners(e.getOffendingToken(), "no viable alternative at input " + getTokenErrorDisplay(e.getOffendingToken()), e);
+			}
+		});
+	}
+
+	@Override
+	public Token nextToken() {
+		Token t = lexer.nextToken();
+		// tokens off the default channel are not seen by the parser
+		while(t.getChannel() != Token.DEFAULT_CHANNEL && t.getType() != Token.EOF) {
+			t = lexer.nextToken();
+		}
+		if(t.getType() == CoolLexer.ERROR) {
+			lexicalErrors.add(t);
+		}
+		return t;
+	}
+
+	@Override
+	public int getLine() {
+		return lexer.getLine();
+	}
+
+	@Override
+	public int getCharPositionInLine() {
+		return lexer.getCharPositionInLine();
+	}
+
+	@Override
+	public CharStream getInputStream() {
+		return lexer.getInputStream();
+	}
+
+	@Override
+	public String getSourceName() {
+		return lexer.getSourceName();
+	}
+
+	@Override
+	public void setTokenFactory(TokenFactory<?> factory) {
+		lexer.setTokenFactory(factory);
+	}
+
+	@Override
+	public TokenFactory<?> getTokenFactory() {
+		return lexer.getTokenFactory();
+	}
+}
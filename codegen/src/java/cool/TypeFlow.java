@@ -0,0 +1,624 @@
+package cool;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Whole program analysis of the classes of the objects each expression
+// can evaluate to (a context insensitive, 0-CFA style type flow).
+//
+// Every attribute, formal, method return, 'let' and 'case' variable and
+// every expression with a class type gets a node holding a set of type
+// ids (a BitSet indexed by the ids of the TypeTable). The classes flow
+// from the 'new' sites along subset edges: from an initializer to its
+// attribute, from an actual to the formal of every method the call may
+// reach, from a method body to its return and from a return to the call.
+// The methods reached by a 'dispatch' and the branches taken by a 'case'
+// depend on the classes of the receiver, so their edges are added as the
+// classes show up. 'self' is approximated by the instantiated classes
+// conforming to the class.
+//
+// Only the classes newly added to a node are passed to its successors,
+// so every class crosses an edge once and the analysis stays close to
+// linear in the size of the program. Expressions of type Int, Bool or
+// String share one constant node per type.
+public class TypeFlow {
+
+    // A set of classes and the nodes it flows into
+    private static class Node {
+        final BitSet types = new BitSet();
+
+        // classes added since the node was last propagated
+        BitSet pending;
+
+        final boolean constant;
+        List<Node> successors;
+        List<Listener> listeners;
+
+        Node(boolean constant) {
+            this.constant = constant;
+        }
+    }
+
+    // Called for every class added to the node it listens to
+    private interface Listener {
+        void added(int typeId);
+    }
+
+    // A method, with the nodes of its formals and of its return
+    private static class MethodInfo {
+        final AST.method method;
+        final String className;
+        Node[] formals;
+        Node returns;
+
+        MethodInfo(AST.method method, String className) {
+            this.method = method;
+            this.className = className;
+        }
+    }
+
+    private static class ClassInfo {
+        final AST.class_ astClass;
+        final ClassInfo parent;
+
+        final Map<String,MethodInfo> methods = new HashMap<>();
+        final Map<String,Node> attrs = new HashMap<>();
+
+        // inherited names looked up so far, null values included
+        final Map<String,MethodInfo> resolvedMethods = new HashMap<>();
+        final Map<String,Node> resolvedAttrs = new HashMap<>();
+
+        Node self;
+
+        ClassInfo(AST.class_ astClass, ClassInfo parent) {
+            this.astClass = astClass;
+            this.parent = parent;
+        }
+    }
+
+    private final InheritanceGraph graph;
+
+    // type id -> class
+    private final List<ClassInfo> classes = new ArrayList<>();
+
+    private final Map<Integer,Node> constants = new HashMap<>();
+    private final Node empty = new Node(true);
+
+    // classes created by the program, 'new' sites and Main
+    private final BitSet instantiated = new BitSet();
+
+    private final Map<AST.dispatch,Node> receivers = new IdentityHashMap<>();
+    private final Set<AST.branch> reachableBranches = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // dispatch sites of each class, in order of appearance
+    private final Map<String,List<AST.dispatch>> dispatchSites = new HashMap<>();
+
+    private final Deque<Node> worklist = new ArrayDeque<>();
+
+    private TypeFlow(InheritanceGraph graph) {
+        this.graph = graph;
+    }
+
+    // Runs the analysis on a checked program, the graph must be updated
+    public static TypeFlow analyze(AST.program program, InheritanceGraph graph) {
+        TypeFlow flow = new TypeFlow(graph);
+        flow.addClasses();
+        for(AST.class_ cl : program.classes) {
+            new ConstraintBuilder(flow, flow.getClassInfo(cl.name)).build();
+        }
+        // the runtime creates the Main object
+        int main = Global.typeTable.getId(Global.Constants.MAIN_TYPE);
+        if(main != TypeTable.NO_TYPE)
+            flow.instantiated.set(main);
+        flow.fillSelfNodes();
+        flow.solve();
+        return flow;
+    }
+
+    // Classes of the receivers reaching each method a dispatch may call,
+    // keyed by the class defining the method. Empty if no object reaches it.
+    public Map<String,List<String>> getDispatchTargets(AST.dispatch dispatch) {
+        Map<String,List<String>> targets = new LinkedHashMap<>();
+        Node receiver = receivers.get(dispatch);
+        if(receiver == null)
+            return targets;
+        BitSet types = receiver.types;
+        for(int id = types.nextSetBit(0); id >= 0; id = types.nextSetBit(id + 1)) {
+            MethodInfo m = resolveMethod(classes.get(id), dispatch.name);
+            if(m != null) {
+                targets.computeIfAbsent(m.className, k -> new ArrayList<>()).add(Global.typeTable.getName(id));
+            }
+        }
+        return targets;
+    }
+
+    // 'false' if no object reaching the 'case' selects the branch
+    public boolean isReachable(AST.branch branch) {
+        return reachableBranches.contains(branch);
+    }
+
+    // Text of the targets of the dispatch sites of a class, part of the
+    // fingerprint of its IR as the calls emitted depend on them
+    public String getDispatchSummary(String className) {
+        StringBuilder builder = new StringBuilder();
+        for(AST.dispatch dispatch : dispatchSites.getOrDefault(className, Collections.emptyList())) {
+            builder.append(dispatch.lineNo).append(':').append(dispatch.name)
+            .append(getDispatchTargets(dispatch)).append(';');
+        }
+        return builder.toString();
+    }
+
+    private void addClasses() {
+        graph.walkDepthFirst(graph.getRootNode(), node -> {
+            AST.class_ cl = node.getAstClass();
+            ClassInfo parent = node.getParent() == null ? null : getClassInfo(node.getParent().getAstClass().name);
+            ClassInfo info = new ClassInfo(cl, parent);
+            int id = Global.typeTable.getId(cl.name);
+            while(classes.size() <= id) {
+                classes.add(null);
+            }
+            classes.set(id, info);
+            for(AST.feature f : cl.features) {
+                if(f instanceof AST.attr) {
+                    AST.attr a = (AST.attr) f;
+                    info.attrs.put(a.name, newNode(a.typeid));
+                } else {
+                    AST.method m = (AST.method) f;
+                    MethodInfo method = new MethodInfo(m, cl.name);
+                    method.formals = new Node[m.formals.size()];
+                    for(int i = 0; i < method.formals.length; i++) {
+                        method.formals[i] = newNode(m.formals.get(i).typeid);
+                    }
+                    method.returns = newNode(m.typeid);
+                    info.methods.put(m.name, method);
+                }
+            }
+        });
+    }
+
+    private ClassInfo getClassInfo(String className) {
+        return classes.get(Global.typeTable.getId(className));
+    }
+
+    // Node for a value of the given static type, the shared
+    // constant node for the primitive types
+    private Node newNode(String type) {
+        return newNode(type == null ? TypeTable.NO_TYPE : Global.typeTable.getId(type));
+    }
+
+    private Node newNode(int id) {
+        if(id == TypeTable.NO_TYPE)
+            return empty;
+        if(TypeTable.isPrimitive(id))
+            return getConstant(id);
+        return new Node(false);
+    }
+
+    // Node holding only the given class
+    private Node getConstant(int typeId) {
+        Node node = constants.get(typeId);
+        if(node == null) {
+            node = new Node(true);
+            node.types.set(typeId);
+            constants.put(typeId, node);
+        }
+        return node;
+    }
+
+    // Method called on an object of the class, looked up in the class and its
+    // parents. Every class on the way remembers the result, so a name is only
+    // looked up once along a chain of classes.
+    private MethodInfo resolveMethod(ClassInfo cl, String name) {
+        List<ClassInfo> path = new ArrayList<>();
+        MethodInfo method = null;
+        for(ClassInfo c = cl; c != null; c = c.parent) {
+            method = c.methods.get(name);
+            if(method != null || c.resolvedMethods.containsKey(name)) {
+                if(method == null)
+                    method = c.resolvedMethods.get(name);
+                break;
+            }
+            path.add(c);
+        }
+        for(ClassInfo c : path) {
+            c.resolvedMethods.put(name, method);
+        }
+        return method;
+    }
+
+    // Node of the attribute seen from the class, null if there is none
+    private Node resolveAttr(ClassInfo cl, String name) {
+        List<ClassInfo> path = new ArrayList<>();
+        Node attr = null;
+        for(ClassInfo c = cl; c != null; c = c.parent) {
+            attr = c.attrs.get(name);
+            if(attr != null || c.resolvedAttrs.containsKey(name)) {
+                if(attr == null)
+                    attr = c.resolvedAttrs.get(name);
+                break;
+            }
+            path.add(c);
+        }
+        for(ClassInfo c : path) {
+            c.resolvedAttrs.put(name, attr);
+        }
+        return attr;
+    }
+
+    private Node getSelf(ClassInfo cl) {
+        if(cl.self == null)
+            cl.self = new Node(false);
+        return cl.self;
+    }
+
+    // 'self' of a class is any instantiated class conforming to it
+    private void fillSelfNodes() {
+        for(ClassInfo cl : classes) {
+            if(cl == null || cl.self == null)
+                continue;
+            int id = Global.typeTable.getId(cl.astClass.name);
+            BitSet types = new BitSet();
+            for(int t = instantiated.nextSetBit(0); t >= 0; t = instantiated.nextSetBit(t + 1)) {
+                if(graph.isConforming(t, id))
+                    types.set(t);
+            }
+            add(cl.self, types);
+        }
+    }
+
+    private void addEdge(Node from, Node to) {
+        if(to.constant || from == to)
+            return;
+        if(from.successors == null)
+            from.successors = new ArrayList<>();
+        from.successors.add(to);
+        add(to, from.types);
+    }
+
+    private void addListener(Node node, Listener listener) {
+        if(node.listeners == null)
+            node.listeners = new ArrayList<>();
+        node.listeners.add(listener);
+        BitSet types = node.types;
+        for(int id = types.nextSetBit(0); id >= 0; id = types.nextSetBit(id + 1)) {
+            listener.added(id);
+        }
+    }
+
+    // Adds the classes to the node, the new ones are propagated by 'solve'
+    private void add(Node node, BitSet types) {
+        if(node.constant || types.isEmpty())
+            return;
+        BitSet added = (BitSet) types.clone();
+        added.andNot(node.types);
+        if(added.isEmpty())
+            return;
+        node.types.or(added);
+        if(node.pending == null) {
+            node.pending = added;
+            worklist.add(node);
+        } else {
+            node.pending.or(added);
+        }
+    }
+
+    private void solve() {
+        while(!worklist.isEmpty()) {
+            Node node = worklist.poll();
+            BitSet added = node.pending;
+            node.pending = null;
+            if(node.successors != null) {
+                for(int i = 0; i < node.successors.size(); i++) {
+                    add(node.successors.get(i), added);
+                }
+            }
+            if(node.listeners != null) {
+                for(int i = 0; i < node.listeners.size(); i++) {
+                    Listener listener = node.listeners.get(i);
+                    for(int id = added.nextSetBit(0); id >= 0; id = added.nextSetBit(id + 1)) {
+                        listener.added(id);
+                    }
+                }
+            }
+        }
+    }
+
+    // Links the arguments and the result of a call to a method reached by it.
+    // The default methods have no body: the ones returning an object return
+    // their receiver (copy, out_string, out_int), abort does not return.
+    private void addCall(MethodInfo method, List<Node> actuals, Node result, Node receiver) {
+        if(method.method.body == null) {
+            addEdge(receiver, result);
+            return;
+        }
+        for(int i = 0; i < actuals.size() && i < method.formals.length; i++) {
+            addEdge(actuals.get(i), method.formals[i]);
+        }
+        addEdge(method.returns, result);
+    }
+
+    // Builds the nodes and edges of the expressions of a class
+    private static class ConstraintBuilder implements Visitor {
+
+        private final TypeFlow flow;
+        private final ClassInfo cl;
+
+        // 'let' and 'case' variables in scope, innermost last
+        private final Deque<Map.Entry<String,Node>> locals = new ArrayDeque<>();
+
+        private MethodInfo currentMethod;
+
+        // value of the last expression visited
+        private Node current;
+
+        ConstraintBuilder(TypeFlow flow, ClassInfo cl) {
+            this.flow = flow;
+            this.cl = cl;
+        }
+
+        void build() {
+            cl.astClass.accept(this);
+        }
+
+        public void visit(AST.program prog) {
+        }
+
+        public void visit(AST.class_ astClass) {
+            for(AST.feature f : astClass.features) {
+                f.accept(this);
+            }
+        }
+
+        public void visit(AST.attr at) {
+            if(!(at.value instanceof AST.no_expr))
+                flow.addEdge(get(at.value), cl.attrs.get(at.name));
+        }
+
+        public void visit(AST.method mthd) {
+            currentMethod = cl.methods.get(mthd.name);
+            flow.addEdge(get(mthd.body), currentMethod.returns);
+            currentMethod = null;
+        }
+
+        public void visit(AST.formal fm) {
+        }
+
+        // Node of the value of the expression
+        private Node get(AST.expression expr) {
+            expr.accept(this);
+            return current;
+        }
+
+        private String result(Node node) {
+            current = node;
+            return null;
+        }
+
+        private Node lookUp(String name) {
+            if("self".equals(name))
+                return flow.getSelf(cl);
+            for(Iterator<Map.Entry<String,Node>> it = locals.descendingIterator(); it.hasNext(); ) {
+                Map.Entry<String,Node> local = it.next();
+                if(local.getKey().equals(name))
+                    return local.getValue();
+            }
+            if(currentMethod != null) {
+                List<AST.formal> formals = currentMethod.method.formals;
+                for(int i = formals.size() - 1; i >= 0; i--) {
+                    if(formals.get(i).name.equals(name))
+                        return currentMethod.formals[i];
+                }
+            }
+            Node attr = flow.resolveAttr(cl, name);
+            return attr == null ? flow.empty : attr;
+        }
+
+        public String visit(AST.no_expr expr) {
+            return result(flow.empty);
+        }
+
+        public String visit(AST.assign expr) {
+            Node value = get(expr.e1);
+            flow.addEdge(value, lookUp(expr.name));
+            return result(value);
+        }
+
+        public String visit(AST.static_dispatch expr) {
+            Node receiver = get(expr.caller);
+            List<Node> actuals = getAll(expr.actuals);
+            Node result = flow.newNode(expr.typeId);
+            MethodInfo method = flow.resolveMethod(flow.getClassInfo(expr.typeid), expr.name);
+            if(method != null)
+                flow.addCall(method, actuals, result, receiver);
+            return result(result);
+        }
+
+        public String visit(AST.dispatch expr) {
+            Node receiver = get(expr.caller);
+            List<Node> actuals = getAll(expr.actuals);
+            Node result = flow.newNode(expr.typeId);
+            flow.receivers.put(expr, receiver);
+            flow.dispatchSites.computeIfAbsent(cl.astClass.name, k -> new ArrayList<>()).add(expr);
+
+            // methods reached so far by the call
+            Set<MethodInfo> targets = Collections.newSetFromMap(new IdentityHashMap<>());
+            flow.addListener(receiver, typeId -> {
+                MethodInfo method = flow.resolveMethod(flow.classes.get(typeId), expr.name);
+                if(method == null)
+                    return;
+                if(method.method.body == null) {
+                    // default methods returning an object return their receiver
+                    BitSet self = new BitSet();
+                    self.set(typeId);
+                    flow.add(result, self);
+                } else if(targets.add(method)) {
+                    flow.addCall(method, actuals, result, receiver);
+                }
+            });
+            return result(result);
+        }
+
+        public String visit(AST.cond expr) {
+            get(expr.predicate);
+            Node result = flow.newNode(expr.typeId);
+            flow.addEdge(get(expr.ifbody), result);
+            flow.addEdge(get(expr.elsebody), result);
+            return result(result);
+        }
+
+        public String visit(AST.loop expr) {
+            get(expr.predicate);
+            get(expr.body);
+            return result(flow.empty);
+        }
+
+        public String visit(AST.block expr) {
+            Node last = flow.empty;
+            for(AST.expression e : expr.l1) {
+                last = get(e);
+            }
+            return result(last);
+        }
+
+        public String visit(AST.let expr) {
+            Node variable = flow.newNode(expr.typeid);
+            if(!(expr.value instanceof AST.no_expr))
+                flow.addEdge(get(expr.value), variable);
+            locals.addLast(new AbstractMap.SimpleEntry<>(expr.name, variable));
+            Node body = get(expr.body);
+            locals.removeLast();
+            return result(body);
+        }
+
+        public String visit(AST.typcase expr) {
+            Node predicate = get(expr.predicate);
+            Node result = flow.newNode(expr.typeId);
+            Map<String,AST.branch> branchesByType = new HashMap<>();
+            Map<AST.branch,Node> variables = new IdentityHashMap<>();
+            Map<AST.branch,Node> bodies = new IdentityHashMap<>();
+            for(AST.branch b : expr.branches) {
+                branchesByType.putIfAbsent(b.type, b);
+                Node variable = flow.newNode(b.type);
+                variables.put(b, variable);
+                locals.addLast(new AbstractMap.SimpleEntry<>(b.name, variable));
+                bodies.put(b, get(b.value));
+                locals.removeLast();
+            }
+            // an object takes the branch of its nearest class
+            flow.addListener(predicate, typeId -> {
+                AST.branch taken = null;
+                for(ClassInfo c = flow.classes.get(typeId); c != null && taken == null; c = c.parent) {
+                    taken = branchesByType.get(c.astClass.name);
+                }
+                if(taken == null)
+                    return;
+                BitSet type = new BitSet();
+                type.set(typeId);
+                flow.add(variables.get(taken), type);
+                if(flow.reachableBranches.add(taken))
+                    flow.addEdge(bodies.get(taken), result);
+            });
+            return result(result);
+        }
+
+        public String visit(AST.branch expr) {
+            return result(get(expr.value));
+        }
+
+        public String visit(AST.new_ expr) {
+            int id = Global.typeTable.getId(expr.typeid);
+            flow.instantiated.set(id);
+            return result(flow.getConstant(id));
+        }
+
+        public String visit(AST.isvoid expr) {
+            get(expr.e1);
+            return result(flow.getConstant(TypeTable.BOOL));
+        }
+
+        public String visit(AST.plus expr) {
+            return arithmetic(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.sub expr) {
+            return arithmetic(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.mul expr) {
+            return arithmetic(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.divide expr) {
+            return arithmetic(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.comp expr) {
+            get(expr.e1);
+            return result(flow.getConstant(TypeTable.BOOL));
+        }
+
+        public String visit(AST.lt expr) {
+            return comparison(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.leq expr) {
+            return comparison(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.eq expr) {
+            return comparison(expr.e1, expr.e2);
+        }
+
+        public String visit(AST.neg expr) {
+            get(expr.e1);
+            return result(flow.getConstant(TypeTable.INT));
+        }
+
+        public String visit(AST.object expr) {
+            return result(lookUp(expr.name));
+        }
+
+        public String visit(AST.int_const expr) {
+            return result(flow.getConstant(TypeTable.INT));
+        }
+
+        public String visit(AST.string_const expr) {
+            return result(flow.getConstant(TypeTable.STRING));
+        }
+
+        public String visit(AST.bool_const expr) {
+            return result(flow.getConstant(TypeTable.BOOL));
+        }
+
+        private String arithmetic(AST.expression e1, AST.expression e2) {
+            get(e1);
+            get(e2);
+            return result(flow.getConstant(TypeTable.INT));
+        }
+
+        private String comparison(AST.expression e1, AST.expression e2) {
+            get(e1);
+            get(e2);
+            return result(flow.getConstant(TypeTable.BOOL));
+        }
+
+        private List<Node> getAll(List<AST.expression> expressions) {
+            List<Node> nodes = new ArrayList<>(expressions.size());
+            for(AST.expression e : expressions) {
+                nodes.add(get(e));
+            }
+            return nodes;
+        }
+    }
+}
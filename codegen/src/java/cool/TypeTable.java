@@ -0,0 +1,66 @@
+package cool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Dense integer ids of the types of a program.
+//
+// The basic classes have fixed ids, so checks like 'is a primitive type'
+// are int comparisons, and the classes of the program are numbered after
+// them in the order they are added. A type name costs a single lookup to
+// get its id, after which the queries of the inheritance graph compare
+// ints and index arrays.
+public class TypeTable {
+
+    public static final int NO_TYPE = -1;
+
+    // ids of the basic classes
+    public static final int OBJECT = 0;
+    public static final int IO = 1;
+    public static final int INT = 2;
+    public static final int BOOL = 3;
+    public static final int STRING = 4;
+
+    private Map<String,Integer> ids = new HashMap<>();
+    private List<String> names = new ArrayList<>();
+
+    public TypeTable() {
+        add(Global.Constants.ROOT_TYPE);
+        add(Global.Constants.IO_TYPE);
+        add(Global.Constants.INT_TYPE);
+        add(Global.Constants.BOOL_TYPE);
+        add(Global.Constants.STRING_TYPE);
+    }
+
+    // Returns the id of the type, a new one if it was not in the table
+    public int add(String name) {
+        Integer id = ids.get(name);
+        if(id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    // Returns the id of the type, NO_TYPE if it is not in the table
+    public int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? NO_TYPE : id;
+    }
+
+    public String getName(int id) {
+        return names.get(id);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    // Int, Bool and String: values rather than objects, they cannot be inherited
+    public static boolean isPrimitive(int id) {
+        return id == INT || id == BOOL || id == STRING;
+    }
+}
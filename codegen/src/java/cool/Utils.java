@@ -2,88 +2,151 @@ package cool;
 
 public class Utils {
     
+    // The helpers below take the type ids of Global.typeTable, the ones on the
+    // expressions. The overloads on names are for the declared types.
+
+    public static boolean isPrimitiveType(int type) {
+        return TypeTable.isPrimitive(type);
+    }
+
     public static boolean isPrimitiveType(String type) {
-        return Global.Constants.STRING_TYPE.equals(type)
-                || Global.Constants.INT_TYPE.equals(type)
-                || Global.Constants.BOOL_TYPE.equals(type);
+        return isPrimitiveType(Global.typeTable.getId(type));
     }
 
+    // the basic classes have the lowest ids
     public static boolean isDefaultClass(String name) {
-        return Global.Constants.IO_TYPE.equals(name) || Global.Constants.INT_TYPE.equals(name) 
-        || Global.Constants.STRING_TYPE.equals(name) || Global.Constants.BOOL_TYPE.equals(name)
-        || Global.Constants.ROOT_TYPE.equals(name);
+        int id = Global.typeTable.getId(name);
+        return id != TypeTable.NO_TYPE && id <= TypeTable.STRING;
+    }
+
+    // Descriptor of the class, created the first time it is asked for.
+    // null if the name is not a type of the program.
+    public static ClassDescriptor getDescriptor(String className) {
+        return getDescriptor(Global.typeTable.getId(className));
+    }
+
+    public static ClassDescriptor getDescriptor(int type) {
+        if(type == TypeTable.NO_TYPE)
+            return null;
+        while(Global.classDescriptors.size() <= type) {
+            Global.classDescriptors.add(null);
+        }
+        ClassDescriptor descriptor = Global.classDescriptors.get(type);
+        if(descriptor == null) {
+            descriptor = new ClassDescriptor(Global.typeTable.getName(type));
+            Global.classDescriptors.set(type, descriptor);
+        }
+        return descriptor;
     }
 
     public static String getStructName(String className) {
-        return "%class." + className;
+        ClassDescriptor descriptor = getDescriptor(className);
+        return descriptor == null ? "%class." + className : descriptor.structName;
     }
 
     public static String getMangledName(String className, String functionName) {
+        ClassDescriptor descriptor = getDescriptor(className);
+        return descriptor == null ? buildMangledName(className, functionName) : descriptor.getMangledName(functionName);
+    }
+
+    public static String buildMangledName(String className, String functionName) {
         return new StringBuilder().append("_CN").append(className.length())
         .append(className).append("_FN").append(functionName.length()).append(functionName)
         .append("_").toString();
     }
 
+    // Registers the global string constant with the given value, returns its
+    // register. The register is named after a digest of the value rather than
+    // numbered, so the IR of a class does not depend on the constants of the
+    // other classes (see IRCache).
+    public static String addStringConstant(String value) {
+        String register = Global.stringConstantToRegisterMap.get(value);
+        if(register == null) {
+            register = "@.str." + IRCache.digest(value).substring(0, 32);
+            Global.stringConstantToRegisterMap.put(value, register);
+        }
+        return register;
+    }
+
     public static String getDefaultValue(String type) {
-        if(Global.Constants.INT_TYPE.equals(type)) {
-            return "0";
-        } else if(Global.Constants.BOOL_TYPE.equals(type)) {
-            return "0";
-        } else if(Global.Constants.STRING_TYPE.equals(type)) {
-            return IRPrinter.createStringGEP("");
-        } else {
-            return "undef";
+        return getDefaultValue(Global.typeTable.getId(type));
+    }
+
+    public static String getDefaultValue(int type) {
+        switch(type) {
+            case TypeTable.INT:
+            case TypeTable.BOOL:
+                return "0";
+            case TypeTable.STRING:
+                return IRPrinter.createStringGEP("");
+            default:
+                return "undef";
         }
     }
 
+    // also takes the LLVM types i64 and i1
     public static String getBasicType(String type) {
-        if(Global.Constants.STRING_TYPE.equals(type)) {
-            return "i8*";
-        } else if(Global.Constants.INT_TYPE.equals(type)) {
-            return "i32";
-        } else if(Global.Constants.BOOL_TYPE.equals(type)) {
-            return "i8";
+        int id = Global.typeTable.getId(type);
+        if(id != TypeTable.NO_TYPE) {
+            return getBasicType(id);
         } else if("i64".equals(type)) {
             return "i64";
         } else if("i1".equals(type)) {
             return "i1";
         }
-        return Utils.getStructName(type);
+        return "%class." + type;
+    }
+
+    public static String getBasicType(int type) {
+        switch(type) {
+            case TypeTable.STRING:
+                return "i8*";
+            case TypeTable.INT:
+                return "i32";
+            case TypeTable.BOOL:
+                return "i8";
+        }
+        return getDescriptor(type).structName;
     }
 
     public static String getBasicTypeOrPointer(String type) {
-        // same as getBasicType but the last one has an extra *
-        if(Global.Constants.STRING_TYPE.equals(type)) {
-            return "i8*";
-        } else if(Global.Constants.INT_TYPE.equals(type)) {
-            return "i32";
-        } else if(Global.Constants.BOOL_TYPE.equals(type)) {
-            return "i8";
+        int id = Global.typeTable.getId(type);
+        if(id != TypeTable.NO_TYPE) {
+            return getBasicTypeOrPointer(id);
         } else if("i64".equals(type)) {
             return "i64";
         } else if("i1".equals(type)) {
             return "i1";
         }
-        return Utils.getStructName(type) + "*";
+        return "%class." + type + "*";
     }
 
-    public static int getSizeForStruct(String type) {
-        if(Global.Constants.INT_TYPE.equals(type)) {
-            return 4;
-        } else if(Global.Constants.BOOL_TYPE.equals(type)) {
-            return 1;
-        } else {
-            // pointers
-            return 8;
+    public static String getBasicTypeOrPointer(int type) {
+        // same as getBasicType but the last one has an extra *
+        switch(type) {
+            case TypeTable.STRING:
+                return "i8*";
+            case TypeTable.INT:
+                return "i32";
+            case TypeTable.BOOL:
+                return "i8";
         }
+        return getDescriptor(type).pointerType;
     }
 
-    // returns the name of the nearest parent with the given method name
-    public static String getNearestParentWithMethod(String className, String mthdName) {
-        while(!Global.functionMangledNames.contains(Utils.getMangledName(className, mthdName))) {
-            className = Global.inheritanceGraph.getParentClassName(className);
-        }
-        return className;
+    public static int getSizeForStruct(String type) {
+        return getSizeForStruct(Global.typeTable.getId(type));
     }
 
+    public static int getSizeForStruct(int type) {
+        switch(type) {
+            case TypeTable.INT:
+                return 4;
+            case TypeTable.BOOL:
+                return 1;
+            default:
+                // pointers
+                return 8;
+        }
+    }
 }
\ No newline at end of file
@@ -1,8 +1,9 @@
 package cool;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.StringBuilder;
 import java.util.Map;
-import java.util.HashMap;
 
 class VisitorImpl extends ExpressionVisitorImpl {
     /* NOTE: to know about the individual visit functions
@@ -12,88 +13,45 @@ class VisitorImpl extends ExpressionVisitorImpl {
     private void printStringConstants() {
         Global.out.println("; String constant declarations");
         DefaultIR.addDefaultStrings();
+        // the other modules refer to the constants when the program is split
+        String linkage = Global.modules == null ? "private unnamed_addr" : "unnamed_addr";
         StringBuilder structBuilder = new StringBuilder();
         for(Map.Entry<String,String> entry: Global.stringConstantToRegisterMap.entrySet()) {
             structBuilder.setLength(0);
-            structBuilder.append(entry.getValue()).append(" = private unnamed_addr constant [")
+            structBuilder.append(entry.getValue()).append(" = ").append(linkage).append(" constant [")
             .append(entry.getKey().length()+1).append(" x i8] c\"").append(entry.getKey()).append("\\00\", align 1");
             Global.out.println(structBuilder.toString());
         }
     }
 
-    // Prints structs for all the class and calculates the size of the struct
-    private void generateStructsAndCalculateSize() {
+    // Prints the structs of all the classes, laid out by the program model
+    private void generateStructs() {
         Global.out.println();
         Global.out.println("; Struct declarations");
-        InheritanceGraph.Node rootNode = Global.inheritanceGraph.getRootNode();
-        Global.out.println(Utils.getStructName(Global.Constants.ROOT_TYPE) + " = type {i8*}");
-        Global.classToVariableToIndexListMap.put(Global.Constants.ROOT_TYPE, new HashMap<>());
-
-        for(InheritanceGraph.Node child: rootNode.getChildren()) {
-            generateStructsAndCalculateSizeDFS(child);
+        for(ClassDescriptor descriptor: Global.programModel.getStructs()) {
+            Global.out.println(descriptor.structName + " = type " + descriptor.structType);
         }
         Global.out.println();
     }
 
-    // DFS helper for generateStructsAndCalculateSize
-    private void generateStructsAndCalculateSizeDFS(InheritanceGraph.Node node) {
-        AST.class_ cl = node.getAstClass();
-        int size = 8; // initial 8 bytes for the type name in Object
-        
-        // Primitive types are i32, i8, i8*. No need of structs
-        if(Utils.isPrimitiveType(cl.name))
-            return;
-        
-        StringBuilder builder = new StringBuilder(Utils.getStructName(cl.name));
-        size += Global.classSizeMap.get(node.getParent().getAstClass().name);
-        builder.append(" = type { ").append(Utils.getStructName(node.getParent().getAstClass().name));
-        
-        // Updating the index map for the varaibles
-        Map<String, String> variableToIndexListMap = new HashMap<>();
-        
-        // variables present in the parent
-        Map<String, String> parentMap = Global.classToVariableToIndexListMap.get(node.getParent().getAstClass().name);
-        for(Map.Entry<String, String> entry : parentMap.entrySet()) {
-            variableToIndexListMap.put(entry.getKey(), " i32 0,"+entry.getValue());
-        }
-
-        // variables declared inside the class
-        int index = 0;
-        for(AST.feature f : cl.features) {
-            if(f instanceof AST.attr) {
-                index++;
-                AST.attr a = (AST.attr) f;
-                size += Utils.getSizeForStruct(a.typeid);
-                builder.append(", ").append(Utils.getBasicTypeOrPointer(a.typeid));
-                variableToIndexListMap.put(a.name, " i32 0, i32 "+index);
-            } else {
-                // updating the function mangled names
-                AST.method m = (AST.method) f;
-                Global.functionMangledNames.add(Utils.getMangledName(cl.name, m.name));
+    // prints constructors of all the classes which are constructed, except primitive types
+    private void generateConstructors() {
+        InheritanceGraph.Node rootNode = Global.programModel.getGraph().getRootNode();
+        Global.programModel.getGraph().walkDepthFirst(rootNode, new InheritanceGraph.Walker() {
+            public void enter(InheritanceGraph.Node node) {
+                Global.scopeTable.enterScope();
+                generateConstructorsDFS(node);
             }
-        }
-
-        builder.append(" }");
-        Global.out.println(builder.toString());
-
-        Global.classToVariableToIndexListMap.put(cl.name, variableToIndexListMap);
-        Global.classSizeMap.put(cl.name, size);
-        
-        // Depth first call        
-        for(InheritanceGraph.Node child: node.getChildren()) {
-            generateStructsAndCalculateSizeDFS(child);
-        }
-    }
 
-    // prints constructors of all the classes, except primitive types
-    private void generateConstructors() {
-        InheritanceGraph.Node rootNode = Global.inheritanceGraph.getRootNode();
-        generateConstructorsDFS(rootNode);
+            public void exit(InheritanceGraph.Node node) {
+                Global.scopeTable.exitScope();
+            }
+        });
     }
 
     // Calls constructor of parent by taking child class register
     private void createCallForParentConstructor(String className, String childReg) {
-        String parentType = Global.inheritanceGraph.getParentClassName(className);
+        String parentType = Global.programModel.getGraph().getParentClassName(className);
         if(parentType!=null) {
             String bitcastRegister = IRPrinter.createConvertInst(childReg, Global.currentClass, 
                 parentType, IRPrinter.BITCAST);
@@ -101,106 +59,116 @@ class VisitorImpl extends ExpressionVisitorImpl {
         }
     }
 
-    // DFS helper for generateConstructors
+    // DFS helper for generateConstructors, called for a class
+    // after its parent, in the scope of the class
     private void generateConstructorsDFS(InheritanceGraph.Node node) {
-        Global.scopeTable.enterScope();
         AST.class_ cl = node.getAstClass();
 
         if(Utils.isPrimitiveType(cl.name)) 
             return;
 
-        Global.out.println("\n; Constructor of class '" + cl.name + "'");
-        Global.labelToCountMap.clear();
-        Global.registerCounter = 0;
         Global.currentClass = cl.name;
-        Global.out.println("define void @" + Utils.getMangledName(cl.name, cl.name) + "(" + Utils.getStructName(cl.name) + "* %this) {");
-        IRPrinter.createLabel("entry");
-        createCallForParentConstructor(Global.currentClass, "%this");
-
-        // Individual attributes of constructor are taken care in visit of AST.attr
         for(AST.feature f : cl.features) {
             if(f instanceof AST.attr) {
                 AST.attr a = (AST.attr) f;
                 Global.scopeTable.insert(a.name, a.typeid);
             }
         }
-        for(AST.feature f : cl.features) {
-            if(f instanceof AST.attr) {
-                AST.attr a = (AST.attr) f;
-                a.accept(this);
+
+        if(!Global.programModel.getReachability().isConstructed(cl.name))
+            return;
+        // the runtime library has the constructors of Object and IO
+        if(Global.runtimeLibrary != null && Utils.isDefaultClass(cl.name))
+            return;
+
+        printWithCache(cl.name, IRCache.CONSTRUCTOR_SECTION, () -> {
+            Global.out.println("\n; Constructor of class '" + cl.name + "'");
+            Global.labelToCountMap.clear();
+            Global.registerCounter = 0;
+            Global.out.println("define void @" + Utils.getMangledName(cl.name, cl.name) + "(" + Utils.getStructName(cl.name) + "* %this) {");
+            IRPrinter.createLabel("entry");
+            createCallForParentConstructor(Global.currentClass, "%this");
+
+            // Individual attributes of constructor are taken care in visit of AST.attr
+            for(AST.feature f : cl.features) {
+                if(f instanceof AST.attr) {
+                    AST.attr a = (AST.attr) f;
+                    a.accept(this);
+                }
             }
-        }
 
-        Global.out.println(IRPrinter.INDENT+"ret void");
-        Global.out.println("}");
-        for(InheritanceGraph.Node child: node.getChildren()) {
-            generateConstructorsDFS(child);
+            Global.out.println(IRPrinter.INDENT+"ret void");
+            Global.out.println("}");
+        });
+    }
+
+    // Prints the IR generated by 'generator' for a section of a class.
+    // When compiling incrementally the IR of an unchanged class is taken
+    // from the cache, otherwise it is generated and stored for the next build.
+    // When the program is split, the IR goes to the module of the class.
+    private void printWithCache(String className, String section, Runnable generator) {
+        if(Global.irCache == null && Global.modules == null) {
+            generator.run();
+            return;
+        }
+        String ir = Global.irCache == null ? null : Global.irCache.lookup(className, section);
+        if(ir == null) {
+            PrintWriter out = Global.out;
+            StringWriter buffer = new StringWriter();
+            Global.out = new PrintWriter(buffer);
+            try {
+                generator.run();
+            } finally {
+                Global.out.flush();
+                Global.out = out;
+            }
+            ir = buffer.toString();
+            if(Global.irCache != null)
+                Global.irCache.store(className, section, ir);
+        }
+        if(Global.modules != null) {
+            Global.modules.add(className, ir);
+        } else {
+            Global.out.print(ir);
         }
-        Global.scopeTable.exitScope();
     }
 
     // Used to visit classes in depth first manner
     // Depth first is used to preserve the parent class member variable
     // and method info while we go into depth
-    private void programVisitorDFS(InheritanceGraph.Node node) {
-
-        // enter scope for the new class
-        Global.scopeTable.enterScope();
-
-        // visit the class
-        if(!Utils.isDefaultClass(node.getAstClass().name))
-            node.getAstClass().accept(this);
-
-        // iterate through all the child nodes
-        for(InheritanceGraph.Node child: node.getChildren()) {
-            programVisitorDFS(child);
-        }
-
-        // exit scope
-        Global.scopeTable.exitScope();
-    }
+    private void programVisitorDFS(InheritanceGraph.Node rootNode) {
+        Global.programModel.getGraph().walkDepthFirst(rootNode, new InheritanceGraph.Walker() {
+            public void enter(InheritanceGraph.Node node) {
+                // enter scope for the new class
+                Global.scopeTable.enterScope();
+
+                // visit the class
+                if(!Utils.isDefaultClass(node.getAstClass().name))
+                    node.getAstClass().accept(VisitorImpl.this);
+            }
 
-    // Updates mangled names for all the functions
-    private void updateDefaultFunctionNamesAndSize(AST.program prog) {
-        // These are not defined in AST
-        Global.classSizeMap.put("Int",4);
-        Global.classSizeMap.put("Bool",1);
-        Global.classSizeMap.put("String",8);
-        Global.classSizeMap.put("Object",0);
-        Global.classSizeMap.put("IO",0);
-        Global.functionMangledNames.add(Utils.getMangledName("Object", "type_name"));
-        Global.functionMangledNames.add(Utils.getMangledName("Object", "abort"));
-        Global.functionMangledNames.add(Utils.getMangledName("IO", "out_int"));
-        Global.functionMangledNames.add(Utils.getMangledName("IO", "out_string"));
-        Global.functionMangledNames.add(Utils.getMangledName("IO", "in_int"));
-        Global.functionMangledNames.add(Utils.getMangledName("IO", "in_string"));
-        Global.functionMangledNames.add(Utils.getMangledName("String", "length"));
-        Global.functionMangledNames.add(Utils.getMangledName("String", "concat"));
-        Global.functionMangledNames.add(Utils.getMangledName("String", "substr"));
+            public void exit(InheritanceGraph.Node node) {
+                // exit scope
+                Global.scopeTable.exitScope();
+            }
+        });
     }
 
+    // The inheritance graph, the struct layouts and the method names
+    // come from Global.programModel, built for this program
     public void visit(AST.program prog) {
-        // preparing inheritance graph
-        Global.inheritanceGraph = new InheritanceGraph();
-        for(AST.class_ cl: prog.classes) {
-            if(!Global.stringConstantToRegisterMap.containsKey(cl.name)) {
-                Global.stringConstantToRegisterMap.put(cl.name, "@.str."+Global.stringRegisterCounter);
-                Global.stringRegisterCounter++;
-            }
-            Global.inheritanceGraph.addClass(cl);
-        }
-
-        Global.inheritanceGraph.update();
-
-        // size of default classes
-        updateDefaultFunctionNamesAndSize(prog);
         printStringConstants();
-        generateStructsAndCalculateSize();
+        generateStructs();
 
-        programVisitorDFS(Global.inheritanceGraph.getRootNode());
+        // fingerprints need the string constants and the struct layouts
+        if(Global.irCache != null)
+            Global.irCache.prepare();
+
+        programVisitorDFS(Global.programModel.getGraph().getRootNode());
 
         generateConstructors();
         DefaultIR.generateDefaultMethods();
+        IRPrinter.printMetadata();
 
     }
 
@@ -210,13 +178,23 @@ class VisitorImpl extends ExpressionVisitorImpl {
             if(f instanceof AST.attr) {
                 AST.attr at = ((AST.attr) f);
                 Global.scopeTable.insert(at.name, at.typeid);
+            } else if(cl.name.equals(Global.Constants.MAIN_TYPE) && ((AST.method) f).name.equals("main")) {
+                // needed by the entry point, even if the IR of Main is cached
+                Global.mainReturnType = ((AST.method) f).typeid;
             }
         }
-        for(AST.feature f : cl.features) {
-            if(f instanceof AST.method) {
-                ((AST.method) f).accept(this);
+        printWithCache(cl.name, IRCache.METHODS_SECTION, () -> {
+            // labels are numbered per class, so that the IR of a class
+            // does not depend on the classes generated before it
+            Global.labelToCountMap.clear();
+            Reachability reachability = Global.programModel.getReachability();
+            for(AST.feature f : cl.features) {
+                // methods the program never calls are left out
+                if(f instanceof AST.method && reachability.isReachable(cl.name, ((AST.method) f).name)) {
+                    ((AST.method) f).accept(this);
+                }
             }
-        }
+        });
     }
 
     public void visit(AST.attr at) {
@@ -238,10 +216,10 @@ class VisitorImpl extends ExpressionVisitorImpl {
                 IRPrinter.createDoublePointerStoreInst("null", gepRegister, at.typeid);
             } else {
                 if(!at.typeid.equals(at.value.type)) {
-                    if(Global.Constants.ROOT_TYPE.equals(at.typeid) && Utils.isPrimitiveType(at.value.type)) {
+                    if(Global.Constants.ROOT_TYPE.equals(at.typeid) && Utils.isPrimitiveType(at.value.typeId)) {
                         // creating new object, as primitive cant be stored in object struct directly
                         AST.new_ newObj = new AST.new_(Global.Constants.ROOT_TYPE, 0);
-                        newObj.type = Global.Constants.ROOT_TYPE;
+                        newObj.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
                         valueRegister = this.visit(newObj);
                         // fixing the typename
                         String typenameGEP = IRPrinter.createTypeNameGEP(valueRegister);
@@ -249,11 +227,11 @@ class VisitorImpl extends ExpressionVisitorImpl {
                         IRPrinter.createStoreInst(typenameString, typenameGEP, "i8*");
                     } else {
                         String oldClass = at.value.type;
-                        String pClass = Global.inheritanceGraph.getParentClassName(at.value.type);
+                        String pClass = Global.programModel.getGraph().getParentClassName(at.value.type);
                         while(!pClass.equals(at.typeid)) {
                             valueRegister = IRPrinter.createConvertInst(valueRegister, oldClass, pClass, IRPrinter.BITCAST);
                             oldClass = pClass;
-                            pClass = Global.inheritanceGraph.getParentClassName(pClass);
+                            pClass = Global.programModel.getGraph().getParentClassName(pClass);
                         }
                         valueRegister = IRPrinter.createConvertInst(valueRegister, oldClass, at.typeid, IRPrinter.BITCAST);
                     }
@@ -266,9 +244,6 @@ class VisitorImpl extends ExpressionVisitorImpl {
     public void visit(AST.method mthd) {
         Global.scopeTable.enterScope();
         Global.registerCounter = 0;
-        if(Global.currentClass.equals("Main") && mthd.name.equals("main")) {
-           Global.mainReturnType = mthd.typeid;
-        }
         Global.methodParams.clear();
         Global.out.println("\n; Class: "+Global.currentClass+", Method: "+mthd.name);
         Global.out.print("define " + Utils.getBasicTypeOrPointer(mthd.typeid) + " @" + 
@@ -1,11 +1,8 @@
 package cool;
 
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
-
-import org.antlr.v4.runtime.ANTLRInputStream;
-import org.antlr.v4.runtime.CommonTokenStream;
+import java.util.List;
 
 import org.antlr.v4.runtime.CommonToken;
 import org.antlr.v4.runtime.Token;
@@ -23,6 +20,9 @@ public class ParserTest {
 	static int VALUED_INDEX_LIMIT = 6;
 	static int NAMED_TOKEN_INDEX = 23;
 	static int parser_error_flag = 0;
+
+	// syntax errors of the file, printed once it is known to have no lexical errors
+	static StringBuilder syntaxErrors = new StringBuilder();
 	
 	static String escapeSpecialCharacters(String text) {
 		return
@@ -46,40 +46,43 @@ public class ParserTest {
 	}
 
 	static void printAST(String filename) throws Exception{
-		ANTLRInputStream inStream=null;
+		TokenPipeline pipeline=null;
 		try{
-			inStream = new ANTLRInputStream(new FileInputStream(filename));
+			pipeline = new TokenPipeline(filename);
 		}catch(Exception e){
 			System.err.println("Could not read file "+filename);
 			return;
 		}
-		
-		CoolLexer lexer = new CoolLexer(inStream);
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-		tokens.fill();		
-		int lexer_flag = 0;
-		for(Token t : tokens.getTokens()){
-			if ( t.getType() == 1 ){
-				lexer_flag = 1;
-				System.err.println("Lexical error at "+t.getLine()+": "+escapeSpecialCharacters(t.getText()));	
-			}
-		}
-		if (lexer_flag == 1)
-			return;
-		
+
 		parser_error_flag = 0;
-		CoolParser parser = new CoolParser(tokens);
+		syntaxErrors.setLength(0);
+		CoolParser parser = new CoolParser(pipeline.getTokenStream());
+		TokenPipeline.configure(parser);
 		parser.removeErrorListeners();
 		parser.addErrorListener(new ParserError(Paths.get(filename).getFileName().toString()));
 		parser.setFilename(Paths.get(filename).getFileName().toString());
 
 		CoolParser.ProgramContext prog = null;
+		Exception parseException = null;
 		try{
 			prog = parser.program();
-			System.out.println(prog);
 		}catch(Exception e){
-			e.printStackTrace();
+			parseException = e;
 		}
+
+		// lexical errors take the place of the syntax error they caused
+		List<Token> lexicalErrors = pipeline.finish();
+		if(!lexicalErrors.isEmpty()){
+			for(Token t : lexicalErrors){
+				System.err.println("Lexical error at "+t.getLine()+": "+escapeSpecialCharacters(t.getText()));
+			}
+			return;
+		}
+		System.err.print(syntaxErrors);
+		if(parseException == null)
+			System.out.println(prog);
+		else
+			parseException.printStackTrace();
 		if(parser_error_flag == 0) {
 			System.out.println(prog.value.getString(""));
 		}
@@ -126,7 +129,7 @@ public class ParserTest {
 					}
 				}
 			}
-			System.err.println(errorMessage);
+			syntaxErrors.append(errorMessage).append("\n");
 			throw new RuntimeException("One error found!");
 		}
 	}		
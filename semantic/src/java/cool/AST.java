@@ -35,8 +35,16 @@ public class AST{
 
     abstract public static class expression extends ASTNode {
         public String type;
+        // id of the type in the TypeTable of the program, set with the
+        // type; the name is only kept for printing
+        public int typeId;
         public expression(){
             type = "_no_type";
+            typeId = TypeTable.NO_TYPE;
+        }
+        public void setType(String type, int typeId) {
+            this.type = type;
+            this.typeId = typeId;
         }
         String getString(String space){
             return "";
@@ -0,0 +1,65 @@
+package cool;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadFactory;
+
+// Runs the compilation on threads with a stack sized after the input.
+//
+// The parser and the visitors recurse once per level of the expressions,
+// and generated sources have very long 'a + b + c + ...' chains and deeply
+// nested blocks, which overflow the default stack of a thread. The stack
+// only takes memory as it is used, so a generous reservation costs nothing
+// for the usual programs.
+public class CompileThread {
+
+    // bytes of stack reserved per byte of source, enough for a level
+    // of nesting every couple of characters
+    private static final long STACK_PER_SOURCE_BYTE = 512;
+
+    private static final long MIN_STACK_SIZE = 16L << 20;
+    private static final long MAX_STACK_SIZE = 4L << 30;
+
+    // Stack size for compiling the given files
+    public static long getStackSize(List<String> filenames) {
+        long sourceSize = 0;
+        for(String filename : filenames) {
+            // 0 for a missing file, the parser reports it
+            sourceSize += new File(filename).length();
+        }
+        return Math.max(MIN_STACK_SIZE, Math.min(MAX_STACK_SIZE, sourceSize * STACK_PER_SOURCE_BYTE));
+    }
+
+    // Runs the task on a new thread with the given stack size and waits
+    // for it, returning its result or throwing what it threw
+    public static <T> T call(long stackSize, Callable<T> task) throws Exception {
+        Object[] result = new Object[1];
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                result[0] = task.call();
+            } catch(Throwable e) {
+                failure[0] = e;
+            }
+        }, "compiler", stackSize);
+        thread.start();
+        thread.join();
+        if(failure[0] instanceof Exception)
+            throw (Exception) failure[0];
+        if(failure[0] instanceof Error)
+            throw (Error) failure[0];
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    // Factory of the threads of a pool working on the same input
+    public static ThreadFactory getFactory(long stackSize) {
+        return task -> {
+            Thread thread = new Thread(null, task, "compiler-worker", stackSize);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
